@@ -0,0 +1,50 @@
+package extraordinaria2.benchmarks;
+
+import extraordinaria2.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Carga del inventario en una librería vacía, que es lo que domina el arranque del servidor. Se mide en
+// disparos sueltos, cada uno con una librería nueva
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class CargaBenchmark {
+    @Param({ "100000" })
+    int productos;
+
+    Path inventario;
+
+    @Setup(Level.Trial)
+    public void escribirInventario() throws IOException {
+        inventario = Files.createTempFile("inventario", ".txt");
+        try (Writer writer = Files.newBufferedWriter(inventario, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < productos; i++) {
+                if (i % 4 == 0) {
+                    writer.write("JUEGO|J" + i + "|Juego " + i + "|" + (6 + i % 10) + "|Estrategia|" + (20 + i % 30) + "\n");
+                } else {
+                    writer.write("LIBRO|L" + i + "|Libro " + i + "|Autor " + i % 500 + "|" + (5 + i % 40)
+                            + ".95|Aventuras|" + (i % 2 == 0) + "\n");
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void borrarInventario() throws IOException {
+        Files.deleteIfExists(inventario);
+    }
+
+    @Benchmark
+    public int cargarInventario() throws IOException {
+        return new LibreriaOnline(productos).aplicarCambiosInventario(inventario.toString());
+    }
+}
@@ -0,0 +1,63 @@
+package extraordinaria2.benchmarks;
+
+import extraordinaria2.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+
+// Compras contra una misma librería desde varios hilos, cada uno con su usuario: todas sobre un mismo producto
+// (una oferta relámpago) o repartidas por el catálogo. Con -t se cambia el número de hilos
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class CompraBenchmark {
+    static final int PRODUCTOS = 1000;
+
+    LibreriaOnline libreria;
+    Producto[] productos;
+    final AtomicInteger usuarios = new AtomicInteger();
+
+    // Una librería por iteración: los historiales de compra crecen con cada una
+    @Setup(Level.Iteration)
+    public void preparar() throws Exception {
+        libreria = new LibreriaOnline(PRODUCTOS);
+        // Sin limitadores de compras por usuario y tarjeta: se mide la librería, no el freno
+        libreria.setLimitadores(null, null);
+        productos = new Producto[PRODUCTOS];
+        for (int i = 0; i < PRODUCTOS; i++) {
+            productos[i] = new Libro("L" + i, "Libro " + i, "Autor", 10 + i % 20, "Aventuras", true);
+            libreria.darDeAltaProducto(productos[i]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cliente {
+        Usuario usuario;
+        int siguiente;
+
+        @Setup(Level.Iteration)
+        public void preparar(CompraBenchmark benchmark) {
+            int n = benchmark.usuarios.incrementAndGet();
+            usuario = new Usuario("John", "Doe", "Smith", "U" + n, 1, 1, 1990, 30, "1234567890");
+            benchmark.libreria.darDeAltaUsuario(usuario);
+            siguiente = n;
+        }
+    }
+
+    @Benchmark
+    public void mismoProducto(Cliente cliente) throws Exception {
+        libreria.comprarProducto(cliente.usuario, productos[0]);
+    }
+
+    @Benchmark
+    public void productosRepartidos(Cliente cliente) throws Exception {
+        cliente.siguiente = (cliente.siguiente + 1) % PRODUCTOS;
+        libreria.comprarProducto(cliente.usuario, productos[cliente.siguiente]);
+    }
+}
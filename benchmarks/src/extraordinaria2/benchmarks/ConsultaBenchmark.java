@@ -0,0 +1,58 @@
+package extraordinaria2.benchmarks;
+
+import extraordinaria2.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Informes sobre un catálogo con ventas: una consulta agrupada, una búsqueda por id y el ranking mensual
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsultaBenchmark {
+    @Param({ "10000" })
+    int productos;
+
+    LibreriaOnline libreria;
+    int mes;
+
+    @Setup
+    public void preparar() throws Exception {
+        String[] categorias = { "Aventuras", "Ciencia Ficción", "Romántica", "Historia", "Arte" };
+        libreria = new LibreriaOnline(productos);
+        // Sin limitadores de compras por usuario y tarjeta: se mide la librería, no el freno
+        libreria.setLimitadores(null, null);
+        Usuario usuario = new Usuario("John", "Doe", "Smith", "12345678A", 1, 1, 1990, 30, "1234567890");
+        libreria.darDeAltaUsuario(usuario);
+        Random aleatorio = new Random(7);
+        for (int i = 0; i < productos; i++) {
+            Libro libro = new Libro("L" + i, "Libro " + i, "Autor", 5 + aleatorio.nextInt(30),
+                    categorias[i % categorias.length], true);
+            libreria.darDeAltaProducto(libro);
+            if (i % 10 == 0) {
+                libreria.comprarProducto(usuario, libro);
+            }
+        }
+        mes = java.time.LocalDate.now().getMonthValue();
+    }
+
+    @Benchmark
+    public List<Object[]> agruparPorCategoria() throws Exception {
+        return libreria.consultar(Consulta.sobre(Libro.class).agruparPor("categoria").contar().sumar("vendidos"));
+    }
+
+    @Benchmark
+    public List<Object[]> buscarPorId() throws Exception {
+        return libreria.consultar(Consulta.sobre(Producto.class).donde("id", "=", "L" + productos / 2));
+    }
+
+    @Benchmark
+    public List<Libro> rankingLibros() {
+        return libreria.obtenerRankingLibrosVendidos(mes);
+    }
+}
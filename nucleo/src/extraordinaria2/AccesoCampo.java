@@ -0,0 +1,72 @@
+package extraordinaria2;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+// Getter de un campo convertido en lambda con LambdaMetafactory: los enteros se leen sin boxing con
+// ToLongFunction y el JIT puede inlinear la llamada igual que en un bucle escrito a mano. Se guardan por
+// clase y campo, así que cada getter genera su clase una sola vez
+final class AccesoCampo {
+    private static final Map<String, AccesoCampo> CACHE = new ConcurrentHashMap<>();
+
+    final String campo;
+    final ToLongFunction<Object> entero; // null si el campo no es entero
+    final Function<Object, Object> valor;
+
+    private AccesoCampo(String campo, ToLongFunction<Object> entero, Function<Object, Object> valor) {
+        this.campo = campo;
+        this.entero = entero;
+        this.valor = valor;
+    }
+
+    static AccesoCampo de(Class<?> tipo, String campo) {
+        return CACHE.computeIfAbsent(tipo.getName() + '#' + campo, clave -> crear(tipo, campo));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AccesoCampo crear(Class<?> tipo, String campo) {
+        Method getter = buscarGetter(tipo, campo);
+        Class<?> retorno = getter.getReturnType();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle handle = lookup.unreflect(getter);
+            if (retorno == int.class || retorno == long.class || retorno == short.class || retorno == byte.class) {
+                CallSite sitio = LambdaMetafactory.metafactory(lookup, "applyAsLong",
+                        MethodType.methodType(ToLongFunction.class), MethodType.methodType(long.class, Object.class),
+                        handle, MethodType.methodType(long.class, getter.getDeclaringClass()));
+                ToLongFunction<Object> entero = (ToLongFunction<Object>) sitio.getTarget().invoke();
+                return new AccesoCampo(campo, entero, objeto -> entero.applyAsLong(objeto));
+            }
+            CallSite sitio = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class), handle,
+                    MethodType.methodType(retorno.isPrimitive() ? MethodType.methodType(retorno).wrap().returnType()
+                            : retorno, getter.getDeclaringClass()));
+            return new AccesoCampo(campo, null, (Function<Object, Object>) sitio.getTarget().invoke());
+        } catch (Throwable e) {
+            throw new IllegalStateException("No se puede compilar el acceso al campo " + campo, e);
+        }
+    }
+
+    private static Method buscarGetter(Class<?> tipo, String campo) {
+        String nombre = Character.toUpperCase(campo.charAt(0)) + campo.substring(1);
+        for (String prefijo : new String[] { "get", "es" }) {
+            try {
+                Method metodo = tipo.getMethod(prefijo + nombre);
+                if (metodo.getReturnType() != void.class) {
+                    return metodo;
+                }
+            } catch (NoSuchMethodException e) {
+                // se prueba el siguiente prefijo
+            }
+        }
+        throw new IllegalArgumentException(tipo.getSimpleName() + " no tiene el campo " + campo);
+    }
+}
@@ -0,0 +1,241 @@
+package extraordinaria2;
+
+import java.util.*;
+
+// Analítica aproximada de ventas con memoria independiente del tráfico:
+// - compradores distintos por mes y por producto y mes (HyperLogLog, por DNI), de los últimos
+//   MESES_CONSERVADOS meses; la clave es año * 12 + (mes - 1), así que un mismo mes de años distintos no se mezcla
+// - productos en tendencia: Count-Min por tramos de 5 minutos en una ventana deslizante de una hora, con un
+//   conjunto acotado de candidatos a más vendidos. Las estimaciones de los candidatos se recalculan contra la
+//   ventana cada vez que avanza un tramo y en cada consulta, así que lo que sale de la ventana deja sitio
+// Los sketches de mes, de producto y la ventana de tendencia se pueden copiar y fusionar con los de otras
+// instancias de la librería
+public class AnaliticaVentas {
+    private static final int PRECISION_MES = 14;
+    private static final int PRECISION_PRODUCTO = 10;
+    private static final long DURACION_TRAMO = 5 * 60 * 1000L;
+    private static final int TRAMOS = 12;
+    private static final int MAX_CANDIDATOS = 64;
+    static final int MESES_CONSERVADOS = 24;
+
+    private final Map<Integer, HyperLogLog> compradoresPorMes = new HashMap<>();
+    private final Map<Integer, HyperLogLog[]> compradoresPorProducto = new HashMap<>();
+
+    private final CountMinSketch[] tramos = new CountMinSketch[TRAMOS];
+    private long tramoActual;
+    private final Map<String, Long> candidatos = new HashMap<>();
+
+    public AnaliticaVentas() {
+        for (int i = 0; i < TRAMOS; i++) {
+            tramos[i] = new CountMinSketch(2048, 4);
+        }
+    }
+
+    private static int clave(int año, int mes) {
+        return año * 12 + mes - 1;
+    }
+
+    public void registrarCompra(String dni, String idProducto, int ordinalProducto, int año, int mes) {
+        registrarCompra(dni, idProducto, ordinalProducto, año, mes, System.currentTimeMillis());
+    }
+
+    synchronized void registrarCompra(String dni, String idProducto, int ordinalProducto, int año, int mes,
+            long ahora) {
+        int clave = clave(año, mes);
+        long hashComprador = HyperLogLog.hash(dni);
+        compradoresMes(clave).agregar(hashComprador);
+        compradoresProducto(clave, ordinalProducto).agregar(hashComprador);
+
+        avanzarVentana(ahora);
+        long hashProducto = HyperLogLog.hash(idProducto);
+        tramos[(int) (tramoActual % TRAMOS)].incrementar(hashProducto, 1);
+        actualizarCandidato(idProducto, estimarVentana(hashProducto));
+    }
+
+    private HyperLogLog compradoresMes(int clave) {
+        if (!compradoresPorMes.containsKey(clave)) {
+            // Mes nuevo: se descartan los que han salido del periodo conservado
+            compradoresPorMes.keySet().removeIf(otra -> otra <= clave - MESES_CONSERVADOS);
+            compradoresPorProducto.keySet().removeIf(otra -> otra <= clave - MESES_CONSERVADOS);
+        }
+        return compradoresPorMes.computeIfAbsent(clave, c -> new HyperLogLog(PRECISION_MES));
+    }
+
+    private HyperLogLog compradoresProducto(int clave, int ordinalProducto) {
+        HyperLogLog[] porProducto = compradoresPorProducto.computeIfAbsent(clave, c -> new HyperLogLog[16]);
+        if (ordinalProducto >= porProducto.length) {
+            porProducto = Arrays.copyOf(porProducto, Math.max(porProducto.length * 2, ordinalProducto + 1));
+            compradoresPorProducto.put(clave, porProducto);
+        }
+        if (porProducto[ordinalProducto] == null) {
+            porProducto[ordinalProducto] = new HyperLogLog(PRECISION_PRODUCTO);
+        }
+        return porProducto[ordinalProducto];
+    }
+
+    // Limpia los tramos que han salido de la ventana desde la última compra; si ha cambiado algo, las
+    // estimaciones guardadas de los candidatos ya no valen
+    private void avanzarVentana(long ahora) {
+        long tramo = ahora / DURACION_TRAMO;
+        if (tramo <= tramoActual) {
+            return;
+        }
+        long pendientes = Math.min(TRAMOS, tramo - tramoActual);
+        for (long t = tramo - pendientes + 1; t <= tramo; t++) {
+            tramos[(int) (t % TRAMOS)].limpiar();
+        }
+        tramoActual = tramo;
+        refrescarCandidatos();
+    }
+
+    // Vuelve a estimar cada candidato contra la ventana actual y quita los que ya no tienen ventas en ella
+    private void refrescarCandidatos() {
+        Iterator<Map.Entry<String, Long>> it = candidatos.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> candidato = it.next();
+            long estimacion = estimarVentana(HyperLogLog.hash(candidato.getKey()));
+            if (estimacion == 0) {
+                it.remove();
+            } else {
+                candidato.setValue(estimacion);
+            }
+        }
+    }
+
+    private long estimarVentana(long hash) {
+        long total = 0;
+        for (CountMinSketch tramo : tramos) {
+            total += tramo.estimar(hash);
+        }
+        return total;
+    }
+
+    // Se mantiene un número fijo de candidatos; uno nuevo entra si supera al candidato más flojo
+    private void actualizarCandidato(String id, long estimacion) {
+        if (candidatos.containsKey(id) || candidatos.size() < MAX_CANDIDATOS) {
+            candidatos.put(id, estimacion);
+            return;
+        }
+        String peor = null;
+        long minimo = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> candidato : candidatos.entrySet()) {
+            if (candidato.getValue() < minimo) {
+                minimo = candidato.getValue();
+                peor = candidato.getKey();
+            }
+        }
+        if (estimacion > minimo) {
+            candidatos.remove(peor);
+            candidatos.put(id, estimacion);
+        }
+    }
+
+    public List<String> productosTendencia(int cantidad) {
+        return productosTendencia(cantidad, System.currentTimeMillis());
+    }
+
+    synchronized List<String> productosTendencia(int cantidad, long ahora) {
+        avanzarVentana(ahora);
+        refrescarCandidatos();
+        List<Map.Entry<String, Long>> actuales = new ArrayList<>(candidatos.entrySet());
+        actuales.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        List<String> ids = new ArrayList<>(Math.min(cantidad, actuales.size()));
+        for (int i = 0; i < actuales.size() && i < cantidad; i++) {
+            ids.add(actuales.get(i).getKey());
+        }
+        return ids;
+    }
+
+    public synchronized long compradoresDistintos(int año, int mes) {
+        HyperLogLog sketch = compradoresPorMes.get(clave(año, mes));
+        return sketch == null ? 0 : sketch.estimar();
+    }
+
+    public synchronized long compradoresDistintos(int ordinalProducto, int año, int mes) {
+        HyperLogLog[] porProducto = compradoresPorProducto.get(clave(año, mes));
+        if (porProducto == null || ordinalProducto >= porProducto.length || porProducto[ordinalProducto] == null) {
+            return 0;
+        }
+        return porProducto[ordinalProducto].estimar();
+    }
+
+    // Sketch de compradores de un mes, para fusionarlo con el de otras instancias de la librería
+    public synchronized HyperLogLog getCompradoresMes(int año, int mes) {
+        HyperLogLog sketch = new HyperLogLog(PRECISION_MES);
+        HyperLogLog propio = compradoresPorMes.get(clave(año, mes));
+        if (propio != null) {
+            sketch.fusionar(propio);
+        }
+        return sketch;
+    }
+
+    public synchronized void fusionarCompradoresMes(int año, int mes, HyperLogLog otro) {
+        compradoresMes(clave(año, mes)).fusionar(otro);
+    }
+
+    // Sketch de compradores de un producto en un mes. El ordinal es el de esta instancia: quien fusiona con otra
+    // librería empareja los productos por id
+    public synchronized HyperLogLog getCompradoresProducto(int ordinalProducto, int año, int mes) {
+        HyperLogLog sketch = new HyperLogLog(PRECISION_PRODUCTO);
+        HyperLogLog[] porProducto = compradoresPorProducto.get(clave(año, mes));
+        if (porProducto != null && ordinalProducto >= 0 && ordinalProducto < porProducto.length
+                && porProducto[ordinalProducto] != null) {
+            sketch.fusionar(porProducto[ordinalProducto]);
+        }
+        return sketch;
+    }
+
+    public synchronized void fusionarCompradoresProducto(int ordinalProducto, int año, int mes, HyperLogLog otro) {
+        int clave = clave(año, mes);
+        compradoresMes(clave);
+        compradoresProducto(clave, ordinalProducto).fusionar(otro);
+    }
+
+    // Copia de los tramos vivos de la ventana de tendencia, indexados por número de tramo (instante / 5 min),
+    // que es el mismo en todas las instancias
+    public Map<Long, CountMinSketch> getVentanaTendencia() {
+        return getVentanaTendencia(System.currentTimeMillis());
+    }
+
+    synchronized Map<Long, CountMinSketch> getVentanaTendencia(long ahora) {
+        avanzarVentana(ahora);
+        Map<Long, CountMinSketch> ventana = new HashMap<>();
+        for (long t = Math.max(0, tramoActual - TRAMOS + 1); t <= tramoActual; t++) {
+            ventana.put(t, tramos[(int) (t % TRAMOS)].copia());
+        }
+        return ventana;
+    }
+
+    // Suma la ventana de otra instancia tramo a tramo (los que ya han salido de la ventana local se ignoran).
+    // Un Count-Min no enumera sus claves, así que la otra instancia manda también sus candidatos
+    public void fusionarVentanaTendencia(Map<Long, CountMinSketch> otra, Collection<String> candidatosOtra) {
+        fusionarVentanaTendencia(otra, candidatosOtra, System.currentTimeMillis());
+    }
+
+    synchronized void fusionarVentanaTendencia(Map<Long, CountMinSketch> otra, Collection<String> candidatosOtra,
+            long ahora) {
+        avanzarVentana(ahora);
+        for (Map.Entry<Long, CountMinSketch> tramo : otra.entrySet()) {
+            long t = tramo.getKey();
+            if (t <= tramoActual && t > tramoActual - TRAMOS) {
+                tramos[(int) (t % TRAMOS)].fusionar(tramo.getValue());
+            }
+        }
+        refrescarCandidatos();
+        for (String id : candidatosOtra) {
+            long estimacion = estimarVentana(HyperLogLog.hash(id));
+            if (estimacion > 0) {
+                actualizarCandidato(id, estimacion);
+            }
+        }
+    }
+
+    // El ordinal se va a reciclar: los sketches por producto no deben pasar al producto nuevo
+    public synchronized void eliminarProducto(int ordinalProducto) {
+        for (HyperLogLog[] porProducto : compradoresPorProducto.values()) {
+            if (ordinalProducto < porProducto.length) {
+                porProducto[ordinalProducto] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package extraordinaria2;
+
+import java.io.*;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Anillo de eventos con un solo escritor, al estilo Disruptor. Las casillas se reservan al crearlo y se
+// reutilizan, así que publicar no reserva memoria. El escritor (la librería, con su cerrojo) escribe la casilla
+// y publica su secuencia en el cursor; cada suscriptor lleva su propia secuencia y lee por lotes todo lo que hay
+// hasta el cursor. El escritor solo mira las secuencias de los suscriptores cuando va a dar la vuelta sobre la
+// posición más lenta que conoce, así que el coste de publicar no depende del número de suscriptores. Si un
+// suscriptor se queda una vuelta entera atrás, el escritor le espera como mucho PACIENCIA_NANOS: el que no ha
+// avanzado en ese tiempo se desconecta, porque la espera se hace con el cerrojo de la librería tomado
+final class AnilloCambios {
+    static final int CAPACIDAD = 8192;
+    static final long PACIENCIA_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final EventoCambio[] eventos;
+    private final int mascara;
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private long siguiente = -1; // solo lo usa el escritor
+    private long minimoConocido = -1; // solo lo usa el escritor
+    private volatile ConsumidorCambios[] consumidores = new ConsumidorCambios[0];
+    // También los desconectados, para pararlos y cerrar sus destinos al detener
+    private final List<ConsumidorCambios> todos = new ArrayList<>();
+    private final AtomicLong desconexiones = new AtomicLong();
+
+    AnilloCambios(int capacidad) {
+        int tamaño = Integer.highestOneBit(Math.max(2, capacidad - 1)) << 1;
+        this.eventos = new EventoCambio[tamaño];
+        for (int i = 0; i < tamaño; i++) {
+            eventos[i] = new EventoCambio();
+        }
+        this.mascara = tamaño - 1;
+    }
+
+    void publicar(TipoCambio tipo, String clave, String idProducto, long importeCentimos) {
+        long secuencia = siguiente + 1;
+        long vuelta = secuencia - eventos.length; // secuencia que ocupaba la casilla
+        if (vuelta > minimoConocido) {
+            minimoConocido = esperarConsumidores(vuelta);
+        }
+        EventoCambio evento = eventos[(int) secuencia & mascara];
+        // Las desconexiones se ven antes que cualquier escritura de la casilla: el suscriptor desconectado que
+        // la lea a medias lo sabe al comprobar su marca después de copiarla
+        VarHandle.storeStoreFence();
+        evento.tipo = tipo;
+        evento.secuencia = secuencia;
+        evento.instante = System.currentTimeMillis();
+        evento.clave = clave;
+        evento.idProducto = idProducto;
+        evento.importeCentimos = importeCentimos;
+        siguiente = secuencia;
+        cursor.lazySet(secuencia);
+    }
+
+    // La paciencia cuenta desde el último avance de los suscriptores: uno lento pero vivo no se desconecta
+    private long esperarConsumidores(long vuelta) {
+        long inicio = System.nanoTime();
+        long anterior = Long.MIN_VALUE;
+        long minimo;
+        while (vuelta > (minimo = minimoConsumidores(siguiente))) {
+            if (minimo != anterior) {
+                anterior = minimo;
+                inicio = System.nanoTime();
+            } else if (System.nanoTime() - inicio > PACIENCIA_NANOS) {
+                desconectarRezagados(vuelta);
+                continue;
+            }
+            LockSupport.parkNanos(1000);
+        }
+        return minimo;
+    }
+
+    private void desconectarRezagados(long vuelta) {
+        List<ConsumidorCambios> conectados = new ArrayList<>();
+        for (ConsumidorCambios consumidor : consumidores) {
+            if (consumidor.getSecuencia() < vuelta) {
+                consumidor.desconectar();
+                desconexiones.incrementAndGet();
+            } else {
+                conectados.add(consumidor);
+            }
+        }
+        consumidores = conectados.toArray(new ConsumidorCambios[0]);
+    }
+
+    long getDesconexiones() {
+        return desconexiones.get();
+    }
+
+    private long minimoConsumidores(long porDefecto) {
+        long minimo = porDefecto;
+        for (ConsumidorCambios consumidor : consumidores) {
+            minimo = Math.min(minimo, consumidor.getSecuencia());
+        }
+        return minimo;
+    }
+
+    long getCursor() {
+        return cursor.get();
+    }
+
+    EventoCambio evento(long secuencia) {
+        return eventos[(int) secuencia & mascara];
+    }
+
+    // Se llama con el cerrojo de la librería, así que no hay publicaciones en curso
+    void suscribir(DestinoCambios destino) {
+        ConsumidorCambios consumidor = new ConsumidorCambios(this, destino, siguiente);
+        ConsumidorCambios[] nuevos = Arrays.copyOf(consumidores, consumidores.length + 1);
+        nuevos[nuevos.length - 1] = consumidor;
+        consumidores = nuevos;
+        todos.add(consumidor);
+        consumidor.iniciar();
+    }
+
+    void detener() throws InterruptedException, IOException {
+        IOException error = null;
+        for (ConsumidorCambios consumidor : todos) {
+            try {
+                consumidor.detener();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package extraordinaria2;
+
+import java.util.*;
+
+// Árbol de búsqueda persistente (treap con copia de camino). La prioridad de cada nodo sale del hash de su
+// clave, así que la forma del árbol solo depende de su contenido y la profundidad esperada es O(log n)
+final class ArbolPersistente<K extends Comparable<K>, V> {
+    private static final ArbolPersistente<?, ?> VACIO = new ArbolPersistente<>(null, 0);
+
+    private static final class Nodo<K, V> {
+        final K clave;
+        final V valor;
+        final int prioridad;
+        final Nodo<K, V> izquierdo;
+        final Nodo<K, V> derecho;
+
+        Nodo(K clave, V valor, int prioridad, Nodo<K, V> izquierdo, Nodo<K, V> derecho) {
+            this.clave = clave;
+            this.valor = valor;
+            this.prioridad = prioridad;
+            this.izquierdo = izquierdo;
+            this.derecho = derecho;
+        }
+    }
+
+    private final Nodo<K, V> raiz;
+    private final int tamaño;
+
+    private ArbolPersistente(Nodo<K, V> raiz, int tamaño) {
+        this.raiz = raiz;
+        this.tamaño = tamaño;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K extends Comparable<K>, V> ArbolPersistente<K, V> vacio() {
+        return (ArbolPersistente<K, V>) VACIO;
+    }
+
+    private static int prioridad(Object clave) {
+        int h = clave.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 15);
+    }
+
+    public int tamaño() {
+        return tamaño;
+    }
+
+    public V obtener(K clave) {
+        Nodo<K, V> nodo = raiz;
+        while (nodo != null) {
+            int cmp = clave.compareTo(nodo.clave);
+            if (cmp == 0) {
+                return nodo.valor;
+            }
+            nodo = cmp < 0 ? nodo.izquierdo : nodo.derecho;
+        }
+        return null;
+    }
+
+    public ArbolPersistente<K, V> con(K clave, V valor) {
+        int nuevoTamaño = obtener(clave) == null ? tamaño + 1 : tamaño;
+        return new ArbolPersistente<>(insertar(raiz, clave, valor, prioridad(clave)), nuevoTamaño);
+    }
+
+    // Construye un árbol nuevo con las claves ya ordenadas y sin repetir en O(n): un solo nodo por clave en vez
+    // de la copia de camino de cada inserción. Sale el mismo treap que insertándolas una a una
+    static <K extends Comparable<K>, V> ArbolPersistente<K, V> desdeOrdenados(List<K> claves, List<V> valores) {
+        int n = claves.size();
+        int[] prioridades = new int[n];
+        int[] izquierdos = new int[n];
+        int[] derechos = new int[n];
+        int[] pila = new int[n];
+        int cima = 0;
+        for (int i = 0; i < n; i++) {
+            prioridades[i] = prioridad(claves.get(i));
+            derechos[i] = -1;
+            int ultimo = -1;
+            while (cima > 0 && prioridades[pila[cima - 1]] < prioridades[i]) {
+                ultimo = pila[--cima];
+            }
+            izquierdos[i] = ultimo;
+            if (cima > 0) {
+                derechos[pila[cima - 1]] = i;
+            }
+            pila[cima++] = i;
+        }
+        Nodo<K, V> raiz = n == 0 ? null
+                : construir(pila[0], claves, valores, prioridades, izquierdos, derechos);
+        return new ArbolPersistente<>(raiz, n);
+    }
+
+    private static <K, V> Nodo<K, V> construir(int i, List<K> claves, List<V> valores, int[] prioridades,
+            int[] izquierdos, int[] derechos) {
+        Nodo<K, V> izquierdo = izquierdos[i] < 0 ? null
+                : construir(izquierdos[i], claves, valores, prioridades, izquierdos, derechos);
+        Nodo<K, V> derecho = derechos[i] < 0 ? null
+                : construir(derechos[i], claves, valores, prioridades, izquierdos, derechos);
+        return new Nodo<>(claves.get(i), valores.get(i), prioridades[i], izquierdo, derecho);
+    }
+
+    public ArbolPersistente<K, V> sin(K clave) {
+        if (obtener(clave) == null) {
+            return this;
+        }
+        return new ArbolPersistente<>(eliminar(raiz, clave), tamaño - 1);
+    }
+
+    private Nodo<K, V> insertar(Nodo<K, V> nodo, K clave, V valor, int prioridad) {
+        if (nodo == null) {
+            return new Nodo<>(clave, valor, prioridad, null, null);
+        }
+        int cmp = clave.compareTo(nodo.clave);
+        if (cmp == 0) {
+            return new Nodo<>(clave, valor, nodo.prioridad, nodo.izquierdo, nodo.derecho);
+        }
+        if (cmp < 0) {
+            Nodo<K, V> izquierdo = insertar(nodo.izquierdo, clave, valor, prioridad);
+            if (izquierdo.prioridad > nodo.prioridad) {
+                return new Nodo<>(izquierdo.clave, izquierdo.valor, izquierdo.prioridad, izquierdo.izquierdo,
+                        new Nodo<>(nodo.clave, nodo.valor, nodo.prioridad, izquierdo.derecho, nodo.derecho));
+            }
+            return new Nodo<>(nodo.clave, nodo.valor, nodo.prioridad, izquierdo, nodo.derecho);
+        }
+        Nodo<K, V> derecho = insertar(nodo.derecho, clave, valor, prioridad);
+        if (derecho.prioridad > nodo.prioridad) {
+            return new Nodo<>(derecho.clave, derecho.valor, derecho.prioridad,
+                    new Nodo<>(nodo.clave, nodo.valor, nodo.prioridad, nodo.izquierdo, derecho.izquierdo),
+                    derecho.derecho);
+        }
+        return new Nodo<>(nodo.clave, nodo.valor, nodo.prioridad, nodo.izquierdo, derecho);
+    }
+
+    private Nodo<K, V> eliminar(Nodo<K, V> nodo, K clave) {
+        int cmp = clave.compareTo(nodo.clave);
+        if (cmp == 0) {
+            return unir(nodo.izquierdo, nodo.derecho);
+        }
+        if (cmp < 0) {
+            return new Nodo<>(nodo.clave, nodo.valor, nodo.prioridad, eliminar(nodo.izquierdo, clave), nodo.derecho);
+        }
+        return new Nodo<>(nodo.clave, nodo.valor, nodo.prioridad, nodo.izquierdo, eliminar(nodo.derecho, clave));
+    }
+
+    private Nodo<K, V> unir(Nodo<K, V> a, Nodo<K, V> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.prioridad > b.prioridad) {
+            return new Nodo<>(a.clave, a.valor, a.prioridad, a.izquierdo, unir(a.derecho, b));
+        }
+        return new Nodo<>(b.clave, b.valor, b.prioridad, unir(a, b.izquierdo), b.derecho);
+    }
+
+    // Recorrido en orden perezoso con una pila explícita; empieza después de "desde" (null para el principio)
+    public Iterator<V> valoresDesde(K desde) {
+        Deque<Nodo<K, V>> pila = new ArrayDeque<>();
+        Nodo<K, V> nodo = raiz;
+        while (nodo != null) {
+            if (desde == null || nodo.clave.compareTo(desde) > 0) {
+                pila.push(nodo);
+                nodo = nodo.izquierdo;
+            } else {
+                nodo = nodo.derecho;
+            }
+        }
+        return new Iterator<V>() {
+            @Override
+            public boolean hasNext() {
+                return !pila.isEmpty();
+            }
+
+            @Override
+            public V next() {
+                if (pila.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Nodo<K, V> actual = pila.pop();
+                for (Nodo<K, V> n = actual.derecho; n != null; n = n.izquierdo) {
+                    pila.push(n);
+                }
+                return actual.valor;
+            }
+        };
+    }
+}
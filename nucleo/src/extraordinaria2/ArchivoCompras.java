@@ -0,0 +1,103 @@
+package extraordinaria2;
+
+import java.io.*;
+import java.util.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+// Segmentos en disco con las compras archivadas, una línea "dni|idProducto|fecha" por compra. Se escribe
+// siempre al final del último segmento y se abre uno nuevo al pasar de TAMAÑO_SEGMENTO
+class ArchivoCompras implements Closeable {
+    static final long TAMAÑO_SEGMENTO = 64L * 1024 * 1024;
+
+    private final Path directorio;
+    private int segmento;
+    private long escritos;
+    private Writer writer;
+
+    public ArchivoCompras(Path directorio) throws IOException {
+        this.directorio = directorio;
+        Files.createDirectories(directorio);
+        List<Path> existentes = segmentos(directorio);
+        segmento = existentes.isEmpty() ? 1 : numeroSegmento(existentes.get(existentes.size() - 1));
+        abrir();
+    }
+
+    private void abrir() throws IOException {
+        Path ruta = directorio.resolve(String.format("compras-%06d.seg", segmento));
+        escritos = Files.exists(ruta) ? Files.size(ruta) : 0;
+        writer = Files.newBufferedWriter(ruta, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    public synchronized void escribir(String dni, String idProducto, int dia) throws IOException {
+        if (escritos >= TAMAÑO_SEGMENTO) {
+            writer.close();
+            segmento++;
+            abrir();
+        }
+        String linea = dni + "|" + idProducto + "|" + LocalDate.ofEpochDay(dia) + "\n";
+        writer.write(linea);
+        // El tamaño del segmento es en bytes: un DNI o id con caracteres no ASCII ocupa más de un byte
+        escritos += bytesUtf8(linea);
+    }
+
+    public synchronized void vaciar() throws IOException {
+        writer.flush();
+    }
+
+    static int bytesUtf8(String texto) {
+        int bytes = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < texto.length()
+                    && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private static int numeroSegmento(Path ruta) {
+        String nombre = ruta.getFileName().toString();
+        return Integer.parseInt(nombre.substring("compras-".length(), nombre.length() - ".seg".length()));
+    }
+
+    // Segmentos del directorio en orden de escritura
+    public static List<Path> segmentos(Path directorio) throws IOException {
+        List<Path> segmentos = new ArrayList<>();
+        if (Files.isDirectory(directorio)) {
+            try (DirectoryStream<Path> rutas = Files.newDirectoryStream(directorio, "compras-*.seg")) {
+                rutas.forEach(segmentos::add);
+            }
+        }
+        segmentos.sort(Comparator.comparingInt(ArchivoCompras::numeroSegmento));
+        return segmentos;
+    }
+
+    // Recorre todas las compras archivadas en orden; el consumidor recibe {dni, idProducto, fecha}
+    public static void leer(Path directorio, Consumer<String[]> consumidor) throws IOException {
+        for (Path segmento : segmentos(directorio)) {
+            try (BufferedReader br = Files.newBufferedReader(segmento, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    consumidor.accept(line.split("\\|"));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package extraordinaria2;
+
+import java.util.*;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+// Bóveda de números de tarjeta separada del grafo de objetos Usuario. Cada tarjeta ocupa una ranura de tamaño
+// fijo en un único array (IV + número cifrado con AES-GCM + etiqueta), en la posición del ordinal del usuario.
+// Junto a cada ranura se guarda un token aleatorio que el usuario debe presentar y una huella (HMAC) del
+// número para poder agrupar por tarjeta sin descifrar. Las claves y el cifrador se crean en el primer uso
+class BovedaTarjetas {
+    private static final int LONGITUD_IV = 12;
+    private static final int LONGITUD_NUMERO = 20;
+    private static final int LONGITUD_ETIQUETA = 16;
+    private static final int TAMAÑO_RANURA = LONGITUD_IV + LONGITUD_NUMERO + LONGITUD_ETIQUETA;
+
+    private byte[] ranuras = new byte[0];
+    private long[] tokens = new long[0];
+    private long[] huellas = new long[0];
+    private SecretKey clave;
+    private Mac mac;
+    private Cipher cifrador;
+    private SecureRandom aleatorio;
+
+    private void inicializar() throws GeneralSecurityException {
+        if (cifrador != null) {
+            return;
+        }
+        aleatorio = new SecureRandom();
+        KeyGenerator generador = KeyGenerator.getInstance("AES");
+        generador.init(256, aleatorio);
+        clave = generador.generateKey();
+        byte[] claveMac = new byte[32];
+        aleatorio.nextBytes(claveMac);
+        mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(claveMac, "HmacSHA256"));
+        cifrador = Cipher.getInstance("AES/GCM/NoPadding");
+    }
+
+    private void asegurarCapacidad(int ordinal) {
+        if (ordinal < tokens.length) {
+            return;
+        }
+        int capacidad = Math.max(16, Math.max(tokens.length * 2, ordinal + 1));
+        ranuras = Arrays.copyOf(ranuras, capacidad * TAMAÑO_RANURA);
+        tokens = Arrays.copyOf(tokens, capacidad);
+        huellas = Arrays.copyOf(huellas, capacidad);
+    }
+
+    // Cifra y guarda la tarjeta en la ranura del ordinal; devuelve el token que la identifica
+    public synchronized long guardar(int ordinal, String numero) {
+        return guardarLote(new int[] { ordinal }, new String[] { numero })[0];
+    }
+
+    // Cifra varias tarjetas reutilizando el mismo cifrador y MAC (carga masiva de usuarios)
+    public synchronized long[] guardarLote(int[] ordinales, String[] numeros) {
+        long[] resultado = new long[ordinales.length];
+        try {
+            inicializar();
+            int maximo = -1;
+            for (int ordinal : ordinales) {
+                maximo = Math.max(maximo, ordinal);
+            }
+            asegurarCapacidad(maximo);
+            byte[] claro = new byte[LONGITUD_NUMERO];
+            byte[] iv = new byte[LONGITUD_IV];
+            for (int i = 0; i < ordinales.length; i++) {
+                if (numeros[i] == null || numeros[i].isEmpty()) {
+                    continue;
+                }
+                byte[] digitos = numeros[i].getBytes(StandardCharsets.US_ASCII);
+                if (digitos.length >= LONGITUD_NUMERO) {
+                    throw new IllegalArgumentException("Número de tarjeta demasiado largo.");
+                }
+                Arrays.fill(claro, (byte) 0);
+                claro[0] = (byte) digitos.length;
+                System.arraycopy(digitos, 0, claro, 1, digitos.length);
+                aleatorio.nextBytes(iv);
+                int base = ordinales[i] * TAMAÑO_RANURA;
+                System.arraycopy(iv, 0, ranuras, base, LONGITUD_IV);
+                cifrador.init(Cipher.ENCRYPT_MODE, clave, new GCMParameterSpec(LONGITUD_ETIQUETA * 8, iv));
+                cifrador.doFinal(claro, 0, LONGITUD_NUMERO, ranuras, base + LONGITUD_IV);
+                Arrays.fill(claro, (byte) 0);
+
+                byte[] resumen = mac.doFinal(digitos);
+                long huella = 0;
+                for (int b = 0; b < 8; b++) {
+                    huella = (huella << 8) | (resumen[b] & 0xFF);
+                }
+                huellas[ordinales[i]] = huella;
+                long token;
+                do {
+                    token = aleatorio.nextLong();
+                } while (token == 0);
+                tokens[ordinales[i]] = token;
+                resultado[i] = token;
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo cifrar la tarjeta.", e);
+        }
+        return resultado;
+    }
+
+    // Devuelve el número en claro si el token corresponde a la ranura (null en otro caso)
+    public synchronized String obtener(int ordinal, long token) {
+        if (ordinal < 0 || ordinal >= tokens.length || token == 0 || tokens[ordinal] != token) {
+            return null;
+        }
+        try {
+            int base = ordinal * TAMAÑO_RANURA;
+            cifrador.init(Cipher.DECRYPT_MODE, clave,
+                    new GCMParameterSpec(LONGITUD_ETIQUETA * 8, ranuras, base, LONGITUD_IV));
+            byte[] claro = cifrador.doFinal(ranuras, base + LONGITUD_IV, LONGITUD_NUMERO + LONGITUD_ETIQUETA);
+            String numero = new String(claro, 1, claro[0], StandardCharsets.US_ASCII);
+            Arrays.fill(claro, (byte) 0);
+            return numero;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo descifrar la tarjeta.", e);
+        }
+    }
+
+    public synchronized boolean tieneTarjeta(int ordinal) {
+        return ordinal >= 0 && ordinal < tokens.length && tokens[ordinal] != 0;
+    }
+
+    // Huella estable de la tarjeta (misma tarjeta, misma huella) sin necesidad de descifrar; 0 sin tarjeta
+    public synchronized long huella(int ordinal) {
+        return ordinal >= 0 && ordinal < huellas.length ? huellas[ordinal] : 0;
+    }
+
+    public synchronized void eliminar(int ordinal) {
+        if (ordinal < tokens.length) {
+            Arrays.fill(ranuras, ordinal * TAMAÑO_RANURA, (ordinal + 1) * TAMAÑO_RANURA, (byte) 0);
+            tokens[ordinal] = 0;
+            huellas[ordinal] = 0;
+        }
+    }
+}
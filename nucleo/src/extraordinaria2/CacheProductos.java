@@ -0,0 +1,161 @@
+package extraordinaria2;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Caché acotada de productos al estilo W-TinyLFU: una ventana LRU pequeña para las altas recientes y una
+// zona principal LRU a la que solo entra un producto si es más frecuente que la víctima que expulsaría.
+// La frecuencia se estima con un count-min sketch de contadores de 4 bits que se envejecen a la mitad.
+public class CacheProductos {
+    private static final int MAX_FRECUENCIA = 15;
+
+    private final CatalogoBackend catalogo;
+    private final int capacidadVentana;
+    private final int capacidadPrincipal;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entrada> ventana;
+    private final LinkedHashMap<String, Entrada> principal;
+    private final byte[][] frecuencias;
+    private final int mascara;
+    private final int umbralEnvejecimiento;
+    private int incrementos;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong desalojos = new AtomicLong();
+
+    private static class Entrada {
+        final Producto producto;
+        final long caducidad;
+
+        Entrada(Producto producto, long caducidad) {
+            this.producto = producto;
+            this.caducidad = caducidad;
+        }
+    }
+
+    public CacheProductos(CatalogoBackend catalogo, int capacidad, long ttlMillis) {
+        if (capacidad < 2) {
+            throw new IllegalArgumentException("La capacidad de la caché debe ser al menos 2.");
+        }
+        this.catalogo = catalogo;
+        this.capacidadVentana = Math.max(1, capacidad / 100);
+        this.capacidadPrincipal = capacidad - capacidadVentana;
+        this.ttlMillis = ttlMillis;
+        this.ventana = new LinkedHashMap<>(16, 0.75f, true);
+        this.principal = new LinkedHashMap<>(16, 0.75f, true);
+        int ancho = Integer.highestOneBit(Math.max(16, capacidad * 4) - 1) << 1;
+        this.frecuencias = new byte[4][ancho];
+        this.mascara = ancho - 1;
+        this.umbralEnvejecimiento = capacidad * 10;
+    }
+
+    // Devuelve el producto desde memoria o lo carga del catálogo; la lectura de disco se hace fuera del cerrojo
+    public Producto obtener(String id) throws IOException {
+        synchronized (this) {
+            registrarAcceso(id);
+            Entrada entrada = buscar(id);
+            if (entrada != null) {
+                aciertos.incrementAndGet();
+                return entrada.producto;
+            }
+        }
+        fallos.incrementAndGet();
+        Producto producto = catalogo.cargar(id);
+        if (producto != null) {
+            synchronized (this) {
+                insertar(id, producto);
+            }
+        }
+        return producto;
+    }
+
+    public synchronized void invalidar(String id) {
+        ventana.remove(id);
+        principal.remove(id);
+    }
+
+    private Entrada buscar(String id) {
+        Entrada entrada = ventana.get(id);
+        if (entrada == null) {
+            entrada = principal.get(id);
+        }
+        if (entrada != null && ttlMillis > 0 && entrada.caducidad < System.currentTimeMillis()) {
+            invalidar(id);
+            desalojos.incrementAndGet();
+            return null;
+        }
+        return entrada;
+    }
+
+    private void insertar(String id, Producto producto) {
+        if (principal.containsKey(id) || ventana.containsKey(id)) {
+            return;
+        }
+        ventana.put(id, new Entrada(producto, System.currentTimeMillis() + ttlMillis));
+        if (ventana.size() <= capacidadVentana) {
+            return;
+        }
+        Iterator<Map.Entry<String, Entrada>> itVentana = ventana.entrySet().iterator();
+        Map.Entry<String, Entrada> candidato = itVentana.next();
+        itVentana.remove();
+        if (principal.size() < capacidadPrincipal) {
+            principal.put(candidato.getKey(), candidato.getValue());
+            return;
+        }
+        Iterator<Map.Entry<String, Entrada>> itPrincipal = principal.entrySet().iterator();
+        Map.Entry<String, Entrada> victima = itPrincipal.next();
+        if (frecuencia(candidato.getKey()) > frecuencia(victima.getKey())) {
+            itPrincipal.remove();
+            principal.put(candidato.getKey(), candidato.getValue());
+        }
+        desalojos.incrementAndGet();
+    }
+
+    private int indice(String id, int fila) {
+        int h = id.hashCode() * (0x9E3779B9 + 2 * fila);
+        return (h ^ (h >>> 16)) & mascara;
+    }
+
+    private void registrarAcceso(String id) {
+        for (int fila = 0; fila < frecuencias.length; fila++) {
+            int i = indice(id, fila);
+            if (frecuencias[fila][i] < MAX_FRECUENCIA) {
+                frecuencias[fila][i]++;
+            }
+        }
+        if (++incrementos >= umbralEnvejecimiento) {
+            for (byte[] fila : frecuencias) {
+                for (int i = 0; i < fila.length; i++) {
+                    fila[i] >>= 1;
+                }
+            }
+            incrementos = 0;
+        }
+    }
+
+    private int frecuencia(String id) {
+        int minimo = MAX_FRECUENCIA;
+        for (int fila = 0; fila < frecuencias.length; fila++) {
+            minimo = Math.min(minimo, frecuencias[fila][indice(id, fila)]);
+        }
+        return minimo;
+    }
+
+    public long getAciertos() {
+        return aciertos.get();
+    }
+
+    public long getFallos() {
+        return fallos.get();
+    }
+
+    public long getDesalojos() {
+        return desalojos.get();
+    }
+
+    public synchronized int getTamaño() {
+        return ventana.size() + principal.size();
+    }
+}
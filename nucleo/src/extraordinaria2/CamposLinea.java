@@ -0,0 +1,138 @@
+package extraordinaria2;
+
+import java.util.*;
+
+// Campos de una línea separada por '|', guardados como posiciones dentro de la línea: los números y booleanos
+// se leen directamente de los caracteres y solo se crean subcadenas para los textos que se piden. Un mismo
+// objeto se reutiliza para todas las líneas de un fichero
+final class CamposLinea {
+    private String linea;
+    private int[] limites = new int[16]; // inicio y fin de cada campo
+    private int numero;
+
+    // Equivale a line.trim().split("\\|"): sin los campos vacíos del final
+    CamposLinea leer(String line) {
+        int inicio = 0;
+        int fin = line.length();
+        while (inicio < fin && line.charAt(inicio) <= ' ') {
+            inicio++;
+        }
+        while (fin > inicio && line.charAt(fin - 1) <= ' ') {
+            fin--;
+        }
+        this.linea = line.substring(inicio, fin);
+        numero = 0;
+        int campo = 0;
+        for (int i = 0; i <= linea.length(); i++) {
+            if (i == linea.length() || linea.charAt(i) == '|') {
+                if (numero * 2 + 2 > limites.length) {
+                    limites = Arrays.copyOf(limites, limites.length * 2);
+                }
+                limites[numero * 2] = campo;
+                limites[numero * 2 + 1] = i;
+                numero++;
+                campo = i + 1;
+            }
+        }
+        while (numero > 1 && longitud(numero - 1) == 0) {
+            numero--;
+        }
+        return this;
+    }
+
+    int numero() {
+        return numero;
+    }
+
+    int longitud(int campo) {
+        return limites[campo * 2 + 1] - limites[campo * 2];
+    }
+
+    // Mismo valor que line.trim().hashCode(), que es la huella que guardan los ficheros vigilados
+    int huella() {
+        return linea.hashCode();
+    }
+
+    boolean es(int campo, String valor) {
+        return campo < numero && longitud(campo) == valor.length()
+                && linea.regionMatches(limites[campo * 2], valor, 0, valor.length());
+    }
+
+    String texto(int campo) {
+        comprobar(campo);
+        return linea.substring(limites[campo * 2], limites[campo * 2 + 1]);
+    }
+
+    String texto(int campo, TablaInternado tabla) {
+        comprobar(campo);
+        return tabla.internar(linea, limites[campo * 2], limites[campo * 2 + 1]);
+    }
+
+    int entero(int campo) {
+        long valor = largo(campo);
+        if (valor < Integer.MIN_VALUE || valor > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Número fuera de rango: " + texto(campo));
+        }
+        return (int) valor;
+    }
+
+    private long largo(int campo) {
+        comprobar(campo);
+        int i = limites[campo * 2];
+        int fin = limites[campo * 2 + 1];
+        boolean negativo = i < fin && linea.charAt(i) == '-';
+        if (negativo || (i < fin && linea.charAt(i) == '+')) {
+            i++;
+        }
+        if (i == fin || fin - i > 18) {
+            throw new NumberFormatException("Número inválido: " + texto(campo));
+        }
+        long valor = 0;
+        for (; i < fin; i++) {
+            int digito = linea.charAt(i) - '0';
+            if (digito < 0 || digito > 9) {
+                throw new NumberFormatException("Número inválido: " + texto(campo));
+            }
+            valor = valor * 10 + digito;
+        }
+        return negativo ? -valor : valor;
+    }
+
+    // Importe en céntimos de un precio como "10.99" o "3.5". Lo que no tiene esa forma (exponentes, más de
+    // dos decimales...) se lee con Double.parseDouble como antes
+    long centimos(int campo) {
+        comprobar(campo);
+        int inicio = limites[campo * 2];
+        int fin = limites[campo * 2 + 1];
+        long euros = 0;
+        int i = inicio;
+        for (; i < fin && i - inicio < 15 && Character.isDigit(linea.charAt(i)); i++) {
+            euros = euros * 10 + (linea.charAt(i) - '0');
+        }
+        if (i > inicio && (i == fin || (linea.charAt(i) == '.' && fin - i <= 3))) {
+            long centimos = 0;
+            int decimales = 0;
+            for (int j = i + 1; j < fin; j++, decimales++) {
+                char c = linea.charAt(j);
+                if (c < '0' || c > '9') {
+                    return Dinero.aCentimos(Double.parseDouble(texto(campo)));
+                }
+                centimos = centimos * 10 + (c - '0');
+            }
+            return euros * 100 + (decimales == 1 ? centimos * 10 : centimos);
+        }
+        return Dinero.aCentimos(Double.parseDouble(texto(campo)));
+    }
+
+    // Igual que Boolean.parseBoolean: "true" sin distinguir mayúsculas, cualquier otra cosa es false
+    boolean booleano(int campo) {
+        comprobar(campo);
+        return longitud(campo) == 4 && linea.regionMatches(true, limites[campo * 2], "true", 0, 4);
+    }
+
+    private void comprobar(int campo) {
+        if (campo >= numero) {
+            throw new ArrayIndexOutOfBoundsException("La línea no tiene el campo " + campo + ": " + linea);
+        }
+    }
+}
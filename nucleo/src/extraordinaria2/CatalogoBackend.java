@@ -0,0 +1,17 @@
+package extraordinaria2;
+
+import java.io.*;
+import java.util.*;
+
+// Interfaz del almacenamiento persistente del catálogo de productos
+public interface CatalogoBackend {
+    Producto cargar(String id) throws IOException;
+
+    void guardar(Producto producto) throws IOException;
+
+    void eliminar(String id) throws IOException;
+
+    boolean contiene(String id);
+
+    Set<String> ids();
+}
@@ -0,0 +1,125 @@
+package extraordinaria2;
+
+import java.util.*;
+
+// Consulta declarativa: filtro / agrupación / agregados / orden / límite sobre los campos de Producto, Libro,
+// JuegoMesa o Usuario. Un campo es cualquier getter sin parámetros: "categoria" es getCategoria(), "nuevo" es
+// esNuevo(). Se compila una vez en ConsultaCompilada
+public class Consulta<T> {
+    private final Class<T> tipo;
+    final List<Object[]> filtros = new ArrayList<>(); // {campo, operador, valor}
+    final List<String> seleccion = new ArrayList<>();
+    final List<String> agrupacion = new ArrayList<>();
+    final List<String[]> agregados = new ArrayList<>(); // {función, campo}
+    String orden;
+    boolean descendente;
+    int limite = Integer.MAX_VALUE;
+    private volatile ConsultaCompilada<T> compilada;
+
+    private Consulta(Class<T> tipo) {
+        this.tipo = tipo;
+    }
+
+    public static <T> Consulta<T> sobre(Class<T> tipo) {
+        return new Consulta<>(tipo);
+    }
+
+    // Operadores: =, !=, <, <=, >, >=
+    public Consulta<T> donde(String campo, String operador, Object valor) {
+        filtros.add(new Object[] { campo, operador, valor });
+        return modificada();
+    }
+
+    public Consulta<T> seleccionar(String... campos) {
+        seleccion.addAll(Arrays.asList(campos));
+        return modificada();
+    }
+
+    public Consulta<T> agruparPor(String... campos) {
+        agrupacion.addAll(Arrays.asList(campos));
+        return modificada();
+    }
+
+    // Los agregados dan columnas "cuenta", "suma(campo)", "minimo(campo)", "maximo(campo)" y "media(campo)"
+    public Consulta<T> contar() {
+        return agregar("cuenta", null);
+    }
+
+    public Consulta<T> sumar(String campo) {
+        return agregar("suma", campo);
+    }
+
+    public Consulta<T> minimo(String campo) {
+        return agregar("minimo", campo);
+    }
+
+    public Consulta<T> maximo(String campo) {
+        return agregar("maximo", campo);
+    }
+
+    public Consulta<T> media(String campo) {
+        return agregar("media", campo);
+    }
+
+    private Consulta<T> agregar(String funcion, String campo) {
+        agregados.add(new String[] { funcion, campo });
+        return modificada();
+    }
+
+    // Con agrupación o agregados se ordena por una columna del resultado; si no, por un campo del elemento
+    public Consulta<T> ordenarPor(String columna, boolean descendente) {
+        this.orden = columna;
+        this.descendente = descendente;
+        return modificada();
+    }
+
+    public Consulta<T> limite(int limite) {
+        if (limite < 0) {
+            throw new IllegalArgumentException("Límite inválido: " + limite);
+        }
+        this.limite = limite;
+        return modificada();
+    }
+
+    private Consulta<T> modificada() {
+        compilada = null;
+        return this;
+    }
+
+    public Class<T> getTipo() {
+        return tipo;
+    }
+
+    public ConsultaCompilada<T> compilar() {
+        ConsultaCompilada<T> resultado = compilada;
+        if (resultado == null) {
+            resultado = new ConsultaCompilada<>(this);
+            compilada = resultado;
+        }
+        return resultado;
+    }
+
+    // Valor con el que se filtra un campo por igualdad, o null si no hay ese filtro
+    Object valorIgualdad(String campo) {
+        for (Object[] filtro : filtros) {
+            if (filtro[0].equals(campo) && filtro[1].equals("=")) {
+                return filtro[2];
+            }
+        }
+        return null;
+    }
+
+    // Mayor cota inferior (>, >= o =) de un campo de texto, o null si no hay
+    Object cotaInferior(String campo) {
+        String cota = null;
+        for (Object[] filtro : filtros) {
+            if (filtro[0].equals(campo) && filtro[2] instanceof String
+                    && (filtro[1].equals(">") || filtro[1].equals(">=") || filtro[1].equals("="))) {
+                if (cota == null || cota.compareTo((String) filtro[2]) < 0) {
+                    cota = (String) filtro[2];
+                }
+            }
+        }
+        return cota;
+    }
+}
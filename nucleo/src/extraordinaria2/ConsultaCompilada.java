@@ -0,0 +1,284 @@
+package extraordinaria2;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+// Plan de ejecución de una consulta: filtros, claves y agregados ya resueltos a lambdas; ejecutar solo recorre
+// el origen una vez
+public class ConsultaCompilada<T> {
+    private final Class<T> tipo;
+    private final List<Predicate<Object>> filtros;
+    private final AccesoCampo[] seleccion;
+    private final AccesoCampo[] claves;
+    private static final int SUMA = 0;
+    private static final int MINIMO = 1;
+    private static final int MAXIMO = 2;
+
+    private final String[] funciones;
+    private final int[] codigos; // SUMA, MINIMO o MAXIMO: la función ya resuelta para el bucle de agregación
+    private final List<ToLongFunction<Object>> agregados; // null en la posición de "cuenta"
+    private final List<String> columnas = new ArrayList<>();
+    private final AccesoCampo ordenCampo;
+    private final int ordenColumna;
+    private final boolean ordenPorTitulo;
+    private final boolean descendente;
+    private final int limite;
+
+    ConsultaCompilada(Consulta<T> consulta) {
+        this.tipo = consulta.getTipo();
+        this.filtros = new ArrayList<>(consulta.filtros.size());
+        for (Object[] filtro : consulta.filtros) {
+            filtros.add(compilarFiltro(AccesoCampo.de(tipo, (String) filtro[0]), (String) filtro[1], filtro[2]));
+        }
+        this.claves = new AccesoCampo[consulta.agrupacion.size()];
+        for (int i = 0; i < claves.length; i++) {
+            claves[i] = AccesoCampo.de(tipo, consulta.agrupacion.get(i));
+            columnas.add(claves[i].campo);
+        }
+        this.funciones = new String[consulta.agregados.size()];
+        this.agregados = new ArrayList<>(Collections.nCopies(funciones.length, null));
+        this.codigos = new int[funciones.length];
+        for (int i = 0; i < funciones.length; i++) {
+            String[] agregado = consulta.agregados.get(i);
+            funciones[i] = agregado[0];
+            codigos[i] = agregado[0].equals("minimo") ? MINIMO : agregado[0].equals("maximo") ? MAXIMO : SUMA;
+            if (agregado[1] == null) {
+                columnas.add(agregado[0]);
+                continue;
+            }
+            AccesoCampo acceso = AccesoCampo.de(tipo, agregado[1]);
+            if (acceso.entero == null) {
+                throw new IllegalArgumentException("Solo se pueden agregar campos enteros: " + agregado[1]);
+            }
+            agregados.set(i, acceso.entero);
+            columnas.add(agregado[0] + "(" + agregado[1] + ")");
+        }
+
+        boolean agrupada = claves.length > 0 || funciones.length > 0;
+        this.seleccion = new AccesoCampo[agrupada ? 0 : consulta.seleccion.size()];
+        for (int i = 0; i < seleccion.length; i++) {
+            seleccion[i] = AccesoCampo.de(tipo, consulta.seleccion.get(i));
+            columnas.add(seleccion[i].campo);
+        }
+        if (!agrupada && seleccion.length == 0) {
+            columnas.add("elemento");
+        }
+
+        this.descendente = consulta.descendente;
+        this.limite = consulta.limite;
+        if (consulta.orden == null) {
+            ordenCampo = null;
+            ordenColumna = -1;
+        } else if (agrupada) {
+            ordenCampo = null;
+            ordenColumna = columnas.indexOf(consulta.orden);
+            if (ordenColumna < 0) {
+                throw new IllegalArgumentException("No hay una columna " + consulta.orden + " en el resultado.");
+            }
+        } else {
+            ordenCampo = AccesoCampo.de(tipo, consulta.orden);
+            ordenColumna = -1;
+        }
+        this.ordenPorTitulo = !agrupada && !descendente && "titulo".equals(consulta.orden);
+    }
+
+    public List<String> getColumnas() {
+        return Collections.unmodifiableList(columnas);
+    }
+
+    private static Predicate<Object> compilarFiltro(AccesoCampo acceso, String operador, Object valor) {
+        if (acceso.entero != null) {
+            if (!(valor instanceof Number)) {
+                throw new IllegalArgumentException("El campo " + acceso.campo + " es entero: " + valor);
+            }
+            ToLongFunction<Object> campo = acceso.entero;
+            long constante = ((Number) valor).longValue();
+            switch (operador) {
+            case "=":
+                return objeto -> campo.applyAsLong(objeto) == constante;
+            case "!=":
+                return objeto -> campo.applyAsLong(objeto) != constante;
+            case "<":
+                return objeto -> campo.applyAsLong(objeto) < constante;
+            case "<=":
+                return objeto -> campo.applyAsLong(objeto) <= constante;
+            case ">":
+                return objeto -> campo.applyAsLong(objeto) > constante;
+            case ">=":
+                return objeto -> campo.applyAsLong(objeto) >= constante;
+            default:
+                throw new IllegalArgumentException("Operador desconocido: " + operador);
+            }
+        }
+        Function<Object, Object> campo = acceso.valor;
+        switch (operador) {
+        case "=":
+            return objeto -> Objects.equals(campo.apply(objeto), valor);
+        case "!=":
+            return objeto -> !Objects.equals(campo.apply(objeto), valor);
+        case "<":
+            return objeto -> comparar(campo.apply(objeto), valor) < 0;
+        case "<=":
+            return objeto -> comparar(campo.apply(objeto), valor) <= 0;
+        case ">":
+            return objeto -> comparar(campo.apply(objeto), valor) > 0;
+        case ">=":
+            return objeto -> comparar(campo.apply(objeto), valor) >= 0;
+        default:
+            throw new IllegalArgumentException("Operador desconocido: " + operador);
+        }
+    }
+
+    // null va antes que cualquier valor
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int comparar(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return ((Comparable) a).compareTo(b);
+    }
+
+    // origenPorTitulo indica que el origen ya viene en orden de título
+    List<Object[]> ejecutar(Iterable<?> origen, boolean origenPorTitulo) {
+        if (limite == 0) {
+            return new ArrayList<>();
+        }
+        if (claves.length > 0 || funciones.length > 0) {
+            return ordenarYLimitar(agrupar(origen));
+        }
+        boolean sinOrdenar = ordenCampo == null || (ordenPorTitulo && origenPorTitulo);
+        List<Object> elementos = new ArrayList<>();
+        for (Object objeto : origen) {
+            if (cumple(objeto)) {
+                elementos.add(objeto);
+                if (sinOrdenar && elementos.size() == limite) {
+                    break;
+                }
+            }
+        }
+        if (!sinOrdenar) {
+            Comparator<Object> comparador = ordenCampo.entero != null
+                    ? Comparator.comparingLong(ordenCampo.entero)
+                    : (a, b) -> comparar(ordenCampo.valor.apply(a), ordenCampo.valor.apply(b));
+            elementos.sort(descendente ? comparador.reversed() : comparador);
+            if (elementos.size() > limite) {
+                elementos = elementos.subList(0, limite);
+            }
+        }
+        List<Object[]> filas = new ArrayList<>(elementos.size());
+        for (Object objeto : elementos) {
+            if (seleccion.length == 0) {
+                filas.add(new Object[] { objeto });
+                continue;
+            }
+            Object[] fila = new Object[seleccion.length];
+            for (int i = 0; i < seleccion.length; i++) {
+                fila[i] = seleccion[i].valor.apply(objeto);
+            }
+            filas.add(fila);
+        }
+        return filas;
+    }
+
+    private boolean cumple(Object objeto) {
+        if (!tipo.isInstance(objeto)) {
+            return false;
+        }
+        for (Predicate<Object> filtro : filtros) {
+            if (!filtro.test(objeto)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Un acumulador por grupo: [cuenta, y por agregado su valor]. La clave es el valor del campo, o la lista de
+    // valores si se agrupa por varios campos
+    private List<Object[]> agrupar(Iterable<?> origen) {
+        Map<Object, long[]> grupos = new LinkedHashMap<>();
+        // Sin agrupación hay un único acumulador y no hace falta buscarlo en el mapa en cada elemento
+        long[] unico = claves.length == 0 ? new long[1 + funciones.length] : null;
+        for (Object objeto : origen) {
+            if (!cumple(objeto)) {
+                continue;
+            }
+            if (unico != null) {
+                acumular(unico, objeto);
+                continue;
+            }
+            Object clave;
+            if (claves.length == 1) {
+                clave = claves[0].valor.apply(objeto);
+            } else {
+                Object[] valores = new Object[claves.length];
+                for (int i = 0; i < claves.length; i++) {
+                    valores[i] = claves[i].valor.apply(objeto);
+                }
+                clave = Arrays.asList(valores);
+            }
+            acumular(grupos.computeIfAbsent(clave, c -> new long[1 + funciones.length]), objeto);
+        }
+        // Sin agrupación los agregados dan siempre una fila, aunque ningún elemento cumpla los filtros
+        if (unico != null) {
+            grupos.put(Collections.emptyList(), unico);
+        }
+        List<Object[]> filas = new ArrayList<>(grupos.size());
+        for (Map.Entry<Object, long[]> grupo : grupos.entrySet()) {
+            Object[] fila = new Object[claves.length + funciones.length];
+            if (claves.length == 1) {
+                fila[0] = grupo.getKey();
+            } else {
+                List<?> valores = (List<?>) grupo.getKey();
+                for (int i = 0; i < claves.length; i++) {
+                    fila[i] = valores.get(i);
+                }
+            }
+            long[] acumulado = grupo.getValue();
+            for (int i = 0; i < funciones.length; i++) {
+                switch (funciones[i]) {
+                case "cuenta":
+                    fila[claves.length + i] = acumulado[0];
+                    break;
+                case "media":
+                    fila[claves.length + i] = (double) acumulado[i + 1] / acumulado[0];
+                    break;
+                default:
+                    fila[claves.length + i] = acumulado[i + 1];
+                }
+            }
+            filas.add(fila);
+        }
+        return filas;
+    }
+
+    private void acumular(long[] acumulado, Object objeto) {
+        boolean primero = acumulado[0]++ == 0;
+        for (int i = 0; i < funciones.length; i++) {
+            ToLongFunction<Object> agregado = agregados.get(i);
+            if (agregado == null) {
+                continue;
+            }
+            long valor = agregado.applyAsLong(objeto);
+            switch (codigos[i]) {
+            case MINIMO:
+                acumulado[i + 1] = primero ? valor : Math.min(acumulado[i + 1], valor);
+                break;
+            case MAXIMO:
+                acumulado[i + 1] = primero ? valor : Math.max(acumulado[i + 1], valor);
+                break;
+            default:
+                acumulado[i + 1] = Math.addExact(acumulado[i + 1], valor);
+            }
+        }
+    }
+
+    private List<Object[]> ordenarYLimitar(List<Object[]> filas) {
+        if (ordenColumna >= 0) {
+            Comparator<Object[]> comparador = (a, b) -> comparar(a[ordenColumna], b[ordenColumna]);
+            filas.sort(descendente ? comparador.reversed() : comparador);
+        }
+        return filas.size() > limite ? new ArrayList<>(filas.subList(0, limite)) : filas;
+    }
+}
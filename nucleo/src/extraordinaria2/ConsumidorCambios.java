@@ -0,0 +1,91 @@
+package extraordinaria2;
+
+import java.io.*;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Hilo de un suscriptor: espera a que el cursor avance, entrega el lote al destino y publica hasta dónde ha
+// leído. Si el destino falla se cuenta el error y se sigue, para no frenar a la librería. Cada evento se copia
+// antes de entregarlo: si el escritor desconecta al suscriptor, la casilla puede reescribirse mientras se lee
+final class ConsumidorCambios {
+    private final AnilloCambios anillo;
+    private final DestinoCambios destino;
+    private final AtomicLong secuencia;
+    private final Thread hilo;
+    private final AtomicLong errores = new AtomicLong();
+    private final EventoCambio leido = new EventoCambio();
+    private volatile boolean activo = true;
+    private volatile boolean desconectado;
+
+    ConsumidorCambios(AnilloCambios anillo, DestinoCambios destino, long inicio) {
+        this.anillo = anillo;
+        this.destino = destino;
+        this.secuencia = new AtomicLong(inicio);
+        this.hilo = new Thread(this::consumir, "consumidor-cambios");
+        this.hilo.setDaemon(true);
+    }
+
+    void iniciar() {
+        hilo.start();
+    }
+
+    long getSecuencia() {
+        return secuencia.get();
+    }
+
+    public long getErrores() {
+        return errores.get();
+    }
+
+    public boolean estaDesconectado() {
+        return desconectado;
+    }
+
+    void desconectar() {
+        desconectado = true;
+    }
+
+    private void consumir() {
+        long siguiente = secuencia.get() + 1;
+        int esperas = 0;
+        while (!desconectado) {
+            long disponible = anillo.getCursor();
+            if (disponible < siguiente) {
+                if (!activo) {
+                    return;
+                }
+                // Espera activa breve y después cada vez más larga, hasta 1 ms
+                if (++esperas > 100) {
+                    LockSupport.parkNanos(Math.min(1_000_000, 1000L * (esperas - 100)));
+                } else {
+                    Thread.onSpinWait();
+                }
+                continue;
+            }
+            esperas = 0;
+            for (long s = siguiente; s <= disponible; s++) {
+                leido.copiarDe(anillo.evento(s));
+                VarHandle.loadLoadFence();
+                if (desconectado) {
+                    // La copia puede mezclar el evento con el que lo reemplaza: no se entrega
+                    return;
+                }
+                try {
+                    destino.alEvento(leido, s == disponible);
+                } catch (IOException | RuntimeException e) {
+                    errores.incrementAndGet();
+                }
+                // Se publica evento a evento para que el escritor vea avanzar a un suscriptor lento
+                secuencia.lazySet(s);
+            }
+            siguiente = disponible + 1;
+        }
+    }
+
+    void detener() throws InterruptedException, IOException {
+        activo = false;
+        hilo.join();
+        destino.close();
+    }
+}
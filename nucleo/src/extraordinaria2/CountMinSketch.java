@@ -0,0 +1,56 @@
+package extraordinaria2;
+
+import java.util.*;
+
+// Count-Min sketch: frecuencia aproximada (nunca por debajo de la real) con memoria fija. Se fusiona sumando
+public class CountMinSketch {
+    private final int ancho;
+    private final long[][] contadores;
+
+    public CountMinSketch(int ancho, int profundidad) {
+        this.ancho = ancho;
+        this.contadores = new long[profundidad][ancho];
+    }
+
+    private int columna(long hash, int fila) {
+        long h = hash + fila * (hash >>> 32 | 1);
+        return (int) Math.floorMod(h, (long) ancho);
+    }
+
+    public void incrementar(long hash, long cantidad) {
+        for (int fila = 0; fila < contadores.length; fila++) {
+            contadores[fila][columna(hash, fila)] += cantidad;
+        }
+    }
+
+    public long estimar(long hash) {
+        long minimo = Long.MAX_VALUE;
+        for (int fila = 0; fila < contadores.length; fila++) {
+            minimo = Math.min(minimo, contadores[fila][columna(hash, fila)]);
+        }
+        return minimo;
+    }
+
+    public void fusionar(CountMinSketch otro) {
+        if (otro.ancho != ancho || otro.contadores.length != contadores.length) {
+            throw new IllegalArgumentException("No se pueden fusionar sketches de distinto tamaño.");
+        }
+        for (int fila = 0; fila < contadores.length; fila++) {
+            for (int i = 0; i < ancho; i++) {
+                contadores[fila][i] += otro.contadores[fila][i];
+            }
+        }
+    }
+
+    public CountMinSketch copia() {
+        CountMinSketch copia = new CountMinSketch(ancho, contadores.length);
+        copia.fusionar(this);
+        return copia;
+    }
+
+    public void limpiar() {
+        for (long[] fila : contadores) {
+            Arrays.fill(fila, 0);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package extraordinaria2;
+
+import java.io.*;
+
+// Destino de los cambios. finLote indica el último evento disponible en ese momento: es donde conviene
+// vaciar buffers o hacer la escritura de red. Un destino no debe llamar a la librería: si el anillo se llena,
+// la librería espera con su cerrojo tomado a que los destinos avancen
+public interface DestinoCambios extends Closeable {
+    void alEvento(EventoCambio evento, boolean finLote) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,26 @@
+package extraordinaria2;
+
+import java.util.*;
+
+// Destino en memoria con los últimos eventos, para pruebas y para consultar la actividad reciente
+class DestinoCambiosMemoria implements DestinoCambios {
+    private final int capacidad;
+    private final ArrayDeque<EventoCambio> ultimos;
+
+    public DestinoCambiosMemoria(int capacidad) {
+        this.capacidad = capacidad;
+        this.ultimos = new ArrayDeque<>(capacidad);
+    }
+
+    @Override
+    public synchronized void alEvento(EventoCambio evento, boolean finLote) {
+        if (ultimos.size() == capacidad) {
+            ultimos.removeFirst();
+        }
+        ultimos.addLast(evento.copia());
+    }
+
+    public synchronized List<EventoCambio> getUltimos() {
+        return new ArrayList<>(ultimos);
+    }
+}
@@ -0,0 +1,9 @@
+package extraordinaria2;
+
+import java.io.*;
+import java.util.*;
+
+// Destino de los reembolsos: recibe un lote entero en cada llamada
+public interface DestinoReembolsos {
+    void escribir(List<RegistroReembolso> lote) throws IOException;
+}
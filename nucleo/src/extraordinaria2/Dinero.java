@@ -0,0 +1,21 @@
+package extraordinaria2;
+
+// Conversión y operaciones con importes en céntimos
+final class Dinero {
+    private Dinero() {
+    }
+
+    // Los precios de los ficheros tienen como mucho dos decimales, así que el redondeo es exacto
+    static long aCentimos(double euros) {
+        return Math.round(euros * 100);
+    }
+
+    static double aEuros(long centimos) {
+        return centimos / 100.0;
+    }
+
+    // Aplica un porcentaje de descuento redondeando al céntimo más cercano
+    static long descontar(long centimos, double porcentaje) {
+        return Math.round(centimos * (100 - porcentaje) / 100);
+    }
+}
@@ -0,0 +1,79 @@
+package extraordinaria2;
+
+import java.lang.management.ManagementFactory;
+
+// Resultado de cargar un fichero: registros, tiempo, bytes asignados por el hilo que cargó y heap usado después
+public final class EstadisticasCarga {
+    private final String fichero;
+    private final int registros;
+    private final long nanos;
+    private final long bytesAsignados;
+    private final long heapUsado;
+
+    private EstadisticasCarga(String fichero, int registros, long nanos, long bytesAsignados, long heapUsado) {
+        this.fichero = fichero;
+        this.registros = registros;
+        this.nanos = nanos;
+        this.bytesAsignados = bytesAsignados;
+        this.heapUsado = heapUsado;
+    }
+
+    static Medicion empezar() {
+        return new Medicion();
+    }
+
+    // Bytes asignados por el hilo actual, o -1 si la JVM no lo mide
+    private static long asignadosHilo() {
+        java.lang.management.ThreadMXBean hilos = ManagementFactory.getThreadMXBean();
+        if (hilos instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) hilos).getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    static final class Medicion {
+        private final long inicio = System.nanoTime();
+        private final long asignadosAntes = asignadosHilo();
+
+        private Medicion() {
+        }
+
+        EstadisticasCarga terminar(String fichero, int registros) {
+            long nanos = System.nanoTime() - inicio;
+            long asignados = asignadosAntes < 0 ? -1 : asignadosHilo() - asignadosAntes;
+            long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            return new EstadisticasCarga(fichero, registros, nanos, asignados, heap);
+        }
+    }
+
+    public String getFichero() {
+        return fichero;
+    }
+
+    public int getRegistros() {
+        return registros;
+    }
+
+    public long getMilisegundos() {
+        return nanos / 1_000_000;
+    }
+
+    public long getBytesAsignados() {
+        return bytesAsignados;
+    }
+
+    // Megabytes asignados por segundo durante la carga
+    public double getTasaAsignacion() {
+        return bytesAsignados < 0 || nanos == 0 ? 0 : bytesAsignados / 1048576.0 / (nanos / 1e9);
+    }
+
+    public long getHeapUsado() {
+        return heapUsado;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Carga de %s: %d registros en %d ms, %d KB asignados (%.1f MB/s), heap %d KB", fichero,
+                registros, getMilisegundos(), bytesAsignados / 1024, getTasaAsignacion(), heapUsado / 1024);
+    }
+}
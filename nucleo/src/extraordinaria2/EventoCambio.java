@@ -0,0 +1,57 @@
+package extraordinaria2;
+
+// Casilla del anillo de cambios. Se reutiliza: un destino no debe guardar la referencia, sino copiarla o
+// convertirla en línea antes de volver de alEvento
+public final class EventoCambio {
+    TipoCambio tipo;
+    long secuencia;
+    long instante;
+    String clave; // id del producto o DNI del usuario
+    String idProducto; // producto comprado o devuelto
+    long importeCentimos; // precio de alta, de compra o reembolso
+
+    public TipoCambio getTipo() {
+        return tipo;
+    }
+
+    public long getSecuencia() {
+        return secuencia;
+    }
+
+    public long getInstante() {
+        return instante;
+    }
+
+    public String getClave() {
+        return clave;
+    }
+
+    public String getIdProducto() {
+        return idProducto;
+    }
+
+    public long getImporteCentimos() {
+        return importeCentimos;
+    }
+
+    public EventoCambio copia() {
+        EventoCambio copia = new EventoCambio();
+        copia.copiarDe(this);
+        return copia;
+    }
+
+    void copiarDe(EventoCambio otro) {
+        tipo = otro.tipo;
+        secuencia = otro.secuencia;
+        instante = otro.instante;
+        clave = otro.clave;
+        idProducto = otro.idProducto;
+        importeCentimos = otro.importeCentimos;
+    }
+
+    // Campos separados por '|', como el resto de ficheros de la librería; "-" si no hay producto
+    public String aLinea() {
+        return tipo + "|" + secuencia + "|" + instante + "|" + clave + "|" + (idProducto == null ? "-" : idProducto)
+                + "|" + importeCentimos;
+    }
+}
@@ -0,0 +1,312 @@
+package extraordinaria2;
+
+import java.io.*;
+import java.util.*;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Exportación a un fichero columnar. Cada tabla se escribe por grupos de filas; dentro de un grupo cada columna
+// es un bloque independiente comprimido con Deflate, así que las columnas de un grupo se codifican en paralelo
+// y la memoria usada no pasa de un grupo por tabla. Columnas:
+// - ENTERO: diferencias con el valor anterior en zigzag + varint (ids, contadores y céntimos crecen poco)
+// - TEXTO: longitud + 1 en varint (0 es null) seguida de los bytes UTF-8
+// - DICCIONARIO: para columnas con pocos valores distintos (categoría, temática, autor...): el diccionario
+//   del bloque y después rachas (código, repeticiones) en varint; el código 0 es null
+class ExportadorColumnar implements Closeable {
+    static final int FILAS_POR_GRUPO = 64 * 1024;
+    static final String MAGICO = "LIBCOL1";
+
+    enum Tipo {
+        ENTERO, TEXTO, DICCIONARIO
+    }
+
+    private final DataOutputStream salida;
+    private final int filasPorGrupo;
+
+    public ExportadorColumnar(String filename, int filasPorGrupo) throws IOException {
+        this.salida = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+        this.filasPorGrupo = filasPorGrupo;
+        salida.writeUTF(MAGICO);
+    }
+
+    // Empieza una tabla; hay que cerrarla antes de empezar la siguiente
+    public Tabla tabla(String nombre, String[] columnas, Tipo[] tipos) throws IOException {
+        if (columnas.length != tipos.length) {
+            throw new IllegalArgumentException("Cada columna necesita un tipo.");
+        }
+        salida.writeBoolean(true);
+        salida.writeUTF(nombre);
+        salida.writeInt(columnas.length);
+        for (int i = 0; i < columnas.length; i++) {
+            salida.writeUTF(columnas[i]);
+            salida.writeByte(tipos[i].ordinal());
+        }
+        return new Tabla(tipos);
+    }
+
+    @Override
+    public void close() throws IOException {
+        salida.writeBoolean(false);
+        salida.close();
+    }
+
+    // Filas de una tabla en curso: se rellenan las columnas con texto/entero y se confirma con siguienteFila.
+    // Las columnas que no se rellenan quedan a null (texto) o 0 (entero)
+    class Tabla implements Closeable {
+        private final Tipo[] tipos;
+        private final long[][] enteros;
+        private final String[][] textos;
+        private int filas;
+
+        private Tabla(Tipo[] tipos) {
+            this.tipos = tipos;
+            this.enteros = new long[tipos.length][];
+            this.textos = new String[tipos.length][];
+            for (int i = 0; i < tipos.length; i++) {
+                if (tipos[i] == Tipo.ENTERO) {
+                    enteros[i] = new long[filasPorGrupo];
+                } else {
+                    textos[i] = new String[filasPorGrupo];
+                }
+            }
+        }
+
+        public void entero(int columna, long valor) {
+            enteros[columna][filas] = valor;
+        }
+
+        public void texto(int columna, String valor) {
+            textos[columna][filas] = valor;
+        }
+
+        public void siguienteFila() throws IOException {
+            if (++filas == filasPorGrupo) {
+                volcar();
+            }
+        }
+
+        private void volcar() throws IOException {
+            byte[][] bloques = IntStream.range(0, tipos.length).parallel().mapToObj(this::codificar)
+                    .toArray(byte[][]::new);
+            salida.writeInt(filas);
+            for (byte[] bloque : bloques) {
+                salida.write(bloque);
+            }
+            for (int i = 0; i < tipos.length; i++) {
+                if (enteros[i] != null) {
+                    Arrays.fill(enteros[i], 0, filas, 0);
+                } else {
+                    Arrays.fill(textos[i], 0, filas, null);
+                }
+            }
+            filas = 0;
+        }
+
+        // Devuelve el bloque listo para escribir: tamaño sin comprimir, tamaño comprimido y datos
+        private byte[] codificar(int columna) {
+            ByteArrayOutputStream datos = new ByteArrayOutputStream(filas * 2);
+            switch (tipos[columna]) {
+            case ENTERO:
+                long anterior = 0;
+                for (int i = 0; i < filas; i++) {
+                    long diferencia = enteros[columna][i] - anterior;
+                    escribirVarint(datos, (diferencia << 1) ^ (diferencia >> 63));
+                    anterior = enteros[columna][i];
+                }
+                break;
+            case TEXTO:
+                for (int i = 0; i < filas; i++) {
+                    escribirTexto(datos, textos[columna][i]);
+                }
+                break;
+            case DICCIONARIO:
+                codificarDiccionario(datos, textos[columna]);
+                break;
+            }
+            return comprimir(datos.toByteArray());
+        }
+
+        private void codificarDiccionario(ByteArrayOutputStream datos, String[] valores) {
+            Map<String, Integer> codigos = new LinkedHashMap<>();
+            int[] columna = new int[filas];
+            for (int i = 0; i < filas; i++) {
+                if (valores[i] != null) {
+                    Integer codigo = codigos.get(valores[i]);
+                    if (codigo == null) {
+                        codigo = codigos.size() + 1;
+                        codigos.put(valores[i], codigo);
+                    }
+                    columna[i] = codigo;
+                }
+            }
+            escribirVarint(datos, codigos.size());
+            for (String valor : codigos.keySet()) {
+                escribirTexto(datos, valor);
+            }
+            int inicio = 0;
+            while (inicio < filas) {
+                int fin = inicio + 1;
+                while (fin < filas && columna[fin] == columna[inicio]) {
+                    fin++;
+                }
+                escribirVarint(datos, columna[inicio]);
+                escribirVarint(datos, fin - inicio);
+                inicio = fin;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (filas > 0) {
+                volcar();
+            }
+            salida.writeInt(0);
+        }
+    }
+
+    private static byte[] comprimir(byte[] datos) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(datos);
+        deflater.finish();
+        ByteArrayOutputStream comprimido = new ByteArrayOutputStream(datos.length / 2 + 16);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            comprimido.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        byte[] cuerpo = comprimido.toByteArray();
+        ByteArrayOutputStream bloque = new ByteArrayOutputStream(cuerpo.length + 8);
+        DataOutputStream cabecera = new DataOutputStream(bloque);
+        try {
+            cabecera.writeInt(datos.length);
+            cabecera.writeInt(cuerpo.length);
+            cabecera.write(cuerpo);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // ByteArrayOutputStream no lanza IOException
+        }
+        return bloque.toByteArray();
+    }
+
+    private static void escribirVarint(ByteArrayOutputStream salida, long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            salida.write((int) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        salida.write((int) valor);
+    }
+
+    private static void escribirTexto(ByteArrayOutputStream salida, String valor) {
+        if (valor == null) {
+            escribirVarint(salida, 0);
+            return;
+        }
+        byte[] bytes = valor.getBytes(StandardCharsets.UTF_8);
+        escribirVarint(salida, bytes.length + 1);
+        salida.write(bytes, 0, bytes.length);
+    }
+
+    // Lee un fichero exportado fila a fila: el consumidor recibe el nombre de la tabla y los valores de la fila
+    // (String o Long, null en los textos vacíos). Solo tiene en memoria un grupo de filas
+    public static void leer(String filename, BiConsumer<String, Object[]> consumidor) throws IOException {
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            if (!MAGICO.equals(entrada.readUTF())) {
+                throw new IOException("El fichero no es una exportación columnar: " + filename);
+            }
+            while (entrada.readBoolean()) {
+                String tabla = entrada.readUTF();
+                Tipo[] tipos = new Tipo[entrada.readInt()];
+                for (int i = 0; i < tipos.length; i++) {
+                    entrada.readUTF();
+                    tipos[i] = Tipo.values()[entrada.readByte()];
+                }
+                int filas;
+                while ((filas = entrada.readInt()) > 0) {
+                    Object[][] columnas = new Object[tipos.length][];
+                    for (int c = 0; c < tipos.length; c++) {
+                        columnas[c] = decodificar(entrada, tipos[c], filas);
+                    }
+                    for (int f = 0; f < filas; f++) {
+                        Object[] fila = new Object[tipos.length];
+                        for (int c = 0; c < tipos.length; c++) {
+                            fila[c] = columnas[c][f];
+                        }
+                        consumidor.accept(tabla, fila);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Object[] decodificar(DataInputStream entrada, Tipo tipo, int filas) throws IOException {
+        byte[] datos = new byte[entrada.readInt()];
+        byte[] comprimido = new byte[entrada.readInt()];
+        entrada.readFully(comprimido);
+        Inflater inflater = new Inflater();
+        inflater.setInput(comprimido);
+        try {
+            inflater.inflate(datos);
+        } catch (DataFormatException e) {
+            throw new IOException("Bloque columnar corrupto.", e);
+        } finally {
+            inflater.end();
+        }
+
+        int[] posicion = { 0 };
+        Object[] valores = new Object[filas];
+        switch (tipo) {
+        case ENTERO:
+            long anterior = 0;
+            for (int i = 0; i < filas; i++) {
+                long zigzag = leerVarint(datos, posicion);
+                anterior += (zigzag >>> 1) ^ -(zigzag & 1);
+                valores[i] = anterior;
+            }
+            break;
+        case TEXTO:
+            for (int i = 0; i < filas; i++) {
+                valores[i] = leerTexto(datos, posicion);
+            }
+            break;
+        case DICCIONARIO:
+            String[] diccionario = new String[(int) leerVarint(datos, posicion) + 1];
+            for (int i = 1; i < diccionario.length; i++) {
+                diccionario[i] = leerTexto(datos, posicion);
+            }
+            int i = 0;
+            while (i < filas) {
+                String valor = diccionario[(int) leerVarint(datos, posicion)];
+                int repeticiones = (int) leerVarint(datos, posicion);
+                Arrays.fill(valores, i, i + repeticiones, valor);
+                i += repeticiones;
+            }
+            break;
+        }
+        return valores;
+    }
+
+    private static long leerVarint(byte[] datos, int[] posicion) {
+        long valor = 0;
+        int desplazamiento = 0;
+        byte b;
+        do {
+            b = datos[posicion[0]++];
+            valor |= (long) (b & 0x7F) << desplazamiento;
+            desplazamiento += 7;
+        } while ((b & 0x80) != 0);
+        return valor;
+    }
+
+    private static String leerTexto(byte[] datos, int[] posicion) {
+        int longitud = (int) leerVarint(datos, posicion) - 1;
+        if (longitud < 0) {
+            return null;
+        }
+        String valor = new String(datos, posicion[0], longitud, StandardCharsets.UTF_8);
+        posicion[0] += longitud;
+        return valor;
+    }
+}
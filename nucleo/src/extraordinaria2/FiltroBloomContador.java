@@ -0,0 +1,118 @@
+package extraordinaria2;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Filtro de Bloom con contadores de 4 bits (dos por byte) para poder borrar en las bajas.
+// Un "no" es definitivo; un "quizá" obliga a consultar la estructura principal.
+public class FiltroBloomContador {
+    private static final int MAX_CONTADOR = 15;
+
+    private final byte[] contadores;
+    private final int numContadores;
+    private final int numHashes;
+    private final AtomicLong elementos = new AtomicLong();
+    private final AtomicLong rechazos = new AtomicLong();
+    private final AtomicLong falsosPositivos = new AtomicLong();
+
+    public FiltroBloomContador(int elementosEsperados, double tasaFalsosPositivos) {
+        double bits = -elementosEsperados * Math.log(tasaFalsosPositivos) / (Math.log(2) * Math.log(2));
+        this.numContadores = Math.max(64, (int) Math.ceil(bits));
+        this.numHashes = Math.max(1, (int) Math.round(bits / elementosEsperados * Math.log(2)));
+        this.contadores = new byte[(numContadores + 1) / 2];
+    }
+
+    // Doble hashing: posición i = h1 + i * h2, con h2 impar para recorrer todas las posiciones
+    private int posicion(int h1, int h2, int i) {
+        return Math.floorMod(h1 + i * h2, numContadores);
+    }
+
+    private static int mezclar(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    private int leer(int pos) {
+        int b = contadores[pos >> 1];
+        return (pos & 1) == 0 ? b & 0x0F : (b >> 4) & 0x0F;
+    }
+
+    private void escribir(int pos, int valor) {
+        int i = pos >> 1;
+        if ((pos & 1) == 0) {
+            contadores[i] = (byte) ((contadores[i] & 0xF0) | valor);
+        } else {
+            contadores[i] = (byte) ((contadores[i] & 0x0F) | (valor << 4));
+        }
+    }
+
+    public synchronized void agregar(String clave) {
+        int h1 = mezclar(clave.hashCode());
+        int h2 = mezclar(h1) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            int pos = posicion(h1, h2, i);
+            int valor = leer(pos);
+            if (valor < MAX_CONTADOR) {
+                escribir(pos, valor + 1);
+            }
+        }
+        elementos.incrementAndGet();
+    }
+
+    // Un contador saturado ya no se decrementa: no se sabe cuántas claves lo comparten
+    public synchronized void eliminar(String clave) {
+        int h1 = mezclar(clave.hashCode());
+        int h2 = mezclar(h1) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            int pos = posicion(h1, h2, i);
+            int valor = leer(pos);
+            if (valor > 0 && valor < MAX_CONTADOR) {
+                escribir(pos, valor - 1);
+            }
+        }
+        elementos.decrementAndGet();
+    }
+
+    public boolean podriaContener(String clave) {
+        if (clave == null) {
+            return false;
+        }
+        int h1 = mezclar(clave.hashCode());
+        int h2 = mezclar(h1) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            if (leer(posicion(h1, h2, i)) == 0) {
+                rechazos.incrementAndGet();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Lo llama quien consulta cuando el filtro dijo "quizá" y la clave no estaba
+    public void registrarFalsoPositivo() {
+        falsosPositivos.incrementAndGet();
+    }
+
+    // Tasa teórica según la ocupación actual: (1 - e^(-k*n/m))^k
+    public double getTasaFalsosPositivosEstimada() {
+        double ocupacion = 1 - Math.exp(-(double) numHashes * elementos.get() / numContadores);
+        return Math.pow(ocupacion, numHashes);
+    }
+
+    // Tasa observada: de las claves inexistentes consultadas, cuántas pasaron el filtro
+    public double getTasaFalsosPositivosObservada() {
+        long fp = falsosPositivos.get();
+        long total = fp + rechazos.get();
+        return total == 0 ? 0 : (double) fp / total;
+    }
+
+    public long getRechazos() {
+        return rechazos.get();
+    }
+
+    public long getFalsosPositivos() {
+        return falsosPositivos.get();
+    }
+}
@@ -0,0 +1,114 @@
+package extraordinaria2;
+
+import java.util.*;
+
+// Relaciones padre/tutor -> hijo entre usuarios, guardadas como listas de ordinales en ambos sentidos.
+// La comprobación de tutor adulto recorre solo los tutores del hijo (normalmente uno o dos)
+class GrafoFamiliar {
+    private static final int[] SIN_ENLACES = new int[0];
+
+    private final IndiceOrdinales<Usuario> usuarios;
+    private int[][] padres = new int[16][];
+    private int[] numeroPadres = new int[16];
+    private int[][] hijos = new int[16][];
+    private int[] numeroHijos = new int[16];
+
+    public GrafoFamiliar(IndiceOrdinales<Usuario> usuarios) {
+        this.usuarios = usuarios;
+    }
+
+    private void asegurarCapacidad(int ordinal) {
+        if (ordinal < padres.length) {
+            return;
+        }
+        int capacidad = Math.max(padres.length * 2, ordinal + 1);
+        padres = Arrays.copyOf(padres, capacidad);
+        numeroPadres = Arrays.copyOf(numeroPadres, capacidad);
+        hijos = Arrays.copyOf(hijos, capacidad);
+        numeroHijos = Arrays.copyOf(numeroHijos, capacidad);
+    }
+
+    private static int[] añadir(int[] lista, int tamaño, int valor) {
+        if (lista == null) {
+            lista = new int[2];
+        } else if (tamaño == lista.length) {
+            lista = Arrays.copyOf(lista, tamaño * 2);
+        }
+        lista[tamaño] = valor;
+        return lista;
+    }
+
+    // Quita un valor cambiándolo por el último; devuelve false si no estaba
+    private static boolean quitar(int[] lista, int tamaño, int valor) {
+        for (int i = 0; i < tamaño; i++) {
+            if (lista[i] == valor) {
+                lista[i] = lista[tamaño - 1];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean enlazar(int padre, int hijo) {
+        asegurarCapacidad(Math.max(padre, hijo));
+        for (int i = 0; i < numeroPadres[hijo]; i++) {
+            if (padres[hijo][i] == padre) {
+                return false;
+            }
+        }
+        padres[hijo] = añadir(padres[hijo], numeroPadres[hijo]++, padre);
+        hijos[padre] = añadir(hijos[padre], numeroHijos[padre]++, hijo);
+        return true;
+    }
+
+    public void desenlazar(int padre, int hijo) {
+        if (padre >= padres.length || hijo >= padres.length) {
+            return;
+        }
+        if (quitar(padres[hijo], numeroPadres[hijo], padre)) {
+            numeroPadres[hijo]--;
+            if (quitar(hijos[padre], numeroHijos[padre], hijo)) {
+                numeroHijos[padre]--;
+            }
+        }
+    }
+
+    // Se llama antes de liberar el ordinal para que un usuario nuevo no herede las relaciones
+    public void eliminarUsuario(int ordinal) {
+        if (ordinal >= padres.length) {
+            return;
+        }
+        while (numeroHijos[ordinal] > 0) {
+            desenlazar(ordinal, hijos[ordinal][0]);
+        }
+        while (numeroPadres[ordinal] > 0) {
+            desenlazar(padres[ordinal][0], ordinal);
+        }
+        padres[ordinal] = null;
+        hijos[ordinal] = null;
+    }
+
+    // La edad se comprueba en el momento: un tutor puede dejar de ser adulto si se corrige su fecha de nacimiento
+    // en una actualización de usuarios, y un contador fijado al enlazar quedaría desfasado
+    public boolean tieneTutorAdulto(int ordinal) {
+        if (ordinal < 0 || ordinal >= padres.length) {
+            return false;
+        }
+        for (int i = 0; i < numeroPadres[ordinal]; i++) {
+            if (usuarios.obtener(padres[ordinal][i]).esMayorDeEdad()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<Usuario> padres(int ordinal) {
+        int tamaño = ordinal < padres.length ? numeroPadres[ordinal] : 0;
+        int[] lista = tamaño > 0 ? padres[ordinal] : SIN_ENLACES;
+        List<Usuario> resultado = new ArrayList<>(tamaño);
+        for (int i = 0; i < tamaño; i++) {
+            resultado.add(usuarios.obtener(lista[i]));
+        }
+        return resultado;
+    }
+}
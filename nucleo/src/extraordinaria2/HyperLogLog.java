@@ -0,0 +1,80 @@
+package extraordinaria2;
+
+// HyperLogLog: cuenta elementos distintos con 2^precision registros de un byte, error típico 1.04/sqrt(2^p).
+// Dos sketches de la misma precisión se fusionan con el máximo registro a registro
+public class HyperLogLog {
+    private final int precision;
+    private final byte[] registros;
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precisión fuera de rango: " + precision);
+        }
+        this.precision = precision;
+        this.registros = new byte[1 << precision];
+    }
+
+    // Hash de 64 bits estable entre procesos (FNV-1a seguido del finalizador de MurmurHash3)
+    static long hash(String clave) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < clave.length(); i++) {
+            h ^= clave.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    public void agregar(long hash) {
+        int indice = (int) (hash >>> (64 - precision));
+        int rango = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rango > registros[indice]) {
+            registros[indice] = (byte) rango;
+        }
+    }
+
+    public long estimar() {
+        int m = registros.length;
+        double suma = 0;
+        int ceros = 0;
+        for (byte registro : registros) {
+            suma += 1.0 / (1L << registro);
+            if (registro == 0) {
+                ceros++;
+            }
+        }
+        double alfa = 0.7213 / (1 + 1.079 / m);
+        double estimacion = alfa * m * m / suma;
+        // Con pocos elementos es más preciso el conteo lineal de registros vacíos
+        if (estimacion <= 2.5 * m && ceros > 0) {
+            estimacion = m * Math.log((double) m / ceros);
+        }
+        return Math.round(estimacion);
+    }
+
+    public void fusionar(HyperLogLog otro) {
+        if (otro.precision != precision) {
+            throw new IllegalArgumentException("No se pueden fusionar sketches de distinta precisión.");
+        }
+        for (int i = 0; i < registros.length; i++) {
+            registros[i] = (byte) Math.max(registros[i], otro.registros[i]);
+        }
+    }
+
+    // Formato para intercambiar sketches entre procesos: precisión seguida de los registros
+    public byte[] aBytes() {
+        byte[] bytes = new byte[registros.length + 1];
+        bytes[0] = (byte) precision;
+        System.arraycopy(registros, 0, bytes, 1, registros.length);
+        return bytes;
+    }
+
+    public static HyperLogLog desdeBytes(byte[] bytes) {
+        HyperLogLog sketch = new HyperLogLog(bytes[0]);
+        System.arraycopy(bytes, 1, sketch.registros, 0, sketch.registros.length);
+        return sketch;
+    }
+}
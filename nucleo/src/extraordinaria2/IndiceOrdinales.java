@@ -0,0 +1,51 @@
+package extraordinaria2;
+
+import java.util.*;
+
+// Asigna ordinales densos a los elementos dados de alta y los recicla en las bajas mediante una pila de libres
+class IndiceOrdinales<T> {
+    private Object[] elementos = new Object[16];
+    private int[] libres = new int[16];
+    private int numeroLibres;
+    private int limite;
+
+    public int asignar(T elemento) {
+        int ordinal;
+        if (numeroLibres > 0) {
+            ordinal = libres[--numeroLibres];
+        } else {
+            if (limite == elementos.length) {
+                elementos = Arrays.copyOf(elementos, limite * 2);
+            }
+            ordinal = limite++;
+        }
+        elementos[ordinal] = elemento;
+        return ordinal;
+    }
+
+    public void reemplazar(int ordinal, T elemento) {
+        elementos[ordinal] = elemento;
+    }
+
+    public void liberar(int ordinal) {
+        elementos[ordinal] = null;
+        if (numeroLibres == libres.length) {
+            libres = Arrays.copyOf(libres, numeroLibres * 2);
+        }
+        libres[numeroLibres++] = ordinal;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T obtener(int ordinal) {
+        return ordinal < limite ? (T) elementos[ordinal] : null;
+    }
+
+    // Primer ordinal nunca asignado; los huecos reciclables quedan por debajo
+    public int limite() {
+        return limite;
+    }
+
+    public int tamaño() {
+        return limite - numeroLibres;
+    }
+}
@@ -0,0 +1,46 @@
+package extraordinaria2;
+
+import java.util.*;
+
+// Índices de ventas por fecha, mantenidos con cada compra y devolución: por tipo de producto y por categoría
+// (temática en los juegos, cada una en el mapa de su tipo) con series densas por día, y por producto con series
+// dispersas. Las de producto van por id y no por ordinal: el ordinal se recicla al dar de baja y la serie es
+// historia del producto. Se usa con el cerrojo de la librería
+final class IndiceVentas {
+    private final Map<Class<?>, SerieDiaria> tipos = new HashMap<>();
+    private final Map<Class<?>, Map<String, SerieDiaria>> categorias = new HashMap<>();
+    private final Map<String, SerieDispersa> productos = new HashMap<>();
+
+    void registrar(Producto producto, int dia, long cantidad, long importe) {
+        tipos.computeIfAbsent(Producto.class, tipo -> new SerieDiaria()).registrar(dia, cantidad, importe);
+        tipos.computeIfAbsent(producto.getClass(), tipo -> new SerieDiaria()).registrar(dia, cantidad, importe);
+        String categoria = categoria(producto);
+        if (categoria != null) {
+            categorias.computeIfAbsent(producto.getClass(), tipo -> new HashMap<>())
+                    .computeIfAbsent(categoria, clave -> new SerieDiaria()).registrar(dia, cantidad, importe);
+        }
+        productos.computeIfAbsent(producto.getId(), id -> new SerieDispersa()).registrar(dia, cantidad, importe);
+    }
+
+    private static String categoria(Producto producto) {
+        if (producto instanceof Libro) {
+            return ((Libro) producto).getCategoria();
+        }
+        if (producto instanceof JuegoMesa) {
+            return ((JuegoMesa) producto).getTematica();
+        }
+        return null;
+    }
+
+    SerieDiaria porTipo(Class<? extends Producto> tipo) {
+        return tipos.getOrDefault(tipo, SerieDiaria.VACIA);
+    }
+
+    SerieDiaria porCategoria(Class<? extends Producto> tipo, String categoria) {
+        return categorias.getOrDefault(tipo, Collections.emptyMap()).getOrDefault(categoria, SerieDiaria.VACIA);
+    }
+
+    SerieDispersa porProducto(String id) {
+        return productos.getOrDefault(id, SerieDispersa.VACIA);
+    }
+}
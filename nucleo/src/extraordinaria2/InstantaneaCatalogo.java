@@ -0,0 +1,90 @@
+package extraordinaria2;
+
+import java.util.*;
+
+// Versión inmutable del inventario, indexada por id y por título (clave título + '\0' + id). Cada alta o
+// baja produce una versión nueva que comparte casi toda la estructura con la anterior
+final class InstantaneaCatalogo implements Iterable<Producto> {
+    static final InstantaneaCatalogo VACIA = new InstantaneaCatalogo(0, ArbolPersistente.vacio(),
+            ArbolPersistente.vacio());
+
+    private final long version;
+    private final ArbolPersistente<String, Producto> porId;
+    private final ArbolPersistente<String, Producto> porTitulo;
+
+    private InstantaneaCatalogo(long version, ArbolPersistente<String, Producto> porId,
+            ArbolPersistente<String, Producto> porTitulo) {
+        this.version = version;
+        this.porId = porId;
+        this.porTitulo = porTitulo;
+    }
+
+    static String clavePorTitulo(Producto producto) {
+        return producto.getTitulo() + '\0' + producto.getId();
+    }
+
+    public InstantaneaCatalogo con(Producto producto) {
+        ArbolPersistente<String, Producto> titulos = porTitulo;
+        Producto anterior = porId.obtener(producto.getId());
+        if (anterior != null) {
+            titulos = titulos.sin(clavePorTitulo(anterior));
+        }
+        return new InstantaneaCatalogo(version + 1, porId.con(producto.getId(), producto),
+                titulos.con(clavePorTitulo(producto), producto));
+    }
+
+    // Alta de muchos productos a la vez. Sobre un catálogo vacío (la carga inicial) se construyen los dos árboles
+    // directamente; si no, se añaden uno a uno. Con ids repetidos gana el último
+    public InstantaneaCatalogo conTodos(Collection<Producto> productos) {
+        if (porId.tamaño() > 0) {
+            InstantaneaCatalogo resultado = this;
+            for (Producto producto : productos) {
+                resultado = resultado.con(producto);
+            }
+            return resultado;
+        }
+        TreeMap<String, Producto> ids = new TreeMap<>();
+        for (Producto producto : productos) {
+            ids.put(producto.getId(), producto);
+        }
+        TreeMap<String, Producto> titulos = new TreeMap<>();
+        for (Producto producto : ids.values()) {
+            titulos.put(clavePorTitulo(producto), producto);
+        }
+        return new InstantaneaCatalogo(version + 1,
+                ArbolPersistente.desdeOrdenados(new ArrayList<>(ids.keySet()), new ArrayList<>(ids.values())),
+                ArbolPersistente.desdeOrdenados(new ArrayList<>(titulos.keySet()), new ArrayList<>(titulos.values())));
+    }
+
+    public InstantaneaCatalogo sin(Producto producto) {
+        return new InstantaneaCatalogo(version + 1, porId.sin(producto.getId()),
+                porTitulo.sin(clavePorTitulo(producto)));
+    }
+
+    public Producto obtener(String id) {
+        return porId.obtener(id);
+    }
+
+    // Igual que List.contains: la misma instancia, no solo el mismo id
+    public boolean contiene(Producto producto) {
+        return porId.obtener(producto.getId()) == producto;
+    }
+
+    // Productos en orden de título a partir de la clave indicada, sin incluirla (null para empezar por el principio)
+    public Iterable<Producto> porTitulo(String desde) {
+        return () -> porTitulo.valoresDesde(desde);
+    }
+
+    @Override
+    public Iterator<Producto> iterator() {
+        return porTitulo.valoresDesde(null);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int tamaño() {
+        return porId.tamaño();
+    }
+}
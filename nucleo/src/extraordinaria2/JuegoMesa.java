@@ -0,0 +1,37 @@
+package extraordinaria2;
+
+// Clase que representa un juego de mesa
+public class JuegoMesa extends Producto {
+    private int edadRecomendada;
+    private String tematica;
+
+    public JuegoMesa(String id, String titulo, int edadRecomendada, String tematica) {
+        this(id, titulo, 0, edadRecomendada, tematica); // Sin precio indicado se establece en 0
+    }
+
+    public JuegoMesa(String id, String titulo, double precio, int edadRecomendada, String tematica) {
+        super(id, titulo, precio);
+        this.edadRecomendada = edadRecomendada;
+        this.tematica = tematica;
+    }
+
+    public int getEdadRecomendada() {
+        return edadRecomendada;
+    }
+
+    public String getTematica() {
+        return tematica;
+    }
+
+    public boolean esEdadRecomendada(int edad) {
+        return edad >= edadRecomendada;
+    }
+
+    @Override
+    void actualizarDesde(Producto datos) {
+        super.actualizarDesde(datos);
+        JuegoMesa juego = (JuegoMesa) datos;
+        edadRecomendada = juego.edadRecomendada;
+        tematica = juego.tematica;
+    }
+}
@@ -0,0 +1,1557 @@
+package extraordinaria2;
+
+import java.io.*;
+import java.util.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Clase principal que contiene la lógica del programa
+public class LibreriaOnline {
+    // Inventario publicado como instantáneas inmutables: los lectores leen la versión actual con una sola
+    // lectura volátil y los escritores (serializados) publican una nueva versión en O(log n)
+    private volatile InstantaneaCatalogo inventario;
+    private List<Usuario> usuarios;
+    // Catálogo persistente y caché de productos calientes (null mientras el catálogo quepa en memoria). Con
+    // catálogo, los datos de los productos están solo en él y en memoria quedan únicamente los productos con
+    // estado de ventas (los que tienen ordinal): son los únicos cuyo objeto importa conservar
+    private CatalogoBackend catalogo;
+    private CacheProductos cacheProductos;
+    // Filtros de pertenencia para rechazar sin recorrer las listas los ids y DNIs que no existen
+    private FiltroBloomContador filtroProductos;
+    private FiltroBloomContador filtroUsuarios;
+    // Usuarios y productos reciben un ordinal denso al darse de alta que se recicla en la baja. Las compras
+    // por mes se guardan en un único array de enteros en la posición ordinal * 12 + (mes - 1)
+    private IndiceOrdinales<Usuario> indiceUsuarios = new IndiceOrdinales<>();
+    private IndiceOrdinales<Producto> indiceProductos = new IndiceOrdinales<>();
+    private GrafoFamiliar grafoFamiliar = new GrafoFamiliar(indiceUsuarios);
+    private MotorPrecios motorPrecios = new MotorPrecios(indiceProductos);
+    private MatrizCoCompras coCompras = new MatrizCoCompras();
+    private AnaliticaVentas analitica = new AnaliticaVentas();
+    private final IndiceVentas indiceVentas = new IndiceVentas();
+    // Límite de compras por usuario y por tarjeta contra bots de prueba de tarjetas (null para desactivar)
+    private volatile LimitadorTasa limiteUsuarios = new LimitadorTasa(20, 1, 100000);
+    private volatile LimitadorTasa limiteTarjetas = new LimitadorTasa(40, 2, 100000);
+    // Números de tarjeta cifrados fuera de los objetos Usuario, por ordinal de usuario
+    private BovedaTarjetas bovedaTarjetas = new BovedaTarjetas();
+    private volatile ProcesadorDevoluciones procesadorDevoluciones;
+    private MantenimientoCompras mantenimiento;
+    // Directorio de las compras archivadas; se conserva al parar el mantenimiento porque los segmentos siguen ahí
+    private Path directorioArchivo;
+    // Flujo de cambios para otros sistemas; null hasta la primera suscripción
+    private AnilloCambios cambios;
+    private Map<String, Integer> ordinalPorId = new HashMap<>();
+    // Compras de cada usuario en los últimos doce meses: una casilla por mes y, en paralelo, el año al que
+    // pertenece su cuenta. La primera compra de un mes de otro año reinicia la casilla
+    private int[] comprasPorMes = new int[16 * 12];
+    private int[] añoComprasPorMes = new int[16 * 12];
+    // Compras en historiales de usuario que apuntan a cada ordinal de producto; un producto dado de baja
+    // conserva su ordinal hasta que ningún historial lo referencia
+    private int[] referenciasProducto = new int[16];
+    private BitSet productosRetirados = new BitSet();
+    // Huella (hash de la línea) de cada registro cargado desde fichero, por id o DNI, para aplicar solo cambios.
+    // Solo se modifican con cerrojoCambios tomado, así que quien lo tiene puede leerlas sin el de la librería
+    private Map<String, Integer> huellasInventario = new HashMap<>();
+    private Map<String, Integer> huellasUsuarios = new HashMap<>();
+    private final Object cerrojoCambios = new Object();
+    // Serializa las reconstrucciones de la matriz de co-compras, que se calculan sin el cerrojo de la librería
+    private final Object cerrojoRecomendaciones = new Object();
+    // Textos repetidos de los ficheros (autor, categoría, temática, nombres y apellidos) compartidos entre
+    // todos los productos y usuarios cargados
+    static final TablaInternado AUTORES = new TablaInternado(4096);
+    static final TablaInternado CATEGORIAS = new TablaInternado(64);
+    static final TablaInternado TEMATICAS = new TablaInternado(256);
+    static final TablaInternado NOMBRES = new TablaInternado(4096);
+    static final TablaInternado APELLIDOS = new TablaInternado(8192);
+    private final List<EstadisticasCarga> estadisticasCarga = new ArrayList<>();
+    // Tamaños aproximados medidos con cargas de prueba: objeto, textos, nodos de los índices y huellas
+    public static final long BYTES_POR_PRODUCTO = 400;
+    public static final long BYTES_POR_USUARIO = 480;
+    static final long BYTES_POR_COMPRA = 16;
+    private long limiteMemoria;
+    private long comprasEnMemoria;
+
+    public LibreriaOnline() {
+        this(100000);
+    }
+
+    // Los filtros de pertenencia se dimensionan para el número de productos y usuarios esperado: una tienda
+    // pequeña dentro de un contenedor no necesita reservar el espacio de una grande
+    public LibreriaOnline(int capacidadEsperada) {
+        inventario = InstantaneaCatalogo.VACIA;
+        usuarios = new ArrayList<>();
+        filtroProductos = new FiltroBloomContador(capacidadEsperada, 0.01);
+        filtroUsuarios = new FiltroBloomContador(capacidadEsperada, 0.01);
+    }
+
+    // Caso de uso: Limitar la memoria que puede ocupar la librería (0 para no limitar). Las altas y compras que
+    // la harían pasar de la cuota se rechazan con IllegalStateException
+    public synchronized void setLimiteMemoria(long bytes) {
+        this.limiteMemoria = bytes;
+    }
+
+    // Estimación a partir del número de productos, usuarios y compras en memoria; no recorre el heap
+    public synchronized long getMemoriaEstimada() {
+        return inventario.tamaño() * BYTES_POR_PRODUCTO + usuarios.size() * BYTES_POR_USUARIO
+                + comprasEnMemoria * BYTES_POR_COMPRA;
+    }
+
+    private void comprobarMemoria(long adicional) {
+        if (limiteMemoria > 0 && getMemoriaEstimada() + adicional > limiteMemoria) {
+            throw new IllegalStateException("La librería ha superado su cuota de memoria (" + limiteMemoria + " bytes).");
+        }
+    }
+
+    // Coloca el catálogo detrás de una caché acotada. Los productos ya dados de alta se vuelcan al catálogo y
+    // los que no tienen ventas ni compras que los referencien salen de memoria; a partir de aquí un producto
+    // entra en memoria con su primera compra. Los listados e informes que recorren el inventario en memoria
+    // cubren por tanto los productos con ventas
+    public synchronized void configurarCatalogo(CatalogoBackend catalogo, int capacidadCache, long ttlMillis)
+            throws IOException {
+        for (Producto producto : inventario) {
+            if (!catalogo.contiene(producto.getId())) {
+                catalogo.guardar(producto);
+            }
+        }
+        for (String id : catalogo.ids()) {
+            filtroProductos.agregar(id);
+        }
+        List<Producto> sinVentas = new ArrayList<>();
+        for (Producto producto : inventario) {
+            int ordinal = producto.getOrdinal();
+            if (ordinal >= 0 && referenciasProducto[ordinal] == 0 && producto.getVendidos() == 0
+                    && producto.getIngresosCentimos() == 0) {
+                sinVentas.add(producto);
+            }
+        }
+        for (Producto producto : sinVentas) {
+            inventario = inventario.sin(producto);
+            liberarProducto(producto.getOrdinal());
+        }
+        this.catalogo = catalogo;
+        this.cacheProductos = new CacheProductos(catalogo, capacidadCache, ttlMillis);
+    }
+
+    // Con catálogo puede haber varios objetos para el mismo id (cada fallo de la caché lee uno nuevo del disco);
+    // el que cuenta es el que está en memoria con su ordinal, que es el que guarda las ventas
+    private Producto canonico(Producto producto) {
+        if (catalogo == null || producto.getOrdinal() >= 0) {
+            return producto;
+        }
+        Producto registrado = productoRegistrado(producto.getId());
+        return registrado != null ? registrado : producto;
+    }
+
+    public CacheProductos getCacheProductos() {
+        return cacheProductos;
+    }
+
+    public FiltroBloomContador getFiltroProductos() {
+        return filtroProductos;
+    }
+
+    public FiltroBloomContador getFiltroUsuarios() {
+        return filtroUsuarios;
+    }
+
+    public MotorPrecios getMotorPrecios() {
+        return motorPrecios;
+    }
+
+    // Precio de venta actual del producto según las reglas de precio vigentes
+    public double obtenerPrecio(Producto producto) {
+        return Dinero.aEuros(obtenerPrecioCentimos(producto));
+    }
+
+    // Un producto sin ordinal (sin ventas todavía) se tasa aplicando las reglas sin meterlo en memoria
+    public synchronized long obtenerPrecioCentimos(Producto producto) {
+        return motorPrecios.precio(canonico(producto));
+    }
+
+    // Caso de uso: Calcular el importe de un carrito, con el descuento por volumen si corresponde
+    public double calcularPrecioCarrito(List<Producto> carrito) {
+        long total = 0;
+        for (Producto producto : carrito) {
+            total = Math.addExact(total, obtenerPrecioCentimos(producto));
+        }
+        return Dinero.aEuros(motorPrecios.aplicarDescuentoCarrito(total, carrito.size()));
+    }
+
+    // Caso de uso: Dar de alta un producto
+    public synchronized void darDeAltaProducto(Producto producto) throws IOException {
+        filtroProductos.agregar(producto.getId());
+        if (catalogo != null) {
+            catalogo.guardar(producto);
+            cacheProductos.invalidar(producto.getId());
+        } else {
+            comprobarMemoria(BYTES_POR_PRODUCTO);
+            inventario = inventario.con(producto);
+            ordinalProducto(producto);
+        }
+        publicarCambio(TipoCambio.ALTA_PRODUCTO, producto.getId(), null, producto.getPrecioCentimos());
+    }
+
+    // Caso de uso: Dar de baja un producto
+    public synchronized void darDeBajaProducto(Producto producto) throws IOException {
+        producto = canonico(producto);
+        boolean enCatalogo = catalogo != null && catalogo.contiene(producto.getId());
+        if (inventario.contiene(producto) || enCatalogo) {
+            if (inventario.contiene(producto)) {
+                inventario = inventario.sin(producto);
+            }
+            filtroProductos.eliminar(producto.getId());
+            publicarCambio(TipoCambio.BAJA_PRODUCTO, producto.getId(), null, 0);
+            Integer ordinal = ordinalPorId.get(producto.getId());
+            if (ordinal != null) {
+                if (referenciasProducto[ordinal] == 0) {
+                    liberarProducto(ordinal);
+                } else {
+                    productosRetirados.set(ordinal);
+                }
+            }
+        }
+        if (catalogo != null) {
+            catalogo.eliminar(producto.getId());
+            cacheProductos.invalidar(producto.getId());
+        }
+    }
+
+    // Caso de uso: Dar de alta un usuario
+    public synchronized void darDeAltaUsuario(Usuario usuario) {
+        registrarUsuario(usuario);
+        String numTarjeta = usuario.extraerNumTarjeta();
+        if (numTarjeta != null && !numTarjeta.isEmpty()) {
+            usuario.setTokenTarjeta(bovedaTarjetas.guardar(usuario.getOrdinal(), numTarjeta));
+        }
+    }
+
+    // Alta sin pasar la tarjeta a la bóveda, para que la carga masiva la cifre por lotes
+    private void registrarUsuario(Usuario usuario) {
+        comprobarMemoria(BYTES_POR_USUARIO);
+        usuarios.add(usuario);
+        filtroUsuarios.agregar(usuario.getDni());
+        int ordinal = indiceUsuarios.asignar(usuario);
+        if (indiceUsuarios.limite() * 12 > comprasPorMes.length) {
+            comprasPorMes = Arrays.copyOf(comprasPorMes, comprasPorMes.length * 2);
+            añoComprasPorMes = Arrays.copyOf(añoComprasPorMes, añoComprasPorMes.length * 2);
+        }
+        usuario.setOrdinal(ordinal);
+        usuario.setIndiceProductos(indiceProductos);
+        usuario.setGrafoFamiliar(grafoFamiliar);
+        publicarCambio(TipoCambio.ALTA_USUARIO, usuario.getDni(), null, 0);
+    }
+
+    // Caso de uso: Dar de baja un usuario
+    public synchronized void darDeBajaUsuario(Usuario usuario) {
+        if (usuarios.remove(usuario)) {
+            filtroUsuarios.eliminar(usuario.getDni());
+            int ordinal = usuario.getOrdinal();
+            Arrays.fill(comprasPorMes, ordinal * 12, ordinal * 12 + 12, 0);
+            Arrays.fill(añoComprasPorMes, ordinal * 12, ordinal * 12 + 12, 0);
+            int[] compras = usuario.getOrdinalesComprados();
+            for (int i = 0; i < usuario.getNumeroCompras(); i++) {
+                soltarReferencia(compras[i]);
+            }
+            comprasEnMemoria -= usuario.getNumeroCompras();
+            grafoFamiliar.eliminarUsuario(ordinal);
+            bovedaTarjetas.eliminar(ordinal);
+            usuario.setTokenTarjeta(0);
+            indiceUsuarios.liberar(ordinal);
+            usuario.setOrdinal(-1);
+            publicarCambio(TipoCambio.BAJA_USUARIO, usuario.getDni(), null, 0);
+        }
+    }
+
+    // Caso de uso: Los clientes que compraron este producto también compraron...
+    public List<Producto> obtenerRecomendaciones(Producto producto, int cantidad) {
+        List<Producto> recomendaciones = new ArrayList<>(cantidad);
+        if (producto.getOrdinal() < 0) {
+            return recomendaciones;
+        }
+        for (int ordinal : coCompras.vecinos(producto.getOrdinal(), cantidad)) {
+            Producto vecino = indiceProductos.obtener(ordinal);
+            if (vecino != null && !productosRetirados.get(ordinal)) {
+                recomendaciones.add(vecino);
+            }
+        }
+        return recomendaciones;
+    }
+
+    public void setLimitadores(LimitadorTasa limiteUsuarios, LimitadorTasa limiteTarjetas) {
+        this.limiteUsuarios = limiteUsuarios;
+        this.limiteTarjetas = limiteTarjetas;
+    }
+
+    public LimitadorTasa getLimiteUsuarios() {
+        return limiteUsuarios;
+    }
+
+    public LimitadorTasa getLimiteTarjetas() {
+        return limiteTarjetas;
+    }
+
+    // Consume un permiso de usuario y otro de tarjeta; si la tarjeta no tiene, se devuelve el del usuario.
+    // Los usuarios sin tarjeta solo pasan por su propia cubeta: compartir la de "sin tarjeta" haría que se
+    // frenasen unos a otros
+    private boolean permitirCompra(Usuario usuario) {
+        LimitadorTasa porUsuario = limiteUsuarios;
+        LimitadorTasa porTarjeta = limiteTarjetas;
+        long claveUsuario = HyperLogLog.hash(usuario.getDni());
+        if (porUsuario != null && !porUsuario.intentar(claveUsuario)) {
+            return false;
+        }
+        if (porTarjeta != null && bovedaTarjetas.tieneTarjeta(usuario.getOrdinal())
+                && !porTarjeta.intentar(bovedaTarjetas.huella(usuario.getOrdinal()))) {
+            if (porUsuario != null) {
+                porUsuario.devolver(claveUsuario);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    // Número de tarjeta en claro, solo para el cobro; el token evita leer la tarjeta de otro usuario si el
+    // ordinal se ha reciclado
+    String obtenerNumeroTarjeta(Usuario usuario) {
+        return bovedaTarjetas.obtener(usuario.getOrdinal(), usuario.getTokenTarjeta());
+    }
+
+    public AnaliticaVentas getAnaliticaVentas() {
+        return analitica;
+    }
+
+    // Caso de uso: Número aproximado de compradores distintos de un producto en un mes del año en curso
+    public long obtenerCompradoresDistintos(Producto producto, int mes) {
+        return obtenerCompradoresDistintos(producto, mes, LocalDate.now().getYear());
+    }
+
+    public long obtenerCompradoresDistintos(Producto producto, int mes, int año) {
+        return producto.getOrdinal() < 0 ? 0 : analitica.compradoresDistintos(producto.getOrdinal(), año, mes);
+    }
+
+    // Caso de uso: Sketch de compradores de un producto en un mes, para fusionarlo en otra librería. Las
+    // librerías no comparten ordinales, así que el producto se empareja por id
+    public HyperLogLog obtenerSketchCompradores(Producto producto, int mes, int año) {
+        Producto registrado = productoRegistrado(producto.getId());
+        return analitica.getCompradoresProducto(registrado == null ? -1 : registrado.getOrdinal(), año, mes);
+    }
+
+    public synchronized void fusionarSketchCompradores(Producto producto, int mes, int año, HyperLogLog otro)
+            throws Exception {
+        Producto registrado = productoRegistrado(producto.getId());
+        if (registrado == null) {
+            throw new Exception("El producto no está registrado en la librería.");
+        }
+        analitica.fusionarCompradoresProducto(registrado.getOrdinal(), año, mes, otro);
+    }
+
+    // Caso de uso: Número aproximado de compradores distintos en un mes del año en curso
+    public long obtenerCompradoresDistintos(int mes) {
+        return obtenerCompradoresDistintos(mes, LocalDate.now().getYear());
+    }
+
+    public long obtenerCompradoresDistintos(int mes, int año) {
+        return analitica.compradoresDistintos(año, mes);
+    }
+
+    // Caso de uso: Productos más vendidos en la última hora (aproximado)
+    // Se piden todos los candidatos porque un producto retirado sigue registrado mientras haya compras suyas
+    // en algún historial, y no debe ocupar un puesto de la tendencia
+    public List<Producto> obtenerProductosTendencia(int cantidad) {
+        List<Producto> tendencia = new ArrayList<>(cantidad);
+        for (String id : analitica.productosTendencia(Integer.MAX_VALUE)) {
+            Producto producto = productoRegistrado(id);
+            if (producto != null && estaEnInventario(producto)) {
+                tendencia.add(producto);
+                if (tendencia.size() == cantidad) {
+                    break;
+                }
+            }
+        }
+        return tendencia;
+    }
+
+    // Reconstruye la matriz de co-compras desde los historiales en memoria de todos los usuarios, en paralelo.
+    // Con el cerrojo de la librería solo se copian los historiales; el cálculo se hace sin él, así que las
+    // compras no esperan, y la matriz repite al final lo que se haya comprado o devuelto mientras tanto
+    public void reconstruirRecomendaciones() {
+        synchronized (cerrojoRecomendaciones) {
+            List<int[]> historiales;
+            synchronized (this) {
+                historiales = new ArrayList<>(usuarios.size());
+                for (Usuario usuario : usuarios) {
+                    historiales.add(Arrays.copyOf(usuario.getOrdinalesComprados(), usuario.getNumeroCompras()));
+                }
+                coCompras.iniciarReconstruccion();
+            }
+            coCompras.reconstruir(historiales);
+        }
+    }
+
+    // Caso de uso: Registrar a un usuario como padre o tutor de otro, para que un menor pueda comprar
+    public void registrarTutor(Usuario padre, Usuario hijo) throws Exception {
+        if (!estaRegistrado(padre) || !estaRegistrado(hijo)) {
+            throw new Exception("El usuario no está registrado en el sistema.");
+        }
+        if (padre == hijo) {
+            throw new Exception("Un usuario no puede ser tutor de sí mismo.");
+        }
+        grafoFamiliar.enlazar(padre.getOrdinal(), hijo.getOrdinal());
+    }
+
+    public void eliminarTutor(Usuario padre, Usuario hijo) {
+        if (estaRegistrado(padre) && estaRegistrado(hijo)) {
+            grafoFamiliar.desenlazar(padre.getOrdinal(), hijo.getOrdinal());
+        }
+    }
+
+    // Comprueba el registro por ordinal en lugar de recorrer la lista de usuarios
+    private boolean estaRegistrado(Usuario usuario) {
+        int ordinal = usuario.getOrdinal();
+        return ordinal >= 0 && indiceUsuarios.obtener(ordinal) == usuario;
+    }
+
+    // Asigna (o recupera por id) el ordinal de un producto; los productos paginados desde el catálogo
+    // lo reciben en su primera compra
+    private int ordinalProducto(Producto producto) {
+        if (producto.getOrdinal() >= 0) {
+            return producto.getOrdinal();
+        }
+        Integer existente = ordinalPorId.get(producto.getId());
+        int ordinal;
+        if (existente != null) {
+            // Otro objeto con el mismo id: un alta repetida o la vuelta de un producto retirado que aún está en
+            // historiales. El nuevo ocupa el ordinal al que apuntan los historiales y hereda las ventas
+            ordinal = existente;
+            Producto anterior = indiceProductos.obtener(ordinal);
+            producto.heredarVentas(anterior);
+            anterior.setOrdinal(-1);
+            indiceProductos.reemplazar(ordinal, producto);
+            productosRetirados.clear(ordinal);
+        } else {
+            ordinal = indiceProductos.asignar(producto);
+            ordinalPorId.put(producto.getId(), ordinal);
+            if (ordinal >= referenciasProducto.length) {
+                referenciasProducto = Arrays.copyOf(referenciasProducto, referenciasProducto.length * 2);
+            }
+        }
+        producto.setOrdinal(ordinal);
+        motorPrecios.actualizar(ordinal);
+        return ordinal;
+    }
+
+    private void soltarReferencia(int ordinal) {
+        if (--referenciasProducto[ordinal] == 0 && productosRetirados.get(ordinal)) {
+            liberarProducto(ordinal);
+        }
+    }
+
+    private void liberarProducto(int ordinal) {
+        Producto producto = indiceProductos.obtener(ordinal);
+        ordinalPorId.remove(producto.getId());
+        productosRetirados.clear(ordinal);
+        coCompras.eliminarProducto(ordinal);
+        analitica.eliminarProducto(ordinal);
+        indiceProductos.liberar(ordinal);
+        motorPrecios.actualizar(ordinal);
+        producto.setOrdinal(-1);
+    }
+
+    // Caso de uso: Comprar un producto
+    // Compras, devoluciones, altas y bajas se serializan con el cerrojo de la librería: comparten los
+    // contadores de referencias, las compras por mes y el historial de cada usuario
+    public synchronized void comprarProducto(Usuario usuario, Producto producto) throws Exception {
+        producto = canonico(producto);
+        if (!estaEnInventario(producto)) {
+            throw new Exception("El producto no está disponible en el inventario.");
+        }
+
+        if (!estaRegistrado(usuario)) {
+            throw new Exception("El usuario no está registrado en el sistema.");
+        }
+
+        if (!usuario.esMayorDeEdad() && !grafoFamiliar.tieneTutorAdulto(usuario.getOrdinal())) {
+            throw new Exception("El usuario debe ser mayor de 8 años.");
+        }
+
+        if (producto instanceof Libro) {
+            Libro libro = (Libro) producto;
+            if (!libro.getCategoria().equals("Aventuras") && !libro.getCategoria().equals("Ciencia Ficción")
+                    && !libro.getCategoria().equals("Romántica") && !libro.getCategoria().equals("Historia")
+                    && !libro.getCategoria().equals("Arte") && !libro.getCategoria().equals("Narrativa Española")) {
+                throw new Exception("El libro tiene una categoría inválida.");
+            }
+        }
+
+        if (producto instanceof JuegoMesa) {
+            JuegoMesa juegoMesa = (JuegoMesa) producto;
+            if (!juegoMesa.esEdadRecomendada(usuario.getEdad())) {
+                throw new Exception("El juego de mesa no es adecuado para la edad del usuario.");
+            }
+        }
+
+        if (!permitirCompra(usuario)) {
+            throw new Exception("Demasiadas compras en poco tiempo, inténtelo más tarde.");
+        }
+
+        comprobarMemoria(BYTES_POR_COMPRA);
+        int ordinal = ordinalProducto(producto);
+        if (catalogo != null && !inventario.contiene(producto)) {
+            inventario = inventario.con(producto);
+        }
+        referenciasProducto[ordinal]++;
+        comprasEnMemoria++;
+        if (!usuario.haComprado(ordinal)) {
+            coCompras.registrarCompra(usuario.getOrdinalesComprados(), usuario.getNumeroCompras(), ordinal);
+        }
+        long precio = motorPrecios.precio(ordinal);
+        usuario.comprarProducto(producto, Usuario.diaActual(), precio);
+        producto.registrarIngreso(precio);
+        indiceVentas.registrar(producto, Usuario.diaActual(), 1, precio);
+        LocalDate hoy = LocalDate.now();
+        analitica.registrarCompra(usuario.getDni(), producto.getId(), ordinal, hoy.getYear(), hoy.getMonthValue());
+        contarCompraMes(usuario.getOrdinal(), hoy, 1);
+        publicarCambio(TipoCambio.COMPRA, usuario.getDni(), producto.getId(), precio);
+    }
+
+    // Caso de uso: Suscribir un sistema externo a los cambios de la librería (altas, bajas, compras y
+    // devoluciones). Solo recibe los cambios posteriores a la suscripción; cada suscriptor tiene su hilo
+    public synchronized void suscribirCambios(DestinoCambios destino) {
+        if (cambios == null) {
+            cambios = new AnilloCambios(AnilloCambios.CAPACIDAD);
+        }
+        cambios.suscribir(destino);
+    }
+
+    // Suscriptores desconectados por quedarse atascados una vuelta entera del anillo
+    public synchronized long getSuscriptoresDesconectados() {
+        return cambios == null ? 0 : cambios.getDesconexiones();
+    }
+
+    // Entrega lo pendiente a todos los suscriptores, para sus hilos y cierra los destinos
+    public void detenerCambios() throws InterruptedException, IOException {
+        AnilloCambios anillo;
+        synchronized (this) {
+            anillo = cambios;
+            cambios = null;
+        }
+        if (anillo != null) {
+            anillo.detener();
+        }
+    }
+
+    // Siempre con el cerrojo de la librería tomado: es lo que hace de la librería el único escritor del anillo.
+    // Por eso un suscriptor atascado no puede retenerlo más que la paciencia del anillo
+    private void publicarCambio(TipoCambio tipo, String clave, String idProducto, long importeCentimos) {
+        if (cambios != null) {
+            cambios.publicar(tipo, clave, idProducto, importeCentimos);
+        }
+    }
+
+    // Caso de uso: Archivar en segundo plano las compras con más de diasEnMemoria días. Pasan a segmentos en
+    // disco y a un resumen por mes en cada usuario, y en memoria solo queda la ventana reciente
+    public synchronized void iniciarMantenimiento(String directorio, int diasEnMemoria, long periodoMinutos)
+            throws IOException {
+        // Las devoluciones se admiten durante 14 días: esas compras tienen que seguir en memoria
+        if (diasEnMemoria <= 14) {
+            throw new IllegalArgumentException("La ventana en memoria debe cubrir el plazo de devolución: " + diasEnMemoria);
+        }
+        if (mantenimiento == null) {
+            directorioArchivo = Paths.get(directorio);
+            mantenimiento = new MantenimientoCompras(this, new ArchivoCompras(directorioArchivo), diasEnMemoria);
+            mantenimiento.iniciar(periodoMinutos, TimeUnit.MINUTES);
+        }
+    }
+
+    public void detenerMantenimiento() throws InterruptedException, IOException {
+        MantenimientoCompras actual;
+        synchronized (this) {
+            actual = mantenimiento;
+            mantenimiento = null;
+        }
+        if (actual != null) {
+            actual.detener();
+        }
+    }
+
+    // Archiva las compras anteriores a diaLimite. Cada usuario se procesa con el cerrojo tomado y se suelta
+    // entre uno y otro, para que las compras no esperen a que termine toda la pasada. Devuelve las archivadas.
+    // Toda la pasada va con el cerrojo del archivo: una exportación nunca ve una compra en los dos sitios o en
+    // ninguno
+    int compactarHistoriales(ArchivoCompras archivo, int diaLimite) throws IOException {
+        synchronized (archivo) {
+            return compactarHistorialesEn(archivo, diaLimite);
+        }
+    }
+
+    private int compactarHistorialesEn(ArchivoCompras archivo, int diaLimite) throws IOException {
+        List<Usuario> copia;
+        synchronized (this) {
+            copia = new ArrayList<>(usuarios);
+        }
+        int archivadas = 0;
+        for (Usuario usuario : copia) {
+            synchronized (this) {
+                if (usuario.getOrdinal() < 0) {
+                    continue;
+                }
+                int cantidad = usuario.comprasAnterioresA(diaLimite);
+                if (cantidad == 0) {
+                    continue;
+                }
+                int[] compras = usuario.getOrdinalesComprados();
+                for (int i = 0; i < cantidad; i++) {
+                    archivo.escribir(usuario.getDni(), indiceProductos.obtener(compras[i]).getId(),
+                            usuario.getDiaCompra(i));
+                }
+                int[] archivados = Arrays.copyOf(compras, cantidad);
+                // Lo archivado ya no sujeta el ordinal del producto
+                for (int i = 0; i < cantidad; i++) {
+                    soltarReferencia(compras[i]);
+                }
+                usuario.archivarCompras(cantidad);
+                sacarDeCoCompras(usuario, archivados);
+                comprasEnMemoria -= cantidad;
+                archivadas += cantidad;
+            }
+        }
+        archivo.vaciar();
+        return archivadas;
+    }
+
+    // La matriz de co-compras cubre las compras en memoria: los productos archivados que ya no quedan en el
+    // historial restan sus pares, así una nueva compra del mismo producto no cuenta dos veces
+    private void sacarDeCoCompras(Usuario usuario, int[] archivados) {
+        Arrays.sort(archivados);
+        int numero = usuario.getNumeroCompras();
+        int[] cesta = Arrays.copyOf(usuario.getOrdinalesComprados(), numero + archivados.length);
+        for (int i = 0; i < archivados.length; i++) {
+            int ordinal = archivados[i];
+            if ((i > 0 && archivados[i - 1] == ordinal) || usuario.haComprado(ordinal)) {
+                continue;
+            }
+            coCompras.registrarDevolucion(cesta, numero, ordinal);
+            cesta[numero++] = ordinal;
+        }
+    }
+
+    private void contarCompraMes(int ordinalUsuario, LocalDate fecha, int delta) {
+        int casilla = ordinalUsuario * 12 + fecha.getMonthValue() - 1;
+        if (añoComprasPorMes[casilla] != fecha.getYear()) {
+            if (delta < 0) {
+                // La casilla ya es de otro año: la compra devuelta no está contada
+                return;
+            }
+            añoComprasPorMes[casilla] = fecha.getYear();
+            comprasPorMes[casilla] = 0;
+        }
+        comprasPorMes[casilla] = Math.max(0, comprasPorMes[casilla] + delta);
+    }
+
+    private int comprasMes(int ordinalUsuario, int mes, int año) {
+        int casilla = ordinalUsuario * 12 + mes - 1;
+        return añoComprasPorMes[casilla] == año ? comprasPorMes[casilla] : 0;
+    }
+
+    // Con catálogo persistente el producto puede haberse paginado desde disco y no estar en la lista
+    private boolean estaEnInventario(Producto producto) {
+        if (catalogo != null) {
+            return catalogo.contiene(producto.getId());
+        }
+        return inventario.contiene(producto);
+    }
+
+    // Caso de uso: Devolver un producto
+    public void devolverProducto(Usuario usuario, Producto producto) throws Exception {
+        aplicarDevolucion(usuario, producto);
+    }
+
+    // Caso de uso: Solicitar una devolución que se procesa en segundo plano; el futuro se completa con el
+    // importe reembolsado en céntimos o con el motivo del rechazo
+    public CompletableFuture<Long> solicitarDevolucion(Usuario usuario, Producto producto) {
+        ProcesadorDevoluciones procesador = procesadorDevoluciones;
+        if (procesador == null) {
+            CompletableFuture<Long> resultado = new CompletableFuture<>();
+            resultado.completeExceptionally(new IllegalStateException("Las devoluciones asíncronas no están iniciadas."));
+            return resultado;
+        }
+        return procesador.solicitar(usuario, producto);
+    }
+
+    public synchronized void iniciarDevolucionesAsincronas(DestinoReembolsos destino, int tamañoLote) {
+        if (procesadorDevoluciones == null) {
+            procesadorDevoluciones = new ProcesadorDevoluciones(this, destino, tamañoLote);
+            procesadorDevoluciones.iniciar();
+        }
+    }
+
+    // Procesa las devoluciones pendientes y para el hilo de trabajo. La espera se hace fuera del cerrojo
+    // porque el hilo necesita tomarlo para aplicar cada devolución
+    public void detenerDevolucionesAsincronas() throws InterruptedException {
+        ProcesadorDevoluciones procesador;
+        synchronized (this) {
+            procesador = procesadorDevoluciones;
+            procesadorDevoluciones = null;
+        }
+        if (procesador != null) {
+            procesador.detener();
+        }
+    }
+
+    // Devuelve el importe reembolsado en céntimos
+    synchronized long aplicarDevolucion(Usuario usuario, Producto producto) throws Exception {
+        producto = canonico(producto);
+        if (!estaRegistrado(usuario)) {
+            throw new Exception("El usuario no está registrado en el sistema.");
+        }
+
+        if (!usuario.haCompradoRecientemente(producto)) {
+            throw new Exception("No se puede devolver el producto, no fue comprado recientemente.");
+        }
+
+        // Se reembolsa lo que se cobró en la compra, aunque el precio haya cambiado desde entonces, y se
+        // descuenta del día en que se hizo
+        int diaCompra = usuario.diaUltimaCompra(producto.getOrdinal());
+        long reembolso = usuario.devolverProducto(producto);
+        comprasEnMemoria--;
+        if (!usuario.haComprado(producto.getOrdinal())) {
+            coCompras.registrarDevolucion(usuario.getOrdinalesComprados(), usuario.getNumeroCompras(),
+                    producto.getOrdinal());
+        }
+        producto.registrarIngreso(-reembolso);
+        indiceVentas.registrar(producto, diaCompra, -1, -reembolso);
+        publicarCambio(TipoCambio.DEVOLUCION, usuario.getDni(), producto.getId(), reembolso);
+        soltarReferencia(producto.getOrdinal());
+        contarCompraMes(usuario.getOrdinal(), LocalDate.ofEpochDay(diaCompra), -1);
+        return reembolso;
+    }
+
+    // Caso de uso: Consultas declarativas sobre el inventario o los usuarios, p. ej. libros vendidos por categoría:
+    // Consulta.sobre(Libro.class).agruparPor("categoria").sumar("vendidos").ordenarPor("suma(vendidos)", true)
+    // Usa los índices que hay: id y DNI por búsqueda directa, y el orden por título del inventario para las
+    // cotas inferiores de título y para no reordenar cuando se pide ese mismo orden
+    public <T> List<Object[]> consultar(Consulta<T> consulta) throws IOException {
+        ConsultaCompilada<T> compilada = consulta.compilar();
+        Class<T> tipo = consulta.getTipo();
+        if (tipo == Usuario.class) {
+            Object dni = consulta.valorIgualdad("dni");
+            List<Usuario> origen;
+            synchronized (this) {
+                if (dni instanceof String) {
+                    Usuario usuario = obtenerUsuarioPorDNI((String) dni);
+                    origen = usuario == null ? Collections.emptyList() : Collections.singletonList(usuario);
+                } else {
+                    origen = new ArrayList<>(usuarios);
+                }
+            }
+            return compilada.ejecutar(origen, false);
+        }
+        if (!Producto.class.isAssignableFrom(tipo)) {
+            throw new IllegalArgumentException("Solo se puede consultar sobre productos o usuarios: " + tipo.getSimpleName());
+        }
+        Object id = consulta.valorIgualdad("id");
+        if (id instanceof String) {
+            Producto producto = obtenerProductoPorId((String) id);
+            return compilada.ejecutar(producto == null ? Collections.emptyList() : Collections.singletonList(producto),
+                    true);
+        }
+        Object desde = consulta.cotaInferior("titulo");
+        Iterable<Producto> origen = desde instanceof String ? inventario.porTitulo((String) desde) : inventario;
+        return compilada.ejecutar(origen, true);
+    }
+
+    // Caso de uso: Exportar inventario, usuarios (sin datos de tarjeta) e historial de compras a un fichero
+    // columnar para el análisis fuera de línea. El inventario es una instantánea inmutable; de usuarios y
+    // compras se copia lo justo bajo el cerrojo para no bloquear las ventas durante la exportación
+    public void exportarColumnar(String filename) throws IOException {
+        InstantaneaCatalogo productos = inventario;
+        List<Usuario> copiaUsuarios;
+        MantenimientoCompras actual;
+        Path archivadas;
+        synchronized (this) {
+            copiaUsuarios = new ArrayList<>(usuarios);
+            actual = mantenimiento;
+            archivadas = directorioArchivo;
+        }
+        try (ExportadorColumnar exportador = new ExportadorColumnar(filename, ExportadorColumnar.FILAS_POR_GRUPO)) {
+            try (ExportadorColumnar.Tabla tabla = exportador.tabla("inventario",
+                    new String[] { "tipo", "id", "titulo", "precio", "vendidos", "ingresos", "autor", "categoria",
+                            "nuevo", "edadRecomendada", "tematica" },
+                    new ExportadorColumnar.Tipo[] { ExportadorColumnar.Tipo.DICCIONARIO,
+                            ExportadorColumnar.Tipo.TEXTO, ExportadorColumnar.Tipo.TEXTO,
+                            ExportadorColumnar.Tipo.ENTERO, ExportadorColumnar.Tipo.ENTERO,
+                            ExportadorColumnar.Tipo.ENTERO, ExportadorColumnar.Tipo.DICCIONARIO,
+                            ExportadorColumnar.Tipo.DICCIONARIO, ExportadorColumnar.Tipo.ENTERO,
+                            ExportadorColumnar.Tipo.ENTERO, ExportadorColumnar.Tipo.DICCIONARIO })) {
+                for (Producto producto : productos) {
+                    tabla.texto(1, producto.getId());
+                    tabla.texto(2, producto.getTitulo());
+                    tabla.entero(3, producto.getPrecioCentimos());
+                    tabla.entero(4, producto.getVendidos());
+                    tabla.entero(5, producto.getIngresosCentimos());
+                    if (producto instanceof Libro) {
+                        Libro libro = (Libro) producto;
+                        tabla.texto(0, "LIBRO");
+                        tabla.texto(6, libro.getAutor());
+                        tabla.texto(7, libro.getCategoria());
+                        tabla.entero(8, libro.esNuevo() ? 1 : 0);
+                    } else if (producto instanceof JuegoMesa) {
+                        JuegoMesa juegoMesa = (JuegoMesa) producto;
+                        tabla.texto(0, "JUEGO");
+                        tabla.entero(9, juegoMesa.getEdadRecomendada());
+                        tabla.texto(10, juegoMesa.getTematica());
+                    }
+                    tabla.siguienteFila();
+                }
+            }
+
+            try (ExportadorColumnar.Tabla tabla = exportador.tabla("usuarios",
+                    new String[] { "dni", "nombre", "apellido1", "apellido2", "dia", "mes", "año", "edad" },
+                    new ExportadorColumnar.Tipo[] { ExportadorColumnar.Tipo.TEXTO, ExportadorColumnar.Tipo.DICCIONARIO,
+                            ExportadorColumnar.Tipo.DICCIONARIO, ExportadorColumnar.Tipo.DICCIONARIO,
+                            ExportadorColumnar.Tipo.ENTERO, ExportadorColumnar.Tipo.ENTERO,
+                            ExportadorColumnar.Tipo.ENTERO, ExportadorColumnar.Tipo.ENTERO })) {
+                for (Usuario usuario : copiaUsuarios) {
+                    tabla.texto(0, usuario.getDni());
+                    tabla.texto(1, usuario.getNombre());
+                    tabla.texto(2, usuario.getApellido1());
+                    tabla.texto(3, usuario.getApellido2());
+                    tabla.entero(4, usuario.getDia());
+                    tabla.entero(5, usuario.getMes());
+                    tabla.entero(6, usuario.getAño());
+                    tabla.entero(7, usuario.getEdad());
+                    tabla.siguienteFila();
+                }
+            }
+
+            // Una fila por producto comprado: primero las archivadas en disco y después las que siguen en
+            // memoria, que para cada usuario son consecutivas y dejan el DNI en una sola racha
+            try (ExportadorColumnar.Tabla tabla = exportador.tabla("compras",
+                    new String[] { "dni", "producto", "fecha" },
+                    new ExportadorColumnar.Tipo[] { ExportadorColumnar.Tipo.DICCIONARIO,
+                            ExportadorColumnar.Tipo.DICCIONARIO, ExportadorColumnar.Tipo.DICCIONARIO })) {
+                if (actual == null) {
+                    exportarCompras(tabla, archivadas, copiaUsuarios);
+                } else {
+                    // Con el archivo bloqueado ninguna compra pasa de memoria a disco mientras se exporta
+                    ArchivoCompras archivo = actual.getArchivo();
+                    synchronized (archivo) {
+                        archivo.vaciar();
+                        exportarCompras(tabla, archivadas, copiaUsuarios);
+                    }
+                }
+            }
+        }
+    }
+
+    private void exportarCompras(ExportadorColumnar.Tabla tabla, Path archivadas, List<Usuario> copiaUsuarios)
+            throws IOException {
+        if (archivadas != null) {
+            for (Path segmento : ArchivoCompras.segmentos(archivadas)) {
+                try (BufferedReader br = Files.newBufferedReader(segmento, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        String[] campos = line.split("\\|");
+                        tabla.texto(0, campos[0]);
+                        tabla.texto(1, campos[1]);
+                        tabla.texto(2, campos[2]);
+                        tabla.siguienteFila();
+                    }
+                }
+            }
+        }
+        List<String> ids = new ArrayList<>();
+        List<String> fechas = new ArrayList<>();
+        for (Usuario usuario : copiaUsuarios) {
+            ids.clear();
+            fechas.clear();
+            synchronized (this) {
+                int[] compras = usuario.getOrdinalesComprados();
+                for (int i = 0; i < usuario.getNumeroCompras(); i++) {
+                    ids.add(indiceProductos.obtener(compras[i]).getId());
+                    fechas.add(LocalDate.ofEpochDay(usuario.getDiaCompra(i)).toString());
+                }
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                tabla.texto(0, usuario.getDni());
+                tabla.texto(1, ids.get(i));
+                tabla.texto(2, fechas.get(i));
+                tabla.siguienteFila();
+            }
+        }
+    }
+
+    // Caso de uso: Listar productos por título y vendidos
+    public void listarProductos() {
+        for (Producto producto : inventario) {
+            System.out.println("Título: " + producto.getTitulo() + " | Vendidos: " + producto.getVendidos());
+        }
+    }
+
+    // Vista perezosa del inventario en orden de título, a partir de un cursor (null para empezar por el principio)
+    public Stream<Producto> productosPorTitulo(String cursor) {
+        Iterable<Producto> vista = inventario.porTitulo(cursor == null ? null : decodificarCursor(cursor));
+        return StreamSupport.stream(vista.spliterator(), false);
+    }
+
+    // Caso de uso: Listar productos por título y vendidos, de página en página
+    public Pagina<Producto> listarProductos(String cursor, int tamaño) {
+        return paginar(cursor, tamaño, Producto.class, producto -> true);
+    }
+
+    // Caso de uso: Ranking por título de libros vendidos en un mes del año en curso, de página en página
+    public synchronized Pagina<Libro> obtenerRankingLibrosVendidos(int mes, String cursor, int tamaño) {
+        int año = LocalDate.now().getYear();
+        return paginar(cursor, tamaño, Libro.class, libro -> vendidoEnMes(libro, mes, año));
+    }
+
+    // Caso de uso: Ranking por título de juegos de mesa vendidos en un mes del año en curso, de página en página
+    public synchronized Pagina<JuegoMesa> obtenerRankingJuegosVendidos(int mes, String cursor, int tamaño) {
+        int año = LocalDate.now().getYear();
+        return paginar(cursor, tamaño, JuegoMesa.class, juego -> vendidoEnMes(juego, mes, año));
+    }
+
+    // Recorre el índice por título desde el cursor hasta llenar la página; el cursor siguiente es la clave del
+    // último elemento devuelto, así que sigue siendo válido aunque haya altas o bajas entre páginas
+    private <T extends Producto> Pagina<T> paginar(String cursor, int tamaño, Class<T> tipo, Predicate<T> filtro) {
+        if (tamaño <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser positivo.");
+        }
+        Iterable<Producto> vista = inventario.porTitulo(cursor == null ? null : decodificarCursor(cursor));
+        List<T> elementos = new ArrayList<>(tamaño);
+        for (Producto candidato : vista) {
+            if (!tipo.isInstance(candidato)) {
+                continue;
+            }
+            T producto = tipo.cast(candidato);
+            if (!filtro.test(producto)) {
+                continue;
+            }
+            if (elementos.size() == tamaño) {
+                Producto ultimo = elementos.get(tamaño - 1);
+                return new Pagina<>(elementos, codificarCursor(InstantaneaCatalogo.clavePorTitulo(ultimo)));
+            }
+            elementos.add(producto);
+        }
+        return new Pagina<>(elementos, null);
+    }
+
+    private static String codificarCursor(String clave) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(clave.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodificarCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor inválido: " + cursor, e);
+        }
+    }
+
+    // Caso de uso: Dinero ingresado procedente de las ventas de libros en un determinado mes/año
+    public double obtenerIngresosLibros(int mes, int año) {
+        return Dinero.aEuros(obtenerIngresosLibrosCentimos(mes, año));
+    }
+
+    public long obtenerIngresosLibrosCentimos(int mes, int año) {
+        return obtenerIngresosCentimos(Libro.class, primerDia(mes, año), ultimoDia(mes, año));
+    }
+
+    // Caso de uso: Dinero ingresado procedente de las ventas de juegos en un determinado mes/año
+    public double obtenerIngresosJuegos(int mes, int año) {
+        return Dinero.aEuros(obtenerIngresosJuegosCentimos(mes, año));
+    }
+
+    public long obtenerIngresosJuegosCentimos(int mes, int año) {
+        return obtenerIngresosCentimos(JuegoMesa.class, primerDia(mes, año), ultimoDia(mes, año));
+    }
+
+    // Caso de uso: Cantidad de libros vendidos en un determinado mes del año en curso
+    public int obtenerCantidadLibrosVendidos(int mes) {
+        return obtenerCantidadLibrosVendidos(mes, LocalDate.now().getYear());
+    }
+
+    // Caso de uso: Cantidad de juegos de mesa vendidos en un mes del año en curso
+    public int obtenerCantidadJuegosVendidos(int mes) {
+        return obtenerCantidadJuegosVendidos(mes, LocalDate.now().getYear());
+    }
+
+    // Caso de uso: Cantidad de libros vendidos en un mes de un año concreto
+    public int obtenerCantidadLibrosVendidos(int mes, int año) {
+        return Math.toIntExact(obtenerUnidadesVendidas(Libro.class, primerDia(mes, año), ultimoDia(mes, año)));
+    }
+
+    // Caso de uso: Cantidad de juegos de mesa vendidos en un mes de un año concreto
+    public int obtenerCantidadJuegosVendidos(int mes, int año) {
+        return Math.toIntExact(obtenerUnidadesVendidas(JuegoMesa.class, primerDia(mes, año), ultimoDia(mes, año)));
+    }
+
+    private static LocalDate primerDia(int mes, int año) {
+        if (mes < 1 || mes > 12) {
+            throw new IllegalArgumentException("Mes inválido: " + mes);
+        }
+        return LocalDate.of(año, mes, 1);
+    }
+
+    private static LocalDate ultimoDia(int mes, int año) {
+        return primerDia(mes, año).plusMonths(1).minusDays(1);
+    }
+
+    // Con el cerrojo tomado: unidades netas del producto en el mes, devoluciones incluidas
+    private boolean vendidoEnMes(Producto producto, int mes, int año) {
+        return indiceVentas.porProducto(producto.getId()).unidades(dia(primerDia(mes, año)),
+                dia(ultimoDia(mes, año))) > 0;
+    }
+
+    // Caso de uso: Ingresos y unidades vendidas entre dos fechas, ambas incluidas, por tipo de producto
+    // (Libro, JuegoMesa o Producto para el total), por categoría de libro o temática de juego y por producto.
+    // Las devoluciones restan el día de la compra que deshacen. Cada consulta es O(log n) en el número de días
+    public synchronized long obtenerIngresosCentimos(Class<? extends Producto> tipo, LocalDate desde, LocalDate hasta) {
+        return indiceVentas.porTipo(tipo).centimos(dia(desde), dia(hasta));
+    }
+
+    public synchronized long obtenerUnidadesVendidas(Class<? extends Producto> tipo, LocalDate desde, LocalDate hasta) {
+        return indiceVentas.porTipo(tipo).unidades(dia(desde), dia(hasta));
+    }
+
+    // El tipo distingue una categoría de libro de una temática de juego con el mismo nombre
+    public synchronized long obtenerIngresosCategoriaCentimos(Class<? extends Producto> tipo, String categoria,
+            LocalDate desde, LocalDate hasta) {
+        return indiceVentas.porCategoria(tipo, categoria).centimos(dia(desde), dia(hasta));
+    }
+
+    public synchronized long obtenerUnidadesCategoria(Class<? extends Producto> tipo, String categoria,
+            LocalDate desde, LocalDate hasta) {
+        return indiceVentas.porCategoria(tipo, categoria).unidades(dia(desde), dia(hasta));
+    }
+
+    // Por id: la serie sigue al producto aunque se dé de baja y su ordinal pase a otro
+    public synchronized long obtenerIngresosProductoCentimos(Producto producto, LocalDate desde, LocalDate hasta) {
+        return indiceVentas.porProducto(producto.getId()).centimos(dia(desde), dia(hasta));
+    }
+
+    public synchronized long obtenerUnidadesProducto(Producto producto, LocalDate desde, LocalDate hasta) {
+        return indiceVentas.porProducto(producto.getId()).unidades(dia(desde), dia(hasta));
+    }
+
+    private static int dia(LocalDate fecha) {
+        return Math.toIntExact(fecha.toEpochDay());
+    }
+
+    // Caso de uso: Ranking por título de libros vendidos en un mes del año en curso
+    public List<Libro> obtenerRankingLibrosVendidos(int mes) {
+        return obtenerRankingLibrosVendidos(mes, LocalDate.now().getYear());
+    }
+
+    public synchronized List<Libro> obtenerRankingLibrosVendidos(int mes, int año) {
+        List<Libro> ranking = new ArrayList<>();
+        for (Producto producto : inventario) {
+            if (producto instanceof Libro) {
+                Libro libro = (Libro) producto;
+                if (vendidoEnMes(libro, mes, año)) {
+                    ranking.add(libro);
+                }
+            }
+        }
+        ranking.sort(Comparator.comparing(Libro::getTitulo));
+        return ranking;
+    }
+
+    // Caso de uso: Ranking por título de juegos de mesa vendidos en un mes del año en curso
+    public List<JuegoMesa> obtenerRankingJuegosVendidos(int mes) {
+        return obtenerRankingJuegosVendidos(mes, LocalDate.now().getYear());
+    }
+
+    public synchronized List<JuegoMesa> obtenerRankingJuegosVendidos(int mes, int año) {
+        List<JuegoMesa> ranking = new ArrayList<>();
+        for (Producto producto : inventario) {
+            if (producto instanceof JuegoMesa) {
+                JuegoMesa juegoMesa = (JuegoMesa) producto;
+                if (vendidoEnMes(juegoMesa, mes, año)) {
+                    ranking.add(juegoMesa);
+                }
+            }
+        }
+        ranking.sort(Comparator.comparing(JuegoMesa::getTitulo));
+        return ranking;
+    }
+
+    // Caso de uso: Listado de los 5 clientes con más compras en un mes del año en curso
+    public List<Usuario> obtenerClientesConMasCompras(int mes) {
+        return obtenerClientesConMasCompras(mes, LocalDate.now().getYear());
+    }
+
+    // Recorre los contadores por ordinal manteniendo los 5 mejores por inserción; en empate gana el
+    // usuario dado de alta antes. Los contadores cubren los últimos doce meses
+    public synchronized List<Usuario> obtenerClientesConMasCompras(int mes, int año) {
+        if (mes < 1 || mes > 12) {
+            throw new IllegalArgumentException("Mes inválido: " + mes);
+        }
+        int[] mejores = new int[5];
+        int[] compras = new int[5];
+        int encontrados = 0;
+        for (int ordinal = 0; ordinal < indiceUsuarios.limite(); ordinal++) {
+            if (indiceUsuarios.obtener(ordinal) == null) {
+                continue;
+            }
+            int cantidad = comprasMes(ordinal, mes, año);
+            if (encontrados == 5 && cantidad <= compras[4]) {
+                continue;
+            }
+            int i = encontrados < 5 ? encontrados++ : 4;
+            while (i > 0 && compras[i - 1] < cantidad) {
+                mejores[i] = mejores[i - 1];
+                compras[i] = compras[i - 1];
+                i--;
+            }
+            mejores[i] = ordinal;
+            compras[i] = cantidad;
+        }
+
+        List<Usuario> clientes = new ArrayList<>(encontrados);
+        for (int i = 0; i < encontrados; i++) {
+            clientes.add(indiceUsuarios.obtener(mejores[i]));
+        }
+        return clientes;
+    }
+
+    public static void main(String[] args) {
+        LibreriaOnline libreria = new LibreriaOnline();
+
+        // Ejemplo de uso
+        try {
+            // Cargar inventario desde archivo
+            libreria.cargarInventario("inventario.txt");
+            // Cargar usuarios desde archivo
+            libreria.cargarUsuarios("usuarios.txt");
+            for (EstadisticasCarga estadisticas : libreria.getEstadisticasCarga()) {
+                System.out.println(estadisticas);
+            }
+
+            // Realizar acciones en la librería
+            Usuario usuario1 = libreria.obtenerUsuarioPorDNI("12345678A");
+            Usuario usuario2 = libreria.obtenerUsuarioPorDNI("98765432B");
+
+            Producto libro1 = libreria.obtenerProductoPorId("L001");
+            Producto juego1 = libreria.obtenerProductoPorId("J001");
+
+            libreria.comprarProducto(usuario1, libro1);
+            libreria.comprarProducto(usuario2, juego1);
+
+            libreria.devolverProducto(usuario1, libro1);
+
+            libreria.listarProductos();
+
+            LocalDate hoy = LocalDate.now();
+            double ingresosLibros = libreria.obtenerIngresosLibros(hoy.getMonthValue(), hoy.getYear());
+            System.out.println("Ingresos por libros: " + ingresosLibros);
+
+            long ingresosAño = libreria.obtenerIngresosCentimos(Producto.class, hoy.withDayOfYear(1), hoy);
+            System.out.println("Ingresos en lo que va de año: " + Dinero.aEuros(ingresosAño));
+
+            int cantidadLibrosVendidos = libreria.obtenerCantidadLibrosVendidos(hoy.getMonthValue());
+            System.out.println("Cantidad de libros vendidos: " + cantidadLibrosVendidos);
+
+            List<Libro> rankingLibros = libreria.obtenerRankingLibrosVendidos(hoy.getMonthValue());
+            System.out.println("Ranking de libros vendidos:");
+            for (Libro libro : rankingLibros) {
+                System.out.println(libro.getTitulo());
+            }
+
+            List<Usuario> clientesConMasCompras = libreria.obtenerClientesConMasCompras(hoy.getMonthValue());
+            System.out.println("Clientes con más compras:");
+            for (Usuario cliente : clientesConMasCompras) {
+                System.out.println(cliente.getNombreCompleto());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Carga el inventario desde un archivo
+    private void cargarInventario(String filename) throws IOException {
+        synchronized (cerrojoCambios) {
+            cargarInventarioEn(filename);
+        }
+    }
+
+    private void cargarInventarioEn(String filename) throws IOException {
+        EstadisticasCarga.Medicion medicion = EstadisticasCarga.empezar();
+        int registros = 0;
+        List<Producto> productos = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+            String line;
+            CamposLinea campos = new CamposLinea();
+            while ((line = br.readLine()) != null) {
+                Producto producto = parsearProducto(campos.leer(line));
+                if (producto != null) {
+                    productos.add(producto);
+                    huellasInventario.put(producto.getId(), campos.huella());
+                    registros++;
+                }
+            }
+        }
+        darDeAltaProductos(productos);
+        estadisticasCarga.add(medicion.terminar(filename, registros));
+    }
+
+    // Alta en bloque para la carga: una sola instantánea nueva
+    private synchronized void darDeAltaProductos(List<Producto> productos) throws IOException {
+        Map<String, Producto> porId = new LinkedHashMap<>();
+        for (Producto producto : productos) {
+            porId.put(producto.getId(), producto);
+        }
+        if (catalogo == null) {
+            comprobarMemoria(porId.size() * BYTES_POR_PRODUCTO);
+            inventario = inventario.conTodos(porId.values());
+        }
+        for (Producto producto : porId.values()) {
+            filtroProductos.agregar(producto.getId());
+            if (catalogo != null) {
+                catalogo.guardar(producto);
+                cacheProductos.invalidar(producto.getId());
+            } else {
+                ordinalProducto(producto);
+            }
+            publicarCambio(TipoCambio.ALTA_PRODUCTO, producto.getId(), null, producto.getPrecioCentimos());
+        }
+    }
+
+    // Tiempo, memoria asignada y heap tras cada carga de fichero, en el orden en que se hicieron
+    public List<EstadisticasCarga> getEstadisticasCarga() {
+        return Collections.unmodifiableList(estadisticasCarga);
+    }
+
+    // Relee el fichero de inventario y aplica solo las altas, bajas y modificaciones respecto a lo cargado. Un
+    // registro modificado actualiza el producto existente, que conserva ventas, ordinal e historiales; solo si
+    // cambia de tipo (libro a juego o al revés) se da de baja y se crea otro. Devuelve el número de cambios.
+    // La lectura del fichero y la comparación se hacen sin el cerrojo de la librería, que solo se toma para
+    // aplicar las diferencias; dos aplicaciones a la vez se serializan con cerrojoCambios
+    public int aplicarCambiosInventario(String filename) throws IOException {
+        synchronized (cerrojoCambios) {
+            Map<String, String> registros = leerRegistros(filename, 1);
+            List<String> bajas = new ArrayList<>();
+            for (String id : huellasInventario.keySet()) {
+                if (!registros.containsKey(id)) {
+                    bajas.add(id);
+                }
+            }
+            Map<String, Producto> modificados = new LinkedHashMap<>();
+            for (Map.Entry<String, String> registro : registros.entrySet()) {
+                Integer huella = huellasInventario.get(registro.getKey());
+                if (huella != null && huella == registro.getValue().hashCode()) {
+                    continue;
+                }
+                Producto producto = parsearProducto(registro.getValue());
+                if (producto != null) {
+                    modificados.put(registro.getKey(), producto);
+                }
+            }
+            if (!bajas.isEmpty() || !modificados.isEmpty()) {
+                aplicarDiferenciasInventario(bajas, modificados, registros);
+            }
+            return bajas.size() + modificados.size();
+        }
+    }
+
+    private synchronized void aplicarDiferenciasInventario(List<String> bajas, Map<String, Producto> modificados,
+            Map<String, String> registros) throws IOException {
+        for (String id : bajas) {
+            Producto anterior = productoRegistrado(id);
+            if (anterior != null) {
+                darDeBajaProducto(anterior);
+            }
+            huellasInventario.remove(id);
+        }
+        for (Map.Entry<String, Producto> modificado : modificados.entrySet()) {
+            Producto producto = modificado.getValue();
+            Producto anterior = productoRegistrado(modificado.getKey());
+            if (anterior != null && anterior.getClass() == producto.getClass()) {
+                actualizarProducto(anterior, producto);
+            } else {
+                if (anterior != null) {
+                    darDeBajaProducto(anterior);
+                }
+                darDeAltaProducto(producto);
+            }
+            huellasInventario.put(modificado.getKey(), registros.get(modificado.getKey()).hashCode());
+        }
+    }
+
+    // Equivalente para el fichero de usuarios, usando el DNI como clave
+    public int aplicarCambiosUsuarios(String filename) throws IOException {
+        synchronized (cerrojoCambios) {
+            Map<String, String> registros = leerRegistros(filename, 3);
+            List<String> bajas = new ArrayList<>();
+            for (String dni : huellasUsuarios.keySet()) {
+                if (!registros.containsKey(dni)) {
+                    bajas.add(dni);
+                }
+            }
+            Map<String, Usuario> modificados = new LinkedHashMap<>();
+            for (Map.Entry<String, String> registro : registros.entrySet()) {
+                Integer huella = huellasUsuarios.get(registro.getKey());
+                if (huella == null || huella != registro.getValue().hashCode()) {
+                    modificados.put(registro.getKey(), parsearUsuario(registro.getValue()));
+                }
+            }
+            if (!bajas.isEmpty() || !modificados.isEmpty()) {
+                aplicarDiferenciasUsuarios(bajas, modificados, registros);
+            }
+            return bajas.size() + modificados.size();
+        }
+    }
+
+    private synchronized void aplicarDiferenciasUsuarios(List<String> bajas, Map<String, Usuario> modificados,
+            Map<String, String> registros) {
+        for (String dni : bajas) {
+            Usuario anterior = obtenerUsuarioPorDNI(dni);
+            if (anterior != null) {
+                darDeBajaUsuario(anterior);
+            }
+            huellasUsuarios.remove(dni);
+        }
+        for (Map.Entry<String, Usuario> modificado : modificados.entrySet()) {
+            Usuario anterior = obtenerUsuarioPorDNI(modificado.getKey());
+            if (anterior != null) {
+                actualizarUsuario(anterior, modificado.getValue());
+            } else {
+                darDeAltaUsuario(modificado.getValue());
+            }
+            huellasUsuarios.put(modificado.getKey(), registros.get(modificado.getKey()).hashCode());
+        }
+        // Los usuarios nuevos pueden ser padres de otros ya cargados, así que se vuelven a aplicar todos los
+        // enlaces (enlazar ignora los que ya existen)
+        enlazarTutores(registros.values());
+    }
+
+    // Modificación de un producto sin cambiar el objeto. Si estaba retirado (dado de baja pero aún en algún
+    // historial) vuelve al inventario
+    private void actualizarProducto(Producto producto, Producto datos) throws IOException {
+        if (inventario.contiene(producto)) {
+            inventario = inventario.sin(producto);
+        }
+        if (productosRetirados.get(producto.getOrdinal())) {
+            productosRetirados.clear(producto.getOrdinal());
+            filtroProductos.agregar(producto.getId());
+        }
+        producto.actualizarDesde(datos);
+        inventario = inventario.con(producto);
+        motorPrecios.actualizar(producto.getOrdinal());
+        if (catalogo != null) {
+            catalogo.guardar(producto);
+            cacheProductos.invalidar(producto.getId());
+        }
+        publicarCambio(TipoCambio.MODIFICACION_PRODUCTO, producto.getId(), null, producto.getPrecioCentimos());
+    }
+
+    // Modificación de un usuario sin cambiar el objeto, que conserva historial, ordinal y tutores
+    private void actualizarUsuario(Usuario usuario, Usuario datos) {
+        usuario.actualizarDesde(datos);
+        String numTarjeta = datos.extraerNumTarjeta();
+        if (numTarjeta != null && !numTarjeta.isEmpty()) {
+            usuario.setTokenTarjeta(bovedaTarjetas.guardar(usuario.getOrdinal(), numTarjeta));
+        }
+        publicarCambio(TipoCambio.MODIFICACION_USUARIO, usuario.getDni(), null, 0);
+    }
+
+    // Lee las líneas no vacías de un fichero de registros separados por '|', indexadas por la columna clave
+    private static Map<String, String> leerRegistros(String filename, int columnaClave) throws IOException {
+        Map<String, String> registros = new LinkedHashMap<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                String[] values = line.split("\\|");
+                if (values.length > columnaClave) {
+                    registros.put(values[columnaClave], line);
+                }
+            }
+        }
+        return registros;
+    }
+
+    private Producto productoRegistrado(String id) {
+        Integer ordinal = ordinalPorId.get(id);
+        return ordinal == null ? null : indiceProductos.obtener(ordinal);
+    }
+
+    // Convierte una línea del fichero de inventario en un producto (null si el tipo no es conocido)
+    public static Producto parsearProducto(String line) {
+        return parsearProducto(new CamposLinea().leer(line));
+    }
+
+    // Sin split ni subcadenas para el tipo, los números y el booleano; autor, categoría y temática se internan
+    static Producto parsearProducto(CamposLinea values) {
+        if (values.es(0, "LIBRO")) {
+            String id = values.texto(1);
+            String titulo = values.texto(2);
+            String autor = values.texto(3, AUTORES);
+            double precio = Dinero.aEuros(values.centimos(4));
+            String categoria = values.texto(5, CATEGORIAS);
+            boolean nuevo = values.booleano(6);
+            return new Libro(id, titulo, autor, precio, categoria, nuevo);
+        } else if (values.es(0, "JUEGO")) {
+            String id = values.texto(1);
+            String titulo = values.texto(2);
+            int edadRecomendada = values.entero(3);
+            String tematica = values.texto(4, TEMATICAS);
+            double precio = values.numero() > 5 ? Dinero.aEuros(values.centimos(5)) : 0;
+            return new JuegoMesa(id, titulo, precio, edadRecomendada, tematica);
+        }
+        return null;
+    }
+
+    // Convierte un producto en una línea con el formato del fichero de inventario
+    public static String formatearProducto(Producto producto) {
+        if (producto instanceof Libro) {
+            Libro libro = (Libro) producto;
+            return "LIBRO|" + libro.getId() + "|" + libro.getTitulo() + "|" + libro.getAutor() + "|"
+                    + libro.getPrecio() + "|" + libro.getCategoria() + "|" + libro.esNuevo();
+        }
+        JuegoMesa juegoMesa = (JuegoMesa) producto;
+        return "JUEGO|" + juegoMesa.getId() + "|" + juegoMesa.getTitulo() + "|" + juegoMesa.getEdadRecomendada() + "|"
+                + juegoMesa.getTematica() + "|" + juegoMesa.getPrecio();
+    }
+
+    // Carga los usuarios desde un archivo
+    private void cargarUsuarios(String filename) throws IOException {
+        synchronized (cerrojoCambios) {
+            cargarUsuariosEn(filename);
+        }
+    }
+
+    private synchronized void cargarUsuariosEn(String filename) throws IOException {
+        EstadisticasCarga.Medicion medicion = EstadisticasCarga.empezar();
+        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+            String line;
+            CamposLinea campos = new CamposLinea();
+            List<String> conTutores = new ArrayList<>();
+            List<Usuario> cargados = new ArrayList<>();
+            while ((line = br.readLine()) != null) {
+                Usuario usuario = parsearUsuario(campos.leer(line));
+                registrarUsuario(usuario);
+                huellasUsuarios.put(usuario.getDni(), campos.huella());
+                if (campos.numero() > 8 && campos.longitud(8) > 0) {
+                    conTutores.add(line);
+                }
+                cargados.add(usuario);
+            }
+            cifrarTarjetas(cargados);
+            // Los padres pueden aparecer después que sus hijos en el fichero: se enlazan al final. Solo se
+            // guardan las líneas que tienen tutores
+            enlazarTutores(conTutores);
+            estadisticasCarga.add(medicion.terminar(filename, cargados.size()));
+        }
+    }
+
+    private void cifrarTarjetas(List<Usuario> cargados) {
+        int[] ordinales = new int[cargados.size()];
+        String[] numeros = new String[cargados.size()];
+        for (int i = 0; i < ordinales.length; i++) {
+            ordinales[i] = cargados.get(i).getOrdinal();
+            numeros[i] = cargados.get(i).extraerNumTarjeta();
+        }
+        long[] tokens = bovedaTarjetas.guardarLote(ordinales, numeros);
+        for (int i = 0; i < tokens.length; i++) {
+            cargados.get(i).setTokenTarjeta(tokens[i]);
+        }
+    }
+
+    // Columna opcional 9 del fichero de usuarios: DNIs de los padres o tutores separados por comas
+    private void enlazarTutores(Collection<String> lineas) {
+        for (String line : lineas) {
+            String[] values = line.trim().split("\\|");
+            if (values.length <= 8 || values[8].isEmpty()) {
+                continue;
+            }
+            Usuario hijo = obtenerUsuarioPorDNI(values[3]);
+            for (String dniPadre : values[8].split(",")) {
+                Usuario padre = obtenerUsuarioPorDNI(dniPadre.trim());
+                if (hijo != null && padre != null && padre != hijo) {
+                    grafoFamiliar.enlazar(padre.getOrdinal(), hijo.getOrdinal());
+                }
+            }
+        }
+    }
+
+    // Convierte una línea del fichero de usuarios en un usuario
+    private Usuario parsearUsuario(String line) {
+        return parsearUsuario(new CamposLinea().leer(line));
+    }
+
+    private Usuario parsearUsuario(CamposLinea values) {
+        String nombre = values.texto(0, NOMBRES);
+        String apellido1 = values.texto(1, APELLIDOS);
+        String apellido2 = values.texto(2, APELLIDOS);
+        String dni = values.texto(3);
+        int dia = values.entero(4);
+        int mes = values.entero(5);
+        int año = values.entero(6);
+        int edad = calcularEdad(dia, mes, año);
+        String numTarjeta = values.texto(7);
+        return new Usuario(nombre, apellido1, apellido2, dni, dia, mes, año, edad, numTarjeta);
+    }
+
+    // Obtiene un usuario por su DNI
+    private Usuario obtenerUsuarioPorDNI(String dni) {
+        if (!filtroUsuarios.podriaContener(dni)) {
+            return null;
+        }
+        for (Usuario usuario : usuarios) {
+            if (usuario.getDni().equals(dni)) {
+                return usuario;
+            }
+        }
+        filtroUsuarios.registrarFalsoPositivo();
+        return null;
+    }
+
+    // Obtiene un producto por su ID
+    private Producto obtenerProductoPorId(String id) throws IOException {
+        if (!filtroProductos.podriaContener(id)) {
+            return null;
+        }
+        if (cacheProductos != null) {
+            Producto registrado;
+            synchronized (this) {
+                registrado = productoRegistrado(id);
+            }
+            if (registrado != null) {
+                return registrado;
+            }
+            Producto producto = cacheProductos.obtener(id);
+            if (producto == null) {
+                filtroProductos.registrarFalsoPositivo();
+            }
+            return producto;
+        }
+        Producto producto = inventario.obtener(id);
+        if (producto == null) {
+            filtroProductos.registrarFalsoPositivo();
+        }
+        return producto;
+    }
+
+    // Calcula la edad a partir de la fecha de nacimiento
+    private int calcularEdad(int dia, int mes, int año) {
+        // Implementación simplificada, no tiene en cuenta los años bisiestos
+        Calendar now = Calendar.getInstance();
+        int currentYear = now.get(Calendar.YEAR);
+        int currentMonth = now.get(Calendar.MONTH) + 1;
+        int currentDay = now.get(Calendar.DAY_OF_MONTH);
+
+        int edad = currentYear - año;
+
+        if (mes > currentMonth || (mes == currentMonth && dia > currentDay)) {
+            edad--;
+        }
+
+        return edad;
+    }
+}
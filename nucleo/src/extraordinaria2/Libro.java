@@ -0,0 +1,36 @@
+package extraordinaria2;
+
+// Clase que representa un libro
+public class Libro extends Producto {
+    private String autor;
+    private String categoria;
+    private boolean nuevo;
+
+    public Libro(String id, String titulo, String autor, double precio, String categoria, boolean nuevo) {
+        super(id, titulo, precio);
+        this.autor = autor;
+        this.categoria = categoria;
+        this.nuevo = nuevo;
+    }
+
+    public String getAutor() {
+        return autor;
+    }
+
+    public String getCategoria() {
+        return categoria;
+    }
+
+    public boolean esNuevo() {
+        return nuevo;
+    }
+
+    @Override
+    void actualizarDesde(Producto datos) {
+        super.actualizarDesde(datos);
+        Libro libro = (Libro) datos;
+        autor = libro.autor;
+        categoria = libro.categoria;
+        nuevo = libro.nuevo;
+    }
+}
@@ -0,0 +1,131 @@
+package extraordinaria2;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Limitador por cubeta de tokens sin cerrojos: el estado de cada clave (tokens en milésimas y instante de la
+// última recarga) va empaquetado en un AtomicLong que se actualiza con CAS. Las claves se reparten en franjas
+// independientes y, al superar el máximo, se descartan las cubetas llenas (inactivas), que equivalen a no
+// tener cubeta, así que la memoria queda acotada sin perder información
+public class LimitadorTasa {
+    private static final int FRANJAS = 64;
+    private static final int BITS_TOKENS = 22;
+    private static final long MASCARA_TOKENS = (1L << BITS_TOKENS) - 1;
+
+    private final long capacidadMilis;
+    private final double recargaPorMilisegundo;
+    private final int maxClavesPorFranja;
+    private final long origen = System.currentTimeMillis();
+    private final List<ConcurrentHashMap<Long, AtomicLong>> franjas = new ArrayList<>(FRANJAS);
+
+    private final LongAdder permitidas = new LongAdder();
+    private final LongAdder rechazadas = new LongAdder();
+    private final LongAdder desalojadas = new LongAdder();
+
+    public LimitadorTasa(int capacidad, double tokensPorSegundo, int maxClaves) {
+        if (capacidad < 1 || capacidad * 1000L > MASCARA_TOKENS) {
+            throw new IllegalArgumentException("Capacidad fuera de rango: " + capacidad);
+        }
+        this.capacidadMilis = capacidad * 1000L;
+        this.recargaPorMilisegundo = tokensPorSegundo / 1000;
+        this.maxClavesPorFranja = Math.max(1, maxClaves / FRANJAS);
+        for (int i = 0; i < FRANJAS; i++) {
+            franjas.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    private ConcurrentHashMap<Long, AtomicLong> franja(long clave) {
+        return franjas.get((int) (clave ^ (clave >>> 32)) & (FRANJAS - 1));
+    }
+
+    private static long empaquetar(long instante, long tokens) {
+        return (instante << BITS_TOKENS) | tokens;
+    }
+
+    // Tokens (en milésimas) tras recargar el tiempo transcurrido desde la última actualización
+    private long tokensRecargados(long estado, long ahora) {
+        long instante = estado >>> BITS_TOKENS;
+        long tokens = estado & MASCARA_TOKENS;
+        long recarga = (long) ((ahora - instante) * recargaPorMilisegundo * 1000);
+        return Math.min(capacidadMilis, tokens + recarga);
+    }
+
+    public boolean intentar(long clave) {
+        ConcurrentHashMap<Long, AtomicLong> franja = franja(clave);
+        long ahora = System.currentTimeMillis() - origen;
+        AtomicLong cubeta = franja.get(clave);
+        if (cubeta == null) {
+            if (franja.size() >= maxClavesPorFranja) {
+                desalojarInactivas(franja, ahora);
+            }
+            cubeta = franja.computeIfAbsent(clave, k -> new AtomicLong(empaquetar(ahora, capacidadMilis)));
+        }
+        while (true) {
+            long estado = cubeta.get();
+            long tokens = tokensRecargados(estado, ahora);
+            if (tokens < 1000) {
+                rechazadas.increment();
+                return false;
+            }
+            if (cubeta.compareAndSet(estado, empaquetar(ahora, tokens - 1000))) {
+                permitidas.increment();
+                return true;
+            }
+        }
+    }
+
+    // Devuelve un token consumido (la compra no llegó a hacerse por otro límite)
+    public void devolver(long clave) {
+        AtomicLong cubeta = franja(clave).get(clave);
+        if (cubeta == null) {
+            return;
+        }
+        while (true) {
+            long estado = cubeta.get();
+            long tokens = Math.min(capacidadMilis, (estado & MASCARA_TOKENS) + 1000);
+            if (cubeta.compareAndSet(estado, (estado & ~MASCARA_TOKENS) | tokens)) {
+                permitidas.decrement();
+                return;
+            }
+        }
+    }
+
+    private void desalojarInactivas(ConcurrentHashMap<Long, AtomicLong> franja, long ahora) {
+        Iterator<AtomicLong> cubetas = franja.values().iterator();
+        while (cubetas.hasNext()) {
+            if (tokensRecargados(cubetas.next().get(), ahora) >= capacidadMilis) {
+                cubetas.remove();
+                desalojadas.increment();
+            }
+        }
+        // Si todas siguen activas se sacrifica alguna: como mucho esa clave recibe una cubeta nueva llena
+        cubetas = franja.values().iterator();
+        while (franja.size() >= maxClavesPorFranja && cubetas.hasNext()) {
+            cubetas.next();
+            cubetas.remove();
+            desalojadas.increment();
+        }
+    }
+
+    public long getPermitidas() {
+        return permitidas.sum();
+    }
+
+    public long getRechazadas() {
+        return rechazadas.sum();
+    }
+
+    public long getDesalojadas() {
+        return desalojadas.sum();
+    }
+
+    public int getClaves() {
+        int total = 0;
+        for (ConcurrentHashMap<Long, AtomicLong> franja : franjas) {
+            total += franja.size();
+        }
+        return total;
+    }
+}
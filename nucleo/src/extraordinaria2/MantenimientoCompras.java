@@ -0,0 +1,63 @@
+package extraordinaria2;
+
+import java.io.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Tarea periódica que archiva las compras que salen de la ventana en memoria. Usa un único hilo, así que dos
+// pasadas nunca se solapan; si una falla se guarda el error y se reintenta en la siguiente. Una excepción que
+// saliera de la tarea cancelaría en silencio todas las pasadas siguientes, así que también se capturan las de
+// tiempo de ejecución
+class MantenimientoCompras {
+    private final LibreriaOnline libreria;
+    private final ArchivoCompras archivo;
+    private final int diasEnMemoria;
+    private final ScheduledExecutorService planificador;
+    private final AtomicLong archivadas = new AtomicLong();
+    private volatile Exception ultimoError;
+
+    public MantenimientoCompras(LibreriaOnline libreria, ArchivoCompras archivo, int diasEnMemoria) {
+        this.libreria = libreria;
+        this.archivo = archivo;
+        this.diasEnMemoria = diasEnMemoria;
+        this.planificador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "mantenimiento-compras");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    public void iniciar(long periodo, TimeUnit unidad) {
+        planificador.scheduleWithFixedDelay(this::ejecutar, periodo, periodo, unidad);
+    }
+
+    // También se puede llamar a mano, p. ej. antes de un cierre ordenado
+    public void ejecutar() {
+        try {
+            archivadas.addAndGet(libreria.compactarHistoriales(archivo, Usuario.diaActual() - diasEnMemoria));
+            ultimoError = null;
+        } catch (IOException | RuntimeException e) {
+            ultimoError = e;
+        }
+    }
+
+    public void detener() throws InterruptedException, IOException {
+        planificador.shutdown();
+        planificador.awaitTermination(1, TimeUnit.MINUTES);
+        archivo.close();
+    }
+
+    public long getArchivadas() {
+        return archivadas.get();
+    }
+
+    ArchivoCompras getArchivo() {
+        return archivo;
+    }
+
+    public Exception getUltimoError() {
+        return ultimoError;
+    }
+}
@@ -0,0 +1,119 @@
+package extraordinaria2;
+
+import java.util.*;
+
+// Mapa int -> int con direccionamiento abierto y sondeo lineal, sin objetos por entrada. Las claves son
+// ordinales (>= 0); el hueco vacío se marca con -1 y el borrado desplaza hacia atrás en lugar de dejar lápidas
+class MapaEnteros {
+    private static final int VACIO = -1;
+
+    private int[] claves;
+    private int[] valores;
+    private int tamaño;
+
+    public MapaEnteros() {
+        this(8);
+    }
+
+    public MapaEnteros(int capacidadInicial) {
+        int capacidad = Integer.highestOneBit(Math.max(4, capacidadInicial) - 1) << 1;
+        claves = new int[capacidad];
+        valores = new int[capacidad];
+        Arrays.fill(claves, VACIO);
+    }
+
+    private int posicion(int clave) {
+        int mascara = claves.length - 1;
+        int i = (clave * 0x9E3779B9 >>> 16) & mascara;
+        while (claves[i] != VACIO && claves[i] != clave) {
+            i = (i + 1) & mascara;
+        }
+        return i;
+    }
+
+    public int obtener(int clave) {
+        int i = posicion(clave);
+        return claves[i] == clave ? valores[i] : 0;
+    }
+
+    public boolean contiene(int clave) {
+        return claves[posicion(clave)] == clave;
+    }
+
+    // Suma delta al valor de la clave; si el resultado es 0 o menos la entrada se elimina
+    public int incrementar(int clave, int delta) {
+        int i = posicion(clave);
+        if (claves[i] != clave) {
+            if (delta <= 0) {
+                return 0;
+            }
+            claves[i] = clave;
+            valores[i] = delta;
+            if (++tamaño * 2 > claves.length) {
+                redimensionar();
+            }
+            return delta;
+        }
+        valores[i] += delta;
+        if (valores[i] <= 0) {
+            eliminarEn(i);
+            return 0;
+        }
+        return valores[i];
+    }
+
+    public void eliminar(int clave) {
+        int i = posicion(clave);
+        if (claves[i] == clave) {
+            eliminarEn(i);
+        }
+    }
+
+    private void eliminarEn(int i) {
+        int mascara = claves.length - 1;
+        claves[i] = VACIO;
+        tamaño--;
+        int j = (i + 1) & mascara;
+        while (claves[j] != VACIO) {
+            int clave = claves[j];
+            int valor = valores[j];
+            claves[j] = VACIO;
+            int destino = posicion(clave);
+            claves[destino] = clave;
+            valores[destino] = valor;
+            j = (j + 1) & mascara;
+        }
+    }
+
+    private void redimensionar() {
+        int[] clavesAnteriores = claves;
+        int[] valoresAnteriores = valores;
+        claves = new int[clavesAnteriores.length * 2];
+        valores = new int[valoresAnteriores.length * 2];
+        Arrays.fill(claves, VACIO);
+        for (int i = 0; i < clavesAnteriores.length; i++) {
+            if (clavesAnteriores[i] != VACIO) {
+                int destino = posicion(clavesAnteriores[i]);
+                claves[destino] = clavesAnteriores[i];
+                valores[destino] = valoresAnteriores[i];
+            }
+        }
+    }
+
+    public int tamaño() {
+        return tamaño;
+    }
+
+    // Recorrido por posiciones: capacidad() huecos, de los que solo cuentan los que tienen clave >= 0
+    public int capacidad() {
+        return claves.length;
+    }
+
+    public int claveEn(int i) {
+        return claves[i];
+    }
+
+    public int valorEn(int i) {
+        return valores[i];
+    }
+}
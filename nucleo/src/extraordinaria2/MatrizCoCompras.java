@@ -0,0 +1,250 @@
+package extraordinaria2;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+// Matriz dispersa de co-compras entre productos: fila por ordinal de producto con cuántos usuarios compraron
+// también cada otro producto. Las filas tienen un máximo de vecinos; al llenarse se sustituye el de menor
+// cuenta (como en Space-Saving), así que los vecinos más frecuentes son aproximados pero la memoria acotada.
+// Cubre las compras que siguen en memoria: cuando un producto sale del historial de un usuario al archivarse,
+// sus pares se restan igual que en una devolución
+class MatrizCoCompras {
+    private static final int MAX_VECINOS = 256;
+    private static final int MAX_RECOMENDACIONES = 32;
+
+    private MapaEnteros[] filas = new MapaEnteros[16];
+    // Mejores vecinos calculados por fila; se descartan cuando la fila cambia
+    private int[][] mejoresVecinos = new int[16][];
+    // Marca por ordinal de la última cesta en que se vio, para quitar repetidos en tiempo lineal
+    private int[] marcas = new int[16];
+    private int cesta;
+    // Cambios (producto, vecino, delta) llegados durante una reconstrucción, para repetirlos sobre el resultado;
+    // vecino -1 es la baja del producto. null si no hay reconstrucción en curso
+    private int[] diario;
+    private int tamañoDiario;
+
+    private void asegurarCapacidad(int ordinal) {
+        if (ordinal >= filas.length) {
+            int capacidad = Math.max(filas.length * 2, ordinal + 1);
+            filas = Arrays.copyOf(filas, capacidad);
+            mejoresVecinos = Arrays.copyOf(mejoresVecinos, capacidad);
+        }
+    }
+
+    private void sumar(int producto, int vecino, int delta) {
+        anotar(producto, vecino, delta);
+        asegurarCapacidad(producto);
+        MapaEnteros fila = filas[producto];
+        if (fila == null) {
+            if (delta <= 0) {
+                return;
+            }
+            fila = filas[producto] = new MapaEnteros();
+        }
+        sumarAcotado(fila, vecino, delta);
+        mejoresVecinos[producto] = null;
+    }
+
+    // Una fila guarda como mucho MAX_VECINOS vecinos: uno nuevo sustituye al de menor cuenta y la hereda, así
+    // un vecino frecuente no se pierde por llegar tarde (como en Space-Saving)
+    private static void sumarAcotado(MapaEnteros fila, int vecino, int delta) {
+        if (delta > 0 && fila.tamaño() >= MAX_VECINOS && !fila.contiene(vecino)) {
+            int minimo = Integer.MAX_VALUE;
+            int victima = -1;
+            for (int i = 0; i < fila.capacidad(); i++) {
+                if (fila.claveEn(i) >= 0 && fila.valorEn(i) < minimo) {
+                    minimo = fila.valorEn(i);
+                    victima = fila.claveEn(i);
+                }
+            }
+            fila.eliminar(victima);
+            delta += minimo;
+        }
+        fila.incrementar(vecino, delta);
+    }
+
+    // El usuario compra por primera vez "producto"; comprados son los ordinales de su historial anterior
+    public synchronized void registrarCompra(int[] comprados, int numero, int producto) {
+        actualizarPares(comprados, numero, producto, 1);
+    }
+
+    // El usuario ya no tiene ninguna unidad de "producto" en su historial
+    public synchronized void registrarDevolucion(int[] comprados, int numero, int producto) {
+        actualizarPares(comprados, numero, producto, -1);
+    }
+
+    private void actualizarPares(int[] comprados, int numero, int producto, int delta) {
+        if (++cesta == 0) {
+            Arrays.fill(marcas, 0);
+            cesta = 1;
+        }
+        for (int i = 0; i < numero; i++) {
+            int otro = comprados[i];
+            if (otro >= marcas.length) {
+                marcas = Arrays.copyOf(marcas, Math.max(marcas.length * 2, otro + 1));
+            }
+            if (otro != producto && marcas[otro] != cesta) {
+                marcas[otro] = cesta;
+                sumar(producto, otro, delta);
+                sumar(otro, producto, delta);
+            }
+        }
+    }
+
+    // Ordinales distintos de un historial, ordenados
+    private static int[] distintos(int[] comprados, int numero) {
+        int[] ordenados = Arrays.copyOf(comprados, numero);
+        Arrays.sort(ordenados);
+        int tamaño = 0;
+        for (int i = 0; i < numero; i++) {
+            if (tamaño == 0 || ordenados[tamaño - 1] != ordenados[i]) {
+                ordenados[tamaño++] = ordenados[i];
+            }
+        }
+        return Arrays.copyOf(ordenados, tamaño);
+    }
+
+    private void anotar(int producto, int vecino, int delta) {
+        if (diario == null) {
+            return;
+        }
+        if (tamañoDiario + 3 > diario.length) {
+            diario = Arrays.copyOf(diario, diario.length * 2);
+        }
+        diario[tamañoDiario++] = producto;
+        diario[tamañoDiario++] = vecino;
+        diario[tamañoDiario++] = delta;
+    }
+
+    // Quita un producto de la matriz antes de que su ordinal se recicle
+    public synchronized void eliminarProducto(int producto) {
+        anotar(producto, -1, 0);
+        quitarFila(filas, mejoresVecinos, producto);
+    }
+
+    private static void quitarFila(MapaEnteros[] filas, int[][] mejoresVecinos, int producto) {
+        if (producto >= filas.length || filas[producto] == null) {
+            return;
+        }
+        MapaEnteros fila = filas[producto];
+        for (int i = 0; i < fila.capacidad(); i++) {
+            int vecino = fila.claveEn(i);
+            if (vecino >= 0 && vecino < filas.length && filas[vecino] != null) {
+                filas[vecino].eliminar(producto);
+                mejoresVecinos[vecino] = null;
+            }
+        }
+        filas[producto] = null;
+        mejoresVecinos[producto] = null;
+    }
+
+    // Ordinales de los productos comprados más a menudo junto con el dado, de más a menos
+    public synchronized int[] vecinos(int producto, int cantidad) {
+        if (producto >= filas.length || filas[producto] == null) {
+            return new int[0];
+        }
+        int[] mejores = mejoresVecinos[producto];
+        if (mejores == null || (mejores.length < cantidad && mejores.length < filas[producto].tamaño())) {
+            mejores = calcularMejores(filas[producto], Math.max(cantidad, MAX_RECOMENDACIONES));
+            mejoresVecinos[producto] = mejores;
+        }
+        return mejores.length <= cantidad ? mejores : Arrays.copyOf(mejores, cantidad);
+    }
+
+    // Selección de los n mayores por inserción en arrays ordenados de tamaño n
+    private static int[] calcularMejores(MapaEnteros fila, int n) {
+        int[] claves = new int[Math.min(n, fila.tamaño())];
+        int[] cuentas = new int[claves.length];
+        int encontrados = 0;
+        for (int i = 0; i < fila.capacidad() && claves.length > 0; i++) {
+            int clave = fila.claveEn(i);
+            if (clave < 0) {
+                continue;
+            }
+            int cuenta = fila.valorEn(i);
+            if (encontrados == claves.length && cuenta <= cuentas[encontrados - 1]) {
+                continue;
+            }
+            int j = encontrados < claves.length ? encontrados++ : encontrados - 1;
+            while (j > 0 && cuentas[j - 1] < cuenta) {
+                claves[j] = claves[j - 1];
+                cuentas[j] = cuentas[j - 1];
+                j--;
+            }
+            claves[j] = clave;
+            cuentas[j] = cuenta;
+        }
+        return claves;
+    }
+
+    // Empieza a anotar los cambios; se llama a la vez que se copian los historiales, con el mismo cerrojo que
+    // las compras, para que la copia y el diario encajen
+    public synchronized void iniciarReconstruccion() {
+        diario = new int[48];
+        tamañoDiario = 0;
+    }
+
+    // Reconstrucción completa en paralelo a partir de los historiales copiados, sin el cerrojo de la matriz:
+    // las compras siguen anotando en la matriz actual y en el diario, que se repite sobre el resultado antes de
+    // cambiarlo. Cada tarea se queda con las filas cuyo ordinal cae en su franja, así ninguna fila la escriben
+    // dos hilos y no hace falta sincronizar durante el cálculo
+    public void reconstruir(List<int[]> historiales) {
+        List<int[]> cestas = historiales.parallelStream()
+                .map(historial -> distintos(historial, historial.length))
+                .toList();
+        int maximo = -1;
+        for (int[] historial : cestas) {
+            if (historial.length > 0) {
+                maximo = Math.max(maximo, historial[historial.length - 1]);
+            }
+        }
+        MapaEnteros[] nuevas = new MapaEnteros[Math.max(16, maximo + 1)];
+        int franjas = Runtime.getRuntime().availableProcessors();
+        IntStream.range(0, franjas).parallel().forEach(franja -> {
+            for (int[] historial : cestas) {
+                for (int producto : historial) {
+                    if (producto % franjas != franja) {
+                        continue;
+                    }
+                    for (int otro : historial) {
+                        if (otro != producto) {
+                            if (nuevas[producto] == null) {
+                                nuevas[producto] = new MapaEnteros();
+                            }
+                            sumarAcotado(nuevas[producto], otro, 1);
+                        }
+                    }
+                }
+            }
+        });
+        terminarReconstruccion(nuevas);
+    }
+
+    private synchronized void terminarReconstruccion(MapaEnteros[] nuevas) {
+        int[][] mejores = new int[nuevas.length][];
+        for (int i = 0; i < tamañoDiario; i += 3) {
+            int producto = diario[i];
+            int vecino = diario[i + 1];
+            if (vecino < 0) {
+                quitarFila(nuevas, mejores, producto);
+                continue;
+            }
+            if (producto >= nuevas.length) {
+                int capacidad = Math.max(nuevas.length * 2, producto + 1);
+                nuevas = Arrays.copyOf(nuevas, capacidad);
+                mejores = Arrays.copyOf(mejores, capacidad);
+            }
+            if (nuevas[producto] == null) {
+                if (diario[i + 2] <= 0) {
+                    continue;
+                }
+                nuevas[producto] = new MapaEnteros();
+            }
+            sumarAcotado(nuevas[producto], vecino, diario[i + 2]);
+        }
+        diario = null;
+        tamañoDiario = 0;
+        filas = nuevas;
+        mejoresVecinos = mejores;
+    }
+}
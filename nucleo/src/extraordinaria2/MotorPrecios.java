@@ -0,0 +1,149 @@
+package extraordinaria2;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+
+// Compila las reglas de precio en una tabla con el precio final de cada producto por ordinal, de modo que leer
+// un precio es un acceso a array y las reglas nunca se evalúan en una compra. La tabla se sustituye entera
+// (referencia volátil) solo cuando cambian las reglas o empieza/acaba una promoción; las altas, bajas y
+// modificaciones de productos recalculan únicamente su posición
+public class MotorPrecios {
+    // Las posiciones se escriben con acceso opaco: el lector nunca ve un long a medias
+    private static final VarHandle PRECIOS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final class TablaPrecios {
+        final long[] precios;
+        final List<ReglaPrecio> vigentes;
+        final long validaHasta;
+
+        TablaPrecios(long[] precios, List<ReglaPrecio> vigentes, long validaHasta) {
+            this.precios = precios;
+            this.vigentes = vigentes;
+            this.validaHasta = validaHasta;
+        }
+    }
+
+    private final IndiceOrdinales<Producto> productos;
+    private volatile List<ReglaPrecio> reglas = Collections.emptyList();
+    private volatile TablaPrecios tabla;
+    private volatile int unidadesCarrito = Integer.MAX_VALUE;
+    private volatile double descuentoCarrito;
+    private int compilaciones;
+
+    MotorPrecios(IndiceOrdinales<Producto> productos) {
+        this.productos = productos;
+    }
+
+    public synchronized void setReglas(List<ReglaPrecio> reglas) {
+        this.reglas = Collections.unmodifiableList(new ArrayList<>(reglas));
+        this.tabla = null;
+    }
+
+    public synchronized void añadirRegla(ReglaPrecio regla) {
+        List<ReglaPrecio> nuevas = new ArrayList<>(reglas);
+        nuevas.add(regla);
+        setReglas(nuevas);
+    }
+
+    // Descuento por volumen: a partir de cierto número de unidades en el carrito
+    public void setDescuentoCarrito(int unidades, double porcentaje) {
+        this.descuentoCarrito = porcentaje;
+        this.unidadesCarrito = unidades;
+    }
+
+    public long aplicarDescuentoCarrito(long total, int unidades) {
+        return unidades >= unidadesCarrito ? Dinero.descontar(total, descuentoCarrito) : total;
+    }
+
+    // Se marca la tabla como obsoleta; se recompila una sola vez en la siguiente lectura
+    public void invalidar() {
+        tabla = null;
+    }
+
+    // Recalcula el precio de un solo ordinal tras el alta, baja o modificación de su producto. La tabla crece
+    // duplicando, así que el coste amortizado por alta es constante
+    public synchronized void actualizar(int ordinal) {
+        TablaPrecios actual = tabla;
+        if (actual == null) {
+            return;
+        }
+        if (ordinal >= actual.precios.length) {
+            int anterior = actual.precios.length;
+            long[] precios = Arrays.copyOf(actual.precios,
+                    Math.max(Math.max(anterior * 2, ordinal + 1), productos.limite()));
+            actual = new TablaPrecios(precios, actual.vigentes, actual.validaHasta);
+            for (int i = anterior; i < precios.length; i++) {
+                precios[i] = calcular(productos.obtener(i), actual.vigentes);
+            }
+            tabla = actual;
+            return;
+        }
+        PRECIOS.setOpaque(actual.precios, ordinal, calcular(productos.obtener(ordinal), actual.vigentes));
+    }
+
+    // Veces que se ha recompilado la tabla completa
+    synchronized int getCompilaciones() {
+        return compilaciones;
+    }
+
+    private static long calcular(Producto producto, List<ReglaPrecio> vigentes) {
+        if (producto == null) {
+            return 0;
+        }
+        long precio = producto.getPrecioCentimos();
+        for (ReglaPrecio regla : vigentes) {
+            precio = regla.aplicar(producto, precio);
+        }
+        return precio;
+    }
+
+    // Precio en céntimos de un producto sin ordinal en la tabla: se aplican las reglas vigentes en el momento
+    public long precio(Producto producto) {
+        if (producto.getOrdinal() >= 0) {
+            return precio(producto.getOrdinal());
+        }
+        long ahora = System.currentTimeMillis();
+        long precio = producto.getPrecioCentimos();
+        for (ReglaPrecio regla : reglas) {
+            if (regla.inicio() <= ahora && regla.fin() > ahora) {
+                precio = regla.aplicar(producto, precio);
+            }
+        }
+        return precio;
+    }
+
+    // Precio en céntimos
+    public long precio(int ordinal) {
+        TablaPrecios actual = tabla;
+        if (actual == null || ordinal >= actual.precios.length || System.currentTimeMillis() >= actual.validaHasta) {
+            actual = compilar();
+        }
+        return (long) PRECIOS.getOpaque(actual.precios, ordinal);
+    }
+
+    private synchronized TablaPrecios compilar() {
+        long ahora = System.currentTimeMillis();
+        TablaPrecios actual = tabla;
+        if (actual != null && actual.precios.length >= productos.limite() && ahora < actual.validaHasta) {
+            return actual;
+        }
+        List<ReglaPrecio> vigentes = new ArrayList<>();
+        long validaHasta = Long.MAX_VALUE;
+        for (ReglaPrecio regla : reglas) {
+            if (regla.inicio() > ahora) {
+                validaHasta = Math.min(validaHasta, regla.inicio());
+            } else if (regla.fin() > ahora) {
+                vigentes.add(regla);
+                validaHasta = Math.min(validaHasta, regla.fin());
+            }
+        }
+        long[] precios = new long[productos.limite()];
+        for (int ordinal = 0; ordinal < precios.length; ordinal++) {
+            precios[ordinal] = calcular(productos.obtener(ordinal), vigentes);
+        }
+        tabla = new TablaPrecios(precios, vigentes, validaHasta);
+        compilaciones++;
+        return tabla;
+    }
+}
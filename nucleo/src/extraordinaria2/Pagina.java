@@ -0,0 +1,26 @@
+package extraordinaria2;
+
+import java.util.*;
+
+// Página de resultados de un listado; el cursor siguiente es null cuando no quedan más elementos
+public class Pagina<T> {
+    private final List<T> elementos;
+    private final String siguienteCursor;
+
+    public Pagina(List<T> elementos, String siguienteCursor) {
+        this.elementos = elementos;
+        this.siguienteCursor = siguienteCursor;
+    }
+
+    public List<T> getElementos() {
+        return elementos;
+    }
+
+    public String getSiguienteCursor() {
+        return siguienteCursor;
+    }
+
+    public boolean hayMas() {
+        return siguienteCursor != null;
+    }
+}
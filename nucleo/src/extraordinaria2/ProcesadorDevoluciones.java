@@ -0,0 +1,139 @@
+package extraordinaria2;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cola de devoluciones atendida por un hilo propio. El hilo toma lotes de hasta tamañoLote solicitudes,
+// aplica cada una en la librería y envía al destino los reembolsos del lote de una vez, de modo que una
+// avalancha de devoluciones no compite con las compras por escrituras a disco
+class ProcesadorDevoluciones {
+    private static final class Solicitud {
+        final Usuario usuario;
+        final Producto producto;
+        final CompletableFuture<Long> resultado = new CompletableFuture<>();
+
+        Solicitud(Usuario usuario, Producto producto) {
+            this.usuario = usuario;
+            this.producto = producto;
+        }
+    }
+
+    private final LibreriaOnline libreria;
+    private final DestinoReembolsos destino;
+    private final int tamañoLote;
+    private final BlockingQueue<Solicitud> cola = new LinkedBlockingQueue<>();
+    private final Thread hilo;
+    // Encolar y detener van con el mismo cerrojo: ninguna solicitud entra en la cola después de la parada
+    private final Object cerrojo = new Object();
+    private volatile boolean activo = true;
+    private final AtomicLong procesadas = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+
+    public ProcesadorDevoluciones(LibreriaOnline libreria, DestinoReembolsos destino, int tamañoLote) {
+        this.libreria = libreria;
+        this.destino = destino;
+        this.tamañoLote = Math.max(1, tamañoLote);
+        this.hilo = new Thread(this::procesar, "procesador-devoluciones");
+        this.hilo.setDaemon(true);
+    }
+
+    public void iniciar() {
+        hilo.start();
+    }
+
+    public CompletableFuture<Long> solicitar(Usuario usuario, Producto producto) {
+        Solicitud solicitud = new Solicitud(usuario, producto);
+        synchronized (cerrojo) {
+            if (activo) {
+                cola.add(solicitud);
+                return solicitud.resultado;
+            }
+        }
+        solicitud.resultado.completeExceptionally(new IllegalStateException("El procesador está detenido."));
+        return solicitud.resultado;
+    }
+
+    private void procesar() {
+        List<Solicitud> lote = new ArrayList<>(tamañoLote);
+        while (activo || !cola.isEmpty()) {
+            try {
+                Solicitud primera = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                lote.add(primera);
+                cola.drainTo(lote, tamañoLote - 1);
+                procesarLote(lote);
+                lote.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void procesarLote(List<Solicitud> lote) {
+        List<RegistroReembolso> registros = new ArrayList<>(lote.size());
+        List<Solicitud> aplicadas = new ArrayList<>(lote.size());
+        long ahora = System.currentTimeMillis();
+        for (Solicitud solicitud : lote) {
+            try {
+                long importe = libreria.aplicarDevolucion(solicitud.usuario, solicitud.producto);
+                registros.add(new RegistroReembolso(solicitud.usuario.getDni(), solicitud.producto.getId(), importe,
+                        ahora));
+                aplicadas.add(solicitud);
+            } catch (Exception e) {
+                solicitud.resultado.completeExceptionally(e);
+            }
+        }
+        if (registros.isEmpty()) {
+            return;
+        }
+        try {
+            destino.escribir(registros);
+            for (int i = 0; i < aplicadas.size(); i++) {
+                aplicadas.get(i).resultado.complete(registros.get(i).getImporteCentimos());
+            }
+        } catch (IOException e) {
+            // La devolución ya está aplicada; quien la pidió debe saber que el reembolso no quedó registrado
+            for (Solicitud solicitud : aplicadas) {
+                solicitud.resultado.completeExceptionally(e);
+            }
+        }
+        procesadas.addAndGet(aplicadas.size());
+        lotes.incrementAndGet();
+    }
+
+    // Deja de aceptar solicitudes, termina las pendientes y espera al hilo. Si el hilo acabó antes de vaciar
+    // la cola (interrumpido o sin arrancar), las que quedan se rechazan para que nadie espere para siempre
+    public void detener() throws InterruptedException {
+        synchronized (cerrojo) {
+            activo = false;
+        }
+        if (hilo.isAlive()) {
+            hilo.join();
+        }
+        List<Solicitud> restantes = new ArrayList<>();
+        cola.drainTo(restantes);
+        for (Solicitud solicitud : restantes) {
+            solicitud.resultado.completeExceptionally(new IllegalStateException("El procesador está detenido."));
+        }
+    }
+
+    public long getProcesadas() {
+        return procesadas.get();
+    }
+
+    public long getLotes() {
+        return lotes.get();
+    }
+
+    public int getPendientes() {
+        return cola.size();
+    }
+}
@@ -0,0 +1,82 @@
+package extraordinaria2;
+
+// Clase abstracta para representar un producto
+public abstract class Producto {
+    private String id;
+    private String titulo;
+    // Importes en céntimos para que sumas y descuentos sean exactos
+    private long precioCentimos;
+    // Contadores simples: solo se tocan dentro de comprarProducto, con el cerrojo de la
+    // librería tomado, así que repartirlos en franjas no quitaría contención a un producto
+    // muy vendido; el tiempo retenido lo marcan el historial, el índice y la analítica
+    private int vendidos;
+    // Importe cobrado por las ventas, con el precio vigente en cada compra
+    private long ingresosCentimos;
+    private int ordinal = -1;
+
+    public Producto(String id, String titulo, double precio) {
+        this.id = id;
+        this.titulo = titulo;
+        this.precioCentimos = Dinero.aCentimos(precio);
+        this.vendidos = 0;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTitulo() {
+        return titulo;
+    }
+
+    public double getPrecio() {
+        return Dinero.aEuros(precioCentimos);
+    }
+
+    public long getPrecioCentimos() {
+        return precioCentimos;
+    }
+
+    public int getVendidos() {
+        return vendidos;
+    }
+
+    public void incrementarVendidos() {
+        vendidos++;
+    }
+
+    public void decrementarVendidos() {
+        if (vendidos > 0) {
+            vendidos--;
+        }
+    }
+
+    public long getIngresosCentimos() {
+        return ingresosCentimos;
+    }
+
+    void registrarIngreso(long centimos) {
+        ingresosCentimos = Math.addExact(ingresosCentimos, centimos);
+    }
+
+    // Otro objeto sustituye a este con el mismo id (ver LibreriaOnline.ordinalProducto)
+    void heredarVentas(Producto anterior) {
+        vendidos = anterior.vendidos;
+        ingresosCentimos = anterior.ingresosCentimos;
+    }
+
+    // Copia los datos del registro modificado; las ventas no se tocan
+    void actualizarDesde(Producto datos) {
+        titulo = datos.titulo;
+        precioCentimos = datos.precioCentimos;
+    }
+
+    // Ordinal denso asignado por la librería al dar de alta (-1 si no está registrado)
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
+}
@@ -0,0 +1,37 @@
+package extraordinaria2;
+
+// Registro de un reembolso ya aplicado, tal y como se envía al destino de reembolsos
+public class RegistroReembolso {
+    private final String dni;
+    private final String idProducto;
+    private final long importeCentimos;
+    private final long instante;
+
+    public RegistroReembolso(String dni, String idProducto, long importeCentimos, long instante) {
+        this.dni = dni;
+        this.idProducto = idProducto;
+        this.importeCentimos = importeCentimos;
+        this.instante = instante;
+    }
+
+    public String getDni() {
+        return dni;
+    }
+
+    public String getIdProducto() {
+        return idProducto;
+    }
+
+    public long getImporteCentimos() {
+        return importeCentimos;
+    }
+
+    public long getInstante() {
+        return instante;
+    }
+
+    // Mismo formato de campos separados por '|' que los ficheros de inventario y usuarios
+    public String aLinea() {
+        return "REEMBOLSO|" + dni + "|" + idProducto + "|" + importeCentimos + "|" + instante;
+    }
+}
@@ -0,0 +1,52 @@
+package extraordinaria2;
+
+// Regla de precio: recibe el precio calculado hasta el momento y devuelve el nuevo. Las promociones solo se
+// aplican entre su inicio y su fin (en milisegundos)
+public interface ReglaPrecio {
+    long aplicar(Producto producto, long centimos);
+
+    default long inicio() {
+        return Long.MIN_VALUE;
+    }
+
+    default long fin() {
+        return Long.MAX_VALUE;
+    }
+
+    static ReglaPrecio descuentoLibrosUsados(double porcentaje) {
+        return (producto, precio) -> producto instanceof Libro && !((Libro) producto).esNuevo()
+                ? Dinero.descontar(precio, porcentaje) : precio;
+    }
+
+    // La categoría de un juego de mesa es su temática
+    static ReglaPrecio descuentoCategoria(String categoria, double porcentaje) {
+        return (producto, precio) -> {
+            String categoriaProducto = producto instanceof Libro ? ((Libro) producto).getCategoria()
+                    : ((JuegoMesa) producto).getTematica();
+            return categoria.equals(categoriaProducto) ? Dinero.descontar(precio, porcentaje) : precio;
+        };
+    }
+
+    static ReglaPrecio descuentoProducto(String id, double porcentaje) {
+        return (producto, precio) -> producto.getId().equals(id) ? Dinero.descontar(precio, porcentaje) : precio;
+    }
+
+    static ReglaPrecio promocion(ReglaPrecio regla, long inicio, long fin) {
+        return new ReglaPrecio() {
+            @Override
+            public long aplicar(Producto producto, long precio) {
+                return regla.aplicar(producto, precio);
+            }
+
+            @Override
+            public long inicio() {
+                return inicio;
+            }
+
+            @Override
+            public long fin() {
+                return fin;
+            }
+        };
+    }
+}
@@ -0,0 +1,96 @@
+package extraordinaria2;
+
+import java.util.*;
+
+// Serie de ventas por día sobre dos árboles de Fenwick (unidades y céntimos) indexados por día desde el
+// origen. Admite registrar en cualquier día, también anteriores al origen (se reconstruye desplazada), y
+// crece duplicando la capacidad, que es siempre potencia de dos
+final class SerieDiaria {
+    static final SerieDiaria VACIA = new SerieDiaria();
+
+    private int origen;
+    private long[] unidades = new long[1];
+    private long[] centimos = new long[1];
+    private boolean iniciada;
+
+    private int capacidad() {
+        return unidades.length - 1;
+    }
+
+    void registrar(int dia, long cantidad, long importe) {
+        if (!iniciada) {
+            origen = dia;
+            iniciada = true;
+        } else if (dia < origen) {
+            desplazar(dia);
+        }
+        int posicion = dia - origen + 1;
+        while (posicion > capacidad()) {
+            crecer();
+        }
+        for (int i = posicion; i <= capacidad(); i += i & -i) {
+            unidades[i] += cantidad;
+            centimos[i] = Math.addExact(centimos[i], importe);
+        }
+    }
+
+    // Al duplicar una capacidad potencia de dos, el único nodo nuevo que cubre datos es el último, que abarca
+    // todo el rango anterior; el resto de nodos nuevos cubren solo días todavía vacíos
+    private void crecer() {
+        int anterior = capacidad();
+        int nueva = anterior == 0 ? 1 : anterior * 2;
+        unidades = Arrays.copyOf(unidades, nueva + 1);
+        centimos = Arrays.copyOf(centimos, nueva + 1);
+        if (anterior > 0) {
+            unidades[nueva] = unidades[anterior];
+            centimos[nueva] = centimos[anterior];
+        }
+    }
+
+    // Rehace los árboles con el origen en el día dado, en tiempo lineal a partir de los valores por día
+    private void desplazar(int nuevoOrigen) {
+        int desplazamiento = origen - nuevoOrigen;
+        int ocupados = capacidad();
+        int capacidad = Integer.highestOneBit(Math.max(1, ocupados + desplazamiento - 1)) << 1;
+        long[] nuevasUnidades = new long[capacidad + 1];
+        long[] nuevosCentimos = new long[capacidad + 1];
+        for (int i = 1; i <= ocupados; i++) {
+            nuevasUnidades[i + desplazamiento] = prefijo(unidades, i) - prefijo(unidades, i - 1);
+            nuevosCentimos[i + desplazamiento] = prefijo(centimos, i) - prefijo(centimos, i - 1);
+        }
+        for (int i = 1; i <= capacidad; i++) {
+            int padre = i + (i & -i);
+            if (padre <= capacidad) {
+                nuevasUnidades[padre] += nuevasUnidades[i];
+                nuevosCentimos[padre] += nuevosCentimos[i];
+            }
+        }
+        unidades = nuevasUnidades;
+        centimos = nuevosCentimos;
+        origen = nuevoOrigen;
+    }
+
+    private static long prefijo(long[] arbol, int posicion) {
+        long suma = 0;
+        for (int i = posicion; i > 0; i -= i & -i) {
+            suma += arbol[i];
+        }
+        return suma;
+    }
+
+    // Suma hasta el día dado, incluido, recortando a los días cubiertos
+    private long hasta(long[] arbol, int dia) {
+        if (!iniciada || dia < origen) {
+            return 0;
+        }
+        return prefijo(arbol, (int) Math.min((long) dia - origen + 1, capacidad()));
+    }
+
+    long unidades(int desde, int hasta) {
+        return desde > hasta ? 0 : hasta(unidades, hasta) - hasta(unidades, desde - 1);
+    }
+
+    long centimos(int desde, int hasta) {
+        return desde > hasta ? 0 : hasta(centimos, hasta) - hasta(centimos, desde - 1);
+    }
+}
@@ -0,0 +1,62 @@
+package extraordinaria2;
+
+import java.util.*;
+
+// Serie de ventas de un solo producto: sumas acumuladas solo en los días con ventas, que son pocos comparados
+// con el calendario. Las compras llegan en orden de fecha, así que registrar es añadir al final o sumar al
+// último día; una venta con fecha anterior se inserta corrigiendo los acumulados posteriores
+final class SerieDispersa {
+    static final SerieDispersa VACIA = new SerieDispersa();
+
+    private int[] dias = new int[4];
+    private long[] unidades = new long[4];
+    private long[] centimos = new long[4];
+    private int tamaño;
+
+    void registrar(int dia, long cantidad, long importe) {
+        int posicion = tamaño == 0 || dia > dias[tamaño - 1] ? tamaño : Arrays.binarySearch(dias, 0, tamaño, dia);
+        if (posicion < 0 || posicion == tamaño) {
+            posicion = posicion < 0 ? -posicion - 1 : posicion;
+            if (tamaño == dias.length) {
+                dias = Arrays.copyOf(dias, tamaño * 2);
+                unidades = Arrays.copyOf(unidades, tamaño * 2);
+                centimos = Arrays.copyOf(centimos, tamaño * 2);
+            }
+            System.arraycopy(dias, posicion, dias, posicion + 1, tamaño - posicion);
+            System.arraycopy(unidades, posicion, unidades, posicion + 1, tamaño - posicion);
+            System.arraycopy(centimos, posicion, centimos, posicion + 1, tamaño - posicion);
+            dias[posicion] = dia;
+            unidades[posicion] = posicion == 0 ? 0 : unidades[posicion - 1];
+            centimos[posicion] = posicion == 0 ? 0 : centimos[posicion - 1];
+            tamaño++;
+        }
+        for (int i = posicion; i < tamaño; i++) {
+            unidades[i] += cantidad;
+            centimos[i] = Math.addExact(centimos[i], importe);
+        }
+    }
+
+    // Índice del último día con ventas no posterior al dado (-1 si no hay)
+    private int ultimoHasta(int dia) {
+        int posicion = Arrays.binarySearch(dias, 0, tamaño, dia);
+        return posicion >= 0 ? posicion : -posicion - 2;
+    }
+
+    long unidades(int desde, int hasta) {
+        if (desde > hasta) {
+            return 0;
+        }
+        int fin = ultimoHasta(hasta);
+        int inicio = ultimoHasta(desde - 1);
+        return (fin < 0 ? 0 : unidades[fin]) - (inicio < 0 ? 0 : unidades[inicio]);
+    }
+
+    long centimos(int desde, int hasta) {
+        if (desde > hasta) {
+            return 0;
+        }
+        int fin = ultimoHasta(hasta);
+        int inicio = ultimoHasta(desde - 1);
+        return (fin < 0 ? 0 : centimos[fin]) - (inicio < 0 ? 0 : centimos[inicio]);
+    }
+}
@@ -0,0 +1,51 @@
+package extraordinaria2;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Tabla de internado acotada para textos con pocos valores distintos. Es una caché de correspondencia
+// directa: cada texto tiene una única casilla según su hash y, si otro texto la ocupa, se reemplaza. No usa
+// cerrojos (las referencias a String se publican de forma segura) y nunca pasa de su tamaño, a cambio de
+// crear alguna cadena de más cuando dos valores frecuentes chocan
+final class TablaInternado {
+    private final String[] casillas;
+    private final int mascara;
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+
+    TablaInternado(int capacidad) {
+        int tamaño = Integer.highestOneBit(Math.max(2, capacidad - 1)) << 1;
+        this.casillas = new String[tamaño];
+        this.mascara = tamaño - 1;
+    }
+
+    // Devuelve la cadena compartida igual a texto[inicio, fin), creándola solo si no está
+    String internar(String texto, int inicio, int fin) {
+        int hash = 0;
+        for (int i = inicio; i < fin; i++) {
+            hash = 31 * hash + texto.charAt(i);
+        }
+        int casilla = (hash ^ (hash >>> 16)) & mascara;
+        String actual = casillas[casilla];
+        int longitud = fin - inicio;
+        if (actual != null && actual.length() == longitud && actual.regionMatches(0, texto, inicio, longitud)) {
+            aciertos.increment();
+            return actual;
+        }
+        fallos.increment();
+        String nuevo = texto.substring(inicio, fin);
+        casillas[casilla] = nuevo;
+        return nuevo;
+    }
+
+    String internar(String texto) {
+        return internar(texto, 0, texto.length());
+    }
+
+    public long getAciertos() {
+        return aciertos.sum();
+    }
+
+    public long getFallos() {
+        return fallos.sum();
+    }
+}
@@ -0,0 +1,6 @@
+package extraordinaria2;
+
+public enum TipoCambio {
+    ALTA_PRODUCTO, BAJA_PRODUCTO, ALTA_USUARIO, BAJA_USUARIO, COMPRA, DEVOLUCION, MODIFICACION_PRODUCTO,
+    MODIFICACION_USUARIO
+}
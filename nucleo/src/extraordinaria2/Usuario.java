@@ -0,0 +1,271 @@
+package extraordinaria2;
+
+import java.util.*;
+import java.time.LocalDate;
+
+// Clase que representa un usuario
+public class Usuario {
+    private String nombre;
+    private String apellido1;
+    private String apellido2;
+    private String dni;
+    private int dia;
+    private int mes;
+    private int año;
+    private int edad;
+    // Solo hasta el alta: la librería lo pasa a su bóveda y el usuario se queda con el token
+    private String numTarjeta;
+    private long tokenTarjeta;
+    // Compras guardadas como ordinales de producto en un buffer que crece; se resuelven con el índice de la librería
+    private int[] comprados;
+    // Día (LocalDate.toEpochDay) de cada compra en memoria, en paralelo a comprados y en orden de compra
+    private int[] diasCompra;
+    // Céntimos cobrados en cada compra en memoria, en paralelo a comprados: la devolución reembolsa lo pagado
+    private long[] importesCompra;
+    private int numeroCompras;
+    // Compras ya archivadas en disco, contadas por mes (clave año * 100 + mes)
+    private final Map<Integer, Integer> resumenArchivado = new HashMap<>();
+    private IndiceOrdinales<Producto> indiceProductos;
+    private GrafoFamiliar grafoFamiliar;
+    private int ordinal = -1;
+
+    public Usuario(String nombre, String apellido1, String apellido2, String dni, int dia, int mes, int año, int edad,
+            String numTarjeta) {
+        this.nombre = nombre;
+        this.apellido1 = apellido1;
+        this.apellido2 = apellido2;
+        this.dni = dni;
+        this.dia = dia;
+        this.mes = mes;
+        this.año = año;
+        this.edad = edad;
+        this.numTarjeta = numTarjeta;
+        this.comprados = new int[4];
+        this.diasCompra = new int[4];
+        this.importesCompra = new long[4];
+    }
+
+    public String getNombreCompleto() {
+        return nombre + " " + apellido1 + " " + apellido2;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public String getApellido1() {
+        return apellido1;
+    }
+
+    public String getApellido2() {
+        return apellido2;
+    }
+
+    public int getDia() {
+        return dia;
+    }
+
+    public int getMes() {
+        return mes;
+    }
+
+    public int getAño() {
+        return año;
+    }
+
+    public String getDni() {
+        return dni;
+    }
+
+    // Copia los datos personales del registro modificado; el DNI es la clave y no cambia
+    void actualizarDesde(Usuario datos) {
+        nombre = datos.nombre;
+        apellido1 = datos.apellido1;
+        apellido2 = datos.apellido2;
+        dia = datos.dia;
+        mes = datos.mes;
+        año = datos.año;
+        edad = datos.edad;
+    }
+
+    // Entrega el número de tarjeta una sola vez y lo borra del objeto
+    String extraerNumTarjeta() {
+        String numero = numTarjeta;
+        numTarjeta = null;
+        return numero;
+    }
+
+    public long getTokenTarjeta() {
+        return tokenTarjeta;
+    }
+
+    void setTokenTarjeta(long tokenTarjeta) {
+        this.tokenTarjeta = tokenTarjeta;
+    }
+
+    public int getEdad() {
+        return edad;
+    }
+
+    // Ordinal denso asignado por la librería al dar de alta (-1 si no está registrado)
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
+
+    void setIndiceProductos(IndiceOrdinales<Producto> indiceProductos) {
+        this.indiceProductos = indiceProductos;
+    }
+
+    void setGrafoFamiliar(GrafoFamiliar grafoFamiliar) {
+        this.grafoFamiliar = grafoFamiliar;
+    }
+
+    // Padres o tutores registrados en la librería
+    public List<Usuario> obtenerPadres() {
+        if (ordinal < 0) {
+            return new ArrayList<>();
+        }
+        return grafoFamiliar.padres(ordinal);
+    }
+
+    public boolean esUsuarioSistema() {
+        return ordinal >= 0;
+    }
+
+    public boolean esMayorDeEdad() {
+        return edad > 18;
+    }
+
+    public void comprarProducto(Producto producto) {
+        comprarProducto(producto, diaActual(), Dinero.aCentimos(producto.getPrecio()));
+    }
+
+    void comprarProducto(Producto producto, int dia, long importeCentimos) {
+        if (producto.getOrdinal() < 0) {
+            throw new IllegalStateException("El producto no está dado de alta en la librería.");
+        }
+        if (numeroCompras == comprados.length) {
+            comprados = Arrays.copyOf(comprados, numeroCompras * 2);
+            diasCompra = Arrays.copyOf(diasCompra, numeroCompras * 2);
+            importesCompra = Arrays.copyOf(importesCompra, numeroCompras * 2);
+        }
+        diasCompra[numeroCompras] = dia;
+        importesCompra[numeroCompras] = importeCentimos;
+        comprados[numeroCompras++] = producto.getOrdinal();
+        producto.incrementarVendidos();
+    }
+
+    static int diaActual() {
+        return (int) LocalDate.now().toEpochDay();
+    }
+
+    // Día de la compra más reciente del producto, o -1 si no está en memoria
+    int diaUltimaCompra(int ordinalProducto) {
+        int posicion = posicionCompra(ordinalProducto);
+        return posicion < 0 ? -1 : diasCompra[posicion];
+    }
+
+    // Se devuelve la compra más reciente del producto. Devuelve los céntimos que se cobraron en ella, o -1
+    // si no hay compra que devolver
+    public long devolverProducto(Producto producto) {
+        int posicion = posicionCompra(producto.getOrdinal());
+        if (posicion < 0) {
+            return -1;
+        }
+        long importe = importesCompra[posicion];
+        System.arraycopy(comprados, posicion + 1, comprados, posicion, numeroCompras - posicion - 1);
+        System.arraycopy(diasCompra, posicion + 1, diasCompra, posicion, numeroCompras - posicion - 1);
+        System.arraycopy(importesCompra, posicion + 1, importesCompra, posicion, numeroCompras - posicion - 1);
+        numeroCompras--;
+        producto.decrementarVendidos();
+        return importe;
+    }
+
+    // Las compras están en orden de fecha, así que las anteriores a un día son siempre las primeras
+    int comprasAnterioresA(int dia) {
+        int cantidad = 0;
+        while (cantidad < numeroCompras && diasCompra[cantidad] < dia) {
+            cantidad++;
+        }
+        return cantidad;
+    }
+
+    int getDiaCompra(int posicion) {
+        return diasCompra[posicion];
+    }
+
+    // Quita de memoria las primeras compras, que ya se han escrito en el archivo, y las suma al resumen por mes.
+    // Si el buffer queda muy vacío se reduce, para que un usuario antiguo no ocupe más que uno nuevo
+    void archivarCompras(int cantidad) {
+        for (int i = 0; i < cantidad; i++) {
+            LocalDate fecha = LocalDate.ofEpochDay(diasCompra[i]);
+            resumenArchivado.merge(fecha.getYear() * 100 + fecha.getMonthValue(), 1, Integer::sum);
+        }
+        numeroCompras -= cantidad;
+        System.arraycopy(comprados, cantidad, comprados, 0, numeroCompras);
+        System.arraycopy(diasCompra, cantidad, diasCompra, 0, numeroCompras);
+        System.arraycopy(importesCompra, cantidad, importesCompra, 0, numeroCompras);
+        if (comprados.length > 4 && numeroCompras < comprados.length / 4) {
+            int capacidad = Math.max(4, comprados.length / 2);
+            comprados = Arrays.copyOf(comprados, capacidad);
+            diasCompra = Arrays.copyOf(diasCompra, capacidad);
+            importesCompra = Arrays.copyOf(importesCompra, capacidad);
+        }
+    }
+
+    boolean haComprado(int ordinalProducto) {
+        return posicionCompra(ordinalProducto) >= 0;
+    }
+
+    private int posicionCompra(int ordinalProducto) {
+        for (int i = numeroCompras - 1; i >= 0; i--) {
+            if (comprados[i] == ordinalProducto) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public List<Producto> getProductosComprados() {
+        List<Producto> productos = new ArrayList<>(numeroCompras);
+        for (int i = 0; i < numeroCompras; i++) {
+            productos.add(indiceProductos.obtener(comprados[i]));
+        }
+        return productos;
+    }
+
+    int[] getOrdinalesComprados() {
+        return comprados;
+    }
+
+    public int getNumeroCompras() {
+        return numeroCompras;
+    }
+
+    // Compra del producto en los últimos 14 días
+    public boolean haCompradoRecientemente(Producto producto) {
+        if (producto.getOrdinal() < 0) {
+            return false;
+        }
+        int posicion = posicionCompra(producto.getOrdinal());
+        return posicion >= 0 && diasCompra[posicion] >= diaActual() - 14;
+    }
+
+    // Compras hechas en el mes indicado del año en curso, estén en memoria o ya archivadas
+    public int obtenerCantidadCompras(int mes) {
+        int año = LocalDate.now().getYear();
+        int desde = (int) LocalDate.of(año, mes, 1).toEpochDay();
+        int hasta = (int) LocalDate.of(año, mes, 1).plusMonths(1).toEpochDay();
+        int cantidad = resumenArchivado.getOrDefault(año * 100 + mes, 0);
+        for (int i = 0; i < numeroCompras; i++) {
+            if (diasCompra[i] >= desde && diasCompra[i] < hasta) {
+                cantidad++;
+            }
+        }
+        return cantidad;
+    }
+}
@@ -0,0 +1,7 @@
+// Descriptor del módulo: java.management y jdk.management solo se usan para medir las cargas de ficheros
+module extraordinaria2 {
+    requires java.management;
+    requires jdk.management;
+
+    exports extraordinaria2;
+}
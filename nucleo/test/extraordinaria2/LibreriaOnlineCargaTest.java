@@ -0,0 +1,205 @@
+package extraordinaria2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+// Pruebas de carga: compras y devoluciones concurrentes y una prueba larga para detectar fugas de memoria.
+// Se pueden excluir de la ejecución normal filtrando la etiqueta "carga"
+@Tag("carga")
+class LibreriaOnlineCargaTest {
+    private static final int HILOS = 2000;
+    private static final int OPERACIONES_POR_HILO = 50;
+
+    private LibreriaOnline libreria;
+
+    @BeforeEach
+    void setUp() {
+        libreria = new LibreriaOnline();
+        // Sin limitadores: aquí interesa la consistencia, no el control de abuso
+        libreria.setLimitadores(null, null);
+    }
+
+    @Test
+    void testComprasYDevolucionesConcurrentes() throws Exception {
+        Producto[] productos = {
+                new Libro("L001", "El principito", "Antoine de Saint-Exupéry", 10.99, "Aventuras", true),
+                new Libro("L002", "Niebla", "Miguel de Unamuno", 5.50, "Narrativa Española", true),
+                new JuegoMesa("J001", "Catan", 35.00, 10, "Estrategia") };
+        for (Producto producto : productos) {
+            libreria.darDeAltaProducto(producto);
+        }
+        // Varios hilos por usuario, para que también compitan por el historial de un mismo usuario
+        Usuario[] usuarios = new Usuario[HILOS / 4];
+        for (int i = 0; i < usuarios.length; i++) {
+            usuarios[i] = new Usuario("U" + i, "A", "B", String.format("%08dZ", i), 1, 1, 1990, 30, "4111" + i);
+            libreria.darDeAltaUsuario(usuarios[i]);
+        }
+
+        // Compras netas que deberían quedar por usuario y producto según lo que cada hilo consiguió hacer
+        AtomicInteger[][] netas = new AtomicInteger[usuarios.length][productos.length];
+        for (AtomicInteger[] fila : netas) {
+            for (int j = 0; j < fila.length; j++) {
+                fila[j] = new AtomicInteger();
+            }
+        }
+        AtomicReference<Throwable> fallo = new AtomicReference<>();
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Thread> hilos = new ArrayList<>(HILOS);
+        for (int h = 0; h < HILOS; h++) {
+            int u = h % usuarios.length;
+            Thread hilo = new Thread(() -> {
+                try {
+                    salida.await();
+                    ThreadLocalRandom azar = ThreadLocalRandom.current();
+                    for (int i = 0; i < OPERACIONES_POR_HILO; i++) {
+                        int p = azar.nextInt(productos.length);
+                        if (azar.nextBoolean()) {
+                            libreria.comprarProducto(usuarios[u], productos[p]);
+                            netas[u][p].incrementAndGet();
+                        } else {
+                            try {
+                                libreria.devolverProducto(usuarios[u], productos[p]);
+                                netas[u][p].decrementAndGet();
+                            } catch (Exception e) {
+                                // Otro hilo del mismo usuario ya lo devolvió o aún no se había comprado
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    fallo.compareAndSet(null, e);
+                }
+            });
+            hilo.start();
+            hilos.add(hilo);
+        }
+        salida.countDown();
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        Assertions.assertNull(fallo.get());
+
+        for (int p = 0; p < productos.length; p++) {
+            int total = 0;
+            for (int u = 0; u < usuarios.length; u++) {
+                int enHistorial = 0;
+                for (Producto comprado : usuarios[u].getProductosComprados()) {
+                    if (comprado == productos[p]) {
+                        enHistorial++;
+                    }
+                }
+                Assertions.assertEquals(netas[u][p].get(), enHistorial);
+                total += enHistorial;
+            }
+            Assertions.assertEquals(total, productos[p].getVendidos());
+            Assertions.assertEquals(total * productos[p].getPrecioCentimos(), productos[p].getIngresosCentimos());
+        }
+    }
+
+    @Test
+    void testDevolucionesAsincronasConcurrentes() throws Exception {
+        Producto libro = new Libro("L001", "El principito", "Antoine de Saint-Exupéry", 10.99, "Aventuras", true);
+        libreria.darDeAltaProducto(libro);
+        Usuario[] usuarios = new Usuario[HILOS];
+        for (int i = 0; i < usuarios.length; i++) {
+            usuarios[i] = new Usuario("U" + i, "A", "B", String.format("%08dZ", i), 1, 1, 1990, 30, "4111" + i);
+            libreria.darDeAltaUsuario(usuarios[i]);
+            libreria.comprarProducto(usuarios[i], libro);
+        }
+        AtomicInteger reembolsados = new AtomicInteger();
+        libreria.iniciarDevolucionesAsincronas(lote -> reembolsados.addAndGet(lote.size()), 64);
+
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Thread> hilos = new ArrayList<>(HILOS);
+        for (Usuario usuario : usuarios) {
+            Thread hilo = new Thread(() -> {
+                try {
+                    salida.await();
+                    libreria.solicitarDevolucion(usuario, libro).join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            hilo.start();
+            hilos.add(hilo);
+        }
+        salida.countDown();
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        libreria.detenerDevolucionesAsincronas();
+
+        Assertions.assertEquals(HILOS, reembolsados.get());
+        Assertions.assertEquals(0, libro.getVendidos());
+        Assertions.assertEquals(0, libro.getIngresosCentimos());
+        for (Usuario usuario : usuarios) {
+            Assertions.assertEquals(0, usuario.getNumeroCompras());
+        }
+    }
+
+    // Millones de compras y devoluciones sobre el mismo conjunto de usuarios y productos no deben hacer
+    // crecer las estructuras internas ni la memoria usada
+    @Test
+    void testSinFugasDeMemoria() throws Exception {
+        Producto[] productos = new Producto[8];
+        for (int i = 0; i < productos.length; i++) {
+            productos[i] = new Libro("L" + i, "Libro " + i, "Autor", 1 + i, "Historia", true);
+            libreria.darDeAltaProducto(productos[i]);
+        }
+        Usuario[] usuarios = new Usuario[64];
+        for (int i = 0; i < usuarios.length; i++) {
+            usuarios[i] = new Usuario("U" + i, "A", "B", String.format("%08dZ", i), 1, 1, 1990, 30, "4111" + i);
+            libreria.darDeAltaUsuario(usuarios[i]);
+        }
+
+        ciclos(usuarios, productos, 100_000);
+        int[] capacidades = new int[usuarios.length];
+        for (int i = 0; i < usuarios.length; i++) {
+            capacidades[i] = usuarios[i].getOrdinalesComprados().length;
+        }
+        long antes = memoriaUsada();
+        ciclos(usuarios, productos, 2_000_000);
+        long despues = memoriaUsada();
+
+        for (int i = 0; i < usuarios.length; i++) {
+            Assertions.assertEquals(0, usuarios[i].getNumeroCompras());
+            Assertions.assertEquals(capacidades[i], usuarios[i].getOrdinalesComprados().length);
+        }
+        for (Producto producto : productos) {
+            Assertions.assertEquals(0, producto.getVendidos());
+            Assertions.assertEquals(0, producto.getIngresosCentimos());
+        }
+        Assertions.assertTrue(despues - antes < 16L * 1024 * 1024,
+                "La memoria usada creció " + (despues - antes) / 1024 + " KB");
+    }
+
+    // Cada ciclo compra dos productos y los devuelve, así que al terminar no queda nada comprado
+    private void ciclos(Usuario[] usuarios, Producto[] productos, int operaciones) throws Exception {
+        for (int i = 0; i < operaciones; i += 4) {
+            Usuario usuario = usuarios[(i / 4) % usuarios.length];
+            Producto primero = productos[(i / 4) % productos.length];
+            Producto segundo = productos[(i / 4 + 3) % productos.length];
+            libreria.comprarProducto(usuario, primero);
+            libreria.comprarProducto(usuario, segundo);
+            libreria.devolverProducto(usuario, segundo);
+            libreria.devolverProducto(usuario, primero);
+        }
+    }
+
+    private static long memoriaUsada() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,1103 @@
+package extraordinaria2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// Pruebas de los casos de uso de LibreriaOnline
+class LibreriaOnlineTest {
+    private LibreriaOnline libreria;
+
+    @BeforeEach
+    void setUp() {
+        libreria = new LibreriaOnline();
+    }
+
+    @Test
+    void testComprarProducto() throws Exception {
+        Usuario usuario = new Usuario("John", "Doe", "Smith", "12345678A", 1, 1, 1990, 30, "1234567890");
+        Producto libro = new Libro("L001", "El principito", "Antoine de Saint-Exupéry", 10.99, "Aventuras", true);
+        libreria.darDeAltaUsuario(usuario);
+        libreria.darDeAltaProducto(libro);
+
+        libreria.comprarProducto(usuario, libro);
+        Assertions.assertTrue(usuario.getProductosComprados().contains(libro));
+        Assertions.assertEquals(1, libro.getVendidos());
+    }
+
+    @Test
+    void testDevolverProducto() throws Exception {
+        Usuario usuario = new Usuario("John", "Doe", "Smith", "12345678A", 1, 1, 1990, 30, "1234567890");
+        Producto libro = new Libro("L001", "El principito", "Antoine de Saint-Exupéry", 10.99, "Aventuras", true);
+        libreria.darDeAltaUsuario(usuario);
+        libreria.darDeAltaProducto(libro);
+
+        libreria.comprarProducto(usuario, libro);
+        libreria.devolverProducto(usuario, libro);
+        Assertions.assertFalse(usuario.getProductosComprados().contains(libro));
+        Assertions.assertEquals(0, libro.getVendidos());
+    }
+
+    @Test
+    void testComprarProductoNoRegistrado() throws Exception {
+        Usuario usuario = new Usuario("John", "Doe", "Smith", "12345678A", 1, 1, 1990, 30, "1234567890");
+        Producto libro = new Libro("L001", "El principito", "Antoine de Saint-Exupéry", 10.99, "Aventuras", true);
+        libreria.darDeAltaProducto(libro);
+
+        Assertions.assertThrows(Exception.class, () -> libreria.comprarProducto(usuario, libro));
+        Assertions.assertEquals(0, libro.getVendidos());
+    }
+
+    @Test
+    void testDevolverProductoNoComprado() throws Exception {
+        Usuario usuario = new Usuario("John", "Doe", "Smith", "12345678A", 1, 1, 1990, 30, "1234567890");
+        Producto libro = new Libro("L001", "El principito", "Antoine de Saint-Exupéry", 10.99, "Aventuras", true);
+        libreria.darDeAltaUsuario(usuario);
+        libreria.darDeAltaProducto(libro);
+
+        Assertions.assertThrows(Exception.class, () -> libreria.devolverProducto(usuario, libro));
+        Assertions.assertEquals(0, libro.getVendidos());
+    }
+
+    // Las consultas por mes/año cuentan las compras del día en que se hacen, así que se comparan el mes actual,
+    // el siguiente y el mismo mes del año pasado
+    @Test
+    void testObtenerIngresosLibros() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        Producto libro = altaLibro("L001", "El principito", 10.99);
+        Producto otro = altaLibro("L002", "Niebla", 5.50);
+
+        libreria.comprarProducto(usuario, libro);
+        libreria.comprarProducto(usuario, otro);
+        libreria.comprarProducto(usuario, libro);
+        java.time.LocalDate hoy = java.time.LocalDate.now();
+        java.time.LocalDate siguiente = hoy.plusMonths(1);
+        Assertions.assertEquals(2748, libreria.obtenerIngresosLibrosCentimos(hoy.getMonthValue(), hoy.getYear()));
+        Assertions.assertEquals(27.48, libreria.obtenerIngresosLibros(hoy.getMonthValue(), hoy.getYear()), 1e-9);
+        Assertions.assertEquals(0, libreria.obtenerIngresosLibrosCentimos(siguiente.getMonthValue(), siguiente.getYear()));
+        Assertions.assertEquals(0, libreria.obtenerIngresosLibrosCentimos(hoy.getMonthValue(), hoy.getYear() - 1));
+        Assertions.assertEquals(0, libreria.obtenerIngresosJuegosCentimos(hoy.getMonthValue(), hoy.getYear()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> libreria.obtenerIngresosLibros(13, hoy.getYear()));
+    }
+
+    @Test
+    void testObtenerIngresosJuegos() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        Producto juego = altaJuego("J001", "Catan", 35.00, 10);
+        altaLibro("L001", "El principito", 10.99);
+
+        libreria.comprarProducto(usuario, juego);
+        java.time.LocalDate hoy = java.time.LocalDate.now();
+        Assertions.assertEquals(3500, libreria.obtenerIngresosJuegosCentimos(hoy.getMonthValue(), hoy.getYear()));
+        Assertions.assertEquals(0, libreria.obtenerIngresosJuegosCentimos(hoy.getMonthValue(), hoy.getYear() - 1));
+        libreria.devolverProducto(usuario, juego);
+        Assertions.assertEquals(0, libreria.obtenerIngresosJuegosCentimos(hoy.getMonthValue(), hoy.getYear()));
+    }
+
+    @Test
+    void testObtenerCantidadLibrosVendidos() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        Producto libro = altaLibro("L001", "El principito", 10.99);
+        Producto otro = altaLibro("L002", "Niebla", 5.50);
+        Producto juego = altaJuego("J001", "Catan", 35.00, 10);
+
+        libreria.comprarProducto(usuario, libro);
+        libreria.comprarProducto(usuario, otro);
+        libreria.comprarProducto(usuario, juego);
+        int mes = java.time.LocalDate.now().getMonthValue();
+        Assertions.assertEquals(2, libreria.obtenerCantidadLibrosVendidos(mes));
+        Assertions.assertEquals(0, libreria.obtenerCantidadLibrosVendidos(mes % 12 + 1));
+    }
+
+    @Test
+    void testObtenerCantidadJuegosVendidos() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        Producto juego = altaJuego("J001", "Catan", 35.00, 10);
+        Producto otro = altaJuego("J002", "Dixit", 30.00, 8);
+        altaLibro("L001", "El principito", 10.99);
+
+        libreria.comprarProducto(usuario, juego);
+        libreria.comprarProducto(usuario, otro);
+        libreria.comprarProducto(usuario, otro);
+        int mes = java.time.LocalDate.now().getMonthValue();
+        Assertions.assertEquals(3, libreria.obtenerCantidadJuegosVendidos(mes));
+        Assertions.assertEquals(0, libreria.obtenerCantidadLibrosVendidos(mes));
+    }
+
+    @Test
+    void testJuegoNoAdecuadoParaLaEdad() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 9);
+        Producto juego = altaJuego("J001", "Catan", 35.00, 10);
+
+        Assertions.assertThrows(Exception.class, () -> libreria.comprarProducto(usuario, juego));
+        Assertions.assertEquals(0, libreria.obtenerCantidadJuegosVendidos(java.time.LocalDate.now().getMonthValue()));
+    }
+
+    @Test
+    void testObtenerRankingLibrosVendidos() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        Libro principito = altaLibro("L001", "El principito", 10.99);
+        Libro niebla = altaLibro("L002", "Niebla", 5.50);
+        altaLibro("L003", "Marianela", 7.00);
+
+        libreria.comprarProducto(usuario, niebla);
+        libreria.comprarProducto(usuario, principito);
+        java.time.LocalDate hoy = java.time.LocalDate.now();
+        Assertions.assertEquals(List.of(principito, niebla), libreria.obtenerRankingLibrosVendidos(hoy.getMonthValue()));
+        Assertions.assertTrue(libreria.obtenerRankingLibrosVendidos(hoy.getMonthValue() % 12 + 1).isEmpty());
+        Assertions.assertTrue(libreria.obtenerRankingLibrosVendidos(hoy.getMonthValue(), hoy.getYear() - 1).isEmpty());
+        // Un libro devuelto en su totalidad deja de estar en el ranking del mes
+        libreria.devolverProducto(usuario, niebla);
+        Assertions.assertEquals(List.of(principito), libreria.obtenerRankingLibrosVendidos(hoy.getMonthValue()));
+    }
+
+    @Test
+    void testObtenerRankingJuegosVendidos() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        JuegoMesa dixit = altaJuego("J002", "Dixit", 30.00, 8);
+        JuegoMesa catan = altaJuego("J001", "Catan", 35.00, 10);
+        altaJuego("J003", "Azul", 40.00, 8);
+
+        libreria.comprarProducto(usuario, dixit);
+        libreria.comprarProducto(usuario, catan);
+        int mes = java.time.LocalDate.now().getMonthValue();
+        Assertions.assertEquals(List.of(catan, dixit), libreria.obtenerRankingJuegosVendidos(mes));
+        Assertions.assertEquals(List.of(catan), libreria.obtenerRankingJuegosVendidos(mes, null, 1).getElementos());
+    }
+
+    @Test
+    void testObtenerClientesConMasCompras() throws Exception {
+        Libro libro = altaLibro("L001", "El principito", 10.99);
+        Usuario[] usuarios = new Usuario[7];
+        for (int i = 0; i < usuarios.length; i++) {
+            usuarios[i] = altaUsuario("0000000" + i + "A", 30);
+            for (int j = 0; j < i; j++) {
+                libreria.comprarProducto(usuarios[i], libro);
+            }
+        }
+        int mes = Calendar.getInstance().get(Calendar.MONTH) + 1;
+
+        List<Usuario> clientes = libreria.obtenerClientesConMasCompras(mes);
+        Assertions.assertEquals(List.of(usuarios[6], usuarios[5], usuarios[4], usuarios[3], usuarios[2]), clientes);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> libreria.obtenerClientesConMasCompras(13));
+
+        // El mismo mes del año pasado no tiene compras: todos empatan a cero y el orden es el de alta
+        int año = Calendar.getInstance().get(Calendar.YEAR);
+        Assertions.assertEquals(List.of(usuarios[0], usuarios[1], usuarios[2], usuarios[3], usuarios[4]),
+                libreria.obtenerClientesConMasCompras(mes, año - 1));
+
+        // La devolución se descuenta del mes de la compra; en el empate a tres gana el alta más antigua
+        for (int j = 0; j < 3; j++) {
+            libreria.devolverProducto(usuarios[6], libro);
+        }
+        Assertions.assertEquals(List.of(usuarios[5], usuarios[4], usuarios[3], usuarios[6], usuarios[2]),
+                libreria.obtenerClientesConMasCompras(mes, año));
+    }
+
+    @Test
+    void testBytesArchivoCompras() {
+        for (String texto : List.of("12345678A|L001|2024-03-05\n", "Ñ|€|𝄞", "\uD800x")) {
+            int esperado = texto.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+            Assertions.assertTrue(ArchivoCompras.bytesUtf8(texto) >= esperado);
+        }
+        Assertions.assertEquals(2 + 1 + 3 + 1 + 4, ArchivoCompras.bytesUtf8("Ñ|€|𝄞"));
+    }
+
+    @Test
+    void testExportarColumnar() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        Usuario otro = altaUsuario("87654321B", 40);
+        Libro libro = altaLibro("L001", "El principito", 10.99);
+        JuegoMesa juego = altaJuego("J001", "Catan", 35.00, 10);
+        libreria.comprarProducto(usuario, libro);
+        libreria.comprarProducto(usuario, juego);
+        libreria.comprarProducto(otro, libro);
+        // Una compra antigua que ya está archivada en disco
+        Path directorio = Files.createTempDirectory("archivo");
+        try (ArchivoCompras archivo = new ArchivoCompras(directorio)) {
+            archivo.escribir("87654321B", "J001", (int) java.time.LocalDate.of(2024, 3, 5).toEpochDay());
+        }
+        libreria.iniciarMantenimiento(directorio.toString(), 30, 60);
+
+        File fichero = File.createTempFile("exportacion", ".col");
+        fichero.deleteOnExit();
+        libreria.exportarColumnar(fichero.getPath());
+        libreria.detenerMantenimiento();
+        String hoy = java.time.LocalDate.now().toString();
+        List<String> filas = new ArrayList<>();
+        ExportadorColumnar.leer(fichero.getPath(), (tabla, fila) -> filas.add(tabla + Arrays.toString(fila)));
+
+        Assertions.assertTrue(filas.contains(
+                "inventario[LIBRO, L001, El principito, 1099, 2, 2198, Autor, Narrativa Española, 1, 0, null]"));
+        Assertions.assertTrue(filas.contains("inventario[JUEGO, J001, Catan, 3500, 1, 3500, null, null, 0, 10, Estrategia]"));
+        Assertions.assertTrue(filas.contains("usuarios[12345678A, John, Doe, Smith, 1, 1, 1990, 30]"));
+        Assertions.assertEquals(List.of("compras[87654321B, J001, 2024-03-05]", "compras[12345678A, L001, " + hoy + "]",
+                "compras[12345678A, J001, " + hoy + "]", "compras[87654321B, L001, " + hoy + "]"),
+                filas.subList(filas.size() - 4, filas.size()));
+        Assertions.assertFalse(filas.stream().anyMatch(fila -> fila.contains("1234567890")));
+    }
+
+    @Test
+    void testConsultar() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        altaUsuario("87654321B", 12);
+        Libro principito = altaLibro("L001", "El principito", 10.99);
+        Libro niebla = altaLibro("L002", "Niebla", 5.50);
+        Libro marianela = altaLibro("L003", "Marianela", 7.00);
+        altaJuego("J001", "Catan", 35.00, 10);
+        libreria.comprarProducto(usuario, niebla);
+        libreria.comprarProducto(usuario, niebla);
+        libreria.comprarProducto(usuario, principito);
+
+        List<Object[]> porCategoria = libreria.consultar(Consulta.sobre(Libro.class).agruparPor("categoria")
+                .contar().sumar("vendidos").maximo("precioCentimos"));
+        Assertions.assertEquals(1, porCategoria.size());
+        Assertions.assertArrayEquals(new Object[] { "Narrativa Española", 3L, 3L, 1099L }, porCategoria.get(0));
+
+        List<Object[]> masVendidos = libreria.consultar(Consulta.sobre(Producto.class).donde("vendidos", ">", 0)
+                .seleccionar("id", "vendidos").ordenarPor("vendidos", true).limite(1));
+        Assertions.assertArrayEquals(new Object[] { "L002", 2L }, masVendidos.get(0));
+        Assertions.assertEquals(1, masVendidos.size());
+
+        List<Object[]> desdeM = libreria.consultar(Consulta.sobre(Libro.class).donde("titulo", ">=", "M")
+                .ordenarPor("titulo", false));
+        Assertions.assertEquals(List.of(marianela, niebla), desdeM.stream().map(fila -> fila[0]).toList());
+
+        List<Object[]> porId = libreria.consultar(Consulta.sobre(Libro.class).donde("id", "=", "L003"));
+        Assertions.assertSame(marianela, porId.get(0)[0]);
+        Assertions.assertTrue(libreria.consultar(Consulta.sobre(JuegoMesa.class).donde("id", "=", "L003")).isEmpty());
+
+        List<Object[]> menores = libreria.consultar(Consulta.sobre(Usuario.class).donde("edad", "<", 18).contar());
+        Assertions.assertArrayEquals(new Object[] { 1L }, menores.get(0));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> libreria.consultar(Consulta.sobre(Libro.class).donde("isbn", "=", "x")));
+    }
+
+    @Test
+    void testParsearProducto() {
+        Libro libro = (Libro) LibreriaOnline.parsearProducto(" LIBRO|L001|El principito|Antoine|10.9|Aventuras|TRUE ");
+        Libro otro = (Libro) LibreriaOnline.parsearProducto("LIBRO|L002|Vuelo nocturno|Antoine|7|Aventuras|false");
+        JuegoMesa juego = (JuegoMesa) LibreriaOnline.parsearProducto("JUEGO|J001|Catan|10|Estrategia");
+        JuegoMesa caro = (JuegoMesa) LibreriaOnline.parsearProducto("JUEGO|J002|Lujo|18|Estrategia|1.0E7");
+
+        Assertions.assertEquals(1090, libro.getPrecioCentimos());
+        Assertions.assertTrue(libro.esNuevo());
+        Assertions.assertEquals(700, otro.getPrecioCentimos());
+        Assertions.assertFalse(otro.esNuevo());
+        Assertions.assertSame(libro.getCategoria(), otro.getCategoria());
+        Assertions.assertSame(libro.getAutor(), otro.getAutor());
+        Assertions.assertEquals(10, juego.getEdadRecomendada());
+        Assertions.assertEquals(0, juego.getPrecioCentimos());
+        Assertions.assertEquals(1_000_000_000L, caro.getPrecioCentimos());
+        Assertions.assertNull(LibreriaOnline.parsearProducto("DISCO|D001|Nada"));
+        Assertions.assertThrows(NumberFormatException.class,
+                () -> LibreriaOnline.parsearProducto("JUEGO|J003|Catan|diez|Estrategia"));
+    }
+
+    @Test
+    void testInstantaneaEnBloque() {
+        List<Producto> productos = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            productos.add(new Libro("L" + (i * 7919 % 500), "Título " + (i % 37), "Autor", 1, "Arte", true));
+        }
+        InstantaneaCatalogo unoAUno = InstantaneaCatalogo.VACIA;
+        for (Producto producto : productos) {
+            unoAUno = unoAUno.con(producto);
+        }
+        InstantaneaCatalogo enBloque = InstantaneaCatalogo.VACIA.conTodos(productos);
+
+        List<Producto> esperado = new ArrayList<>();
+        unoAUno.forEach(esperado::add);
+        List<Producto> obtenido = new ArrayList<>();
+        enBloque.forEach(obtenido::add);
+        Assertions.assertEquals(esperado, obtenido);
+        Assertions.assertEquals(unoAUno.tamaño(), enBloque.tamaño());
+        for (Producto producto : productos) {
+            Assertions.assertSame(unoAUno.obtener(producto.getId()), enBloque.obtener(producto.getId()));
+        }
+    }
+
+    @Test
+    void testSuscribirCambios() throws Exception {
+        DestinoCambiosMemoria memoria = new DestinoCambiosMemoria(4 * AnilloCambios.CAPACIDAD);
+        List<Long> secuencias = new ArrayList<>();
+        libreria.setLimitadores(null, null);
+        libreria.suscribirCambios(memoria);
+        libreria.suscribirCambios((evento, finLote) -> secuencias.add(evento.getSecuencia()));
+
+        Usuario usuario = altaUsuario("12345678A", 30);
+        Libro libro = altaLibro("L001", "El principito", 10.99);
+        libreria.comprarProducto(usuario, libro);
+        libreria.devolverProducto(usuario, libro);
+        libreria.darDeBajaProducto(libro);
+        libreria.darDeBajaUsuario(usuario);
+        // Más eventos que casillas tiene el anillo, para que el escritor dé varias vueltas
+        Libro otro = altaLibro("L002", "Niebla", 5.50);
+        Usuario comprador = altaUsuario("87654321B", 30);
+        for (int i = 0; i < 3 * AnilloCambios.CAPACIDAD; i++) {
+            libreria.comprarProducto(comprador, otro);
+        }
+        libreria.detenerCambios();
+
+        List<String> lineas = new ArrayList<>();
+        for (EventoCambio evento : memoria.getUltimos().subList(0, 6)) {
+            lineas.add(evento.getTipo() + "|" + evento.getClave() + "|" + evento.getIdProducto() + "|"
+                    + evento.getImporteCentimos());
+        }
+        Assertions.assertEquals(List.of("ALTA_USUARIO|12345678A|null|0", "ALTA_PRODUCTO|L001|null|1099",
+                "COMPRA|12345678A|L001|1099", "DEVOLUCION|12345678A|L001|1099", "BAJA_PRODUCTO|L001|null|0",
+                "BAJA_USUARIO|12345678A|null|0"), lineas);
+        Assertions.assertEquals(8 + 3 * AnilloCambios.CAPACIDAD, secuencias.size());
+        for (int i = 0; i < secuencias.size(); i++) {
+            Assertions.assertEquals(i, secuencias.get(i));
+        }
+    }
+
+    @Test
+    void testSuscriptorAtascado() throws Exception {
+        libreria.setLimitadores(null, null);
+        java.util.concurrent.CountDownLatch atasco = new java.util.concurrent.CountDownLatch(1);
+        List<Long> secuencias = new ArrayList<>();
+        libreria.suscribirCambios((evento, finLote) -> {
+            try {
+                atasco.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        libreria.suscribirCambios((evento, finLote) -> secuencias.add(evento.getSecuencia()));
+
+        // El destino atascado no frena las compras: al dar la vuelta al anillo se le desconecta
+        Usuario comprador = altaUsuario("87654321B", 30);
+        Libro libro = altaLibro("L001", "El principito", 10.99);
+        for (int i = 0; i < 2 * AnilloCambios.CAPACIDAD; i++) {
+            libreria.comprarProducto(comprador, libro);
+        }
+        Assertions.assertEquals(1, libreria.getSuscriptoresDesconectados());
+        atasco.countDown();
+        libreria.detenerCambios();
+
+        // El otro suscriptor recibe todos los eventos, en orden
+        Assertions.assertEquals(2 + 2 * AnilloCambios.CAPACIDAD, secuencias.size());
+        for (int i = 0; i < secuencias.size(); i++) {
+            Assertions.assertEquals(i, secuencias.get(i));
+        }
+    }
+
+    @Test
+    void testCompactarHistoriales() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        Libro libro = altaLibro("L001", "El principito", 10.99);
+        Libro otro = altaLibro("L002", "Niebla", 5.50);
+        libreria.comprarProducto(usuario, libro);
+        libreria.comprarProducto(usuario, otro);
+        libreria.comprarProducto(usuario, libro);
+        int mes = Calendar.getInstance().get(Calendar.MONTH) + 1;
+        Assertions.assertEquals(3, usuario.obtenerCantidadCompras(mes));
+
+        Path directorio = Files.createTempDirectory("archivo");
+        int archivadas;
+        try (ArchivoCompras archivo = new ArchivoCompras(directorio)) {
+            Assertions.assertEquals(0, libreria.compactarHistoriales(archivo, Usuario.diaActual()));
+            // Con el límite en mañana, todo lo de hoy queda fuera de la ventana
+            archivadas = libreria.compactarHistoriales(archivo, Usuario.diaActual() + 1);
+        }
+        Assertions.assertEquals(3, archivadas);
+        Assertions.assertEquals(0, usuario.getNumeroCompras());
+        Assertions.assertEquals(3, usuario.obtenerCantidadCompras(mes));
+        Assertions.assertEquals(2, libro.getVendidos());
+        Assertions.assertThrows(Exception.class, () -> libreria.devolverProducto(usuario, libro));
+
+        List<String> lineas = new ArrayList<>();
+        ArchivoCompras.leer(directorio, campos -> lineas.add(campos[0] + "|" + campos[1]));
+        Assertions.assertEquals(List.of("12345678A|L001", "12345678A|L002", "12345678A|L001"), lineas);
+
+        // Las compras archivadas no retienen el producto: la baja libera su ordinal en el momento
+        libreria.darDeBajaProducto(libro);
+        Assertions.assertEquals(-1, libro.getOrdinal());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> libreria.iniciarMantenimiento(
+                directorio.toString(), 14, 60));
+    }
+
+    @Test
+    void testMantenimientoTrasExcepcion() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        libreria.comprarProducto(usuario, altaLibro("L001", "El principito", 10.99));
+
+        // La primera pasada falla con una excepción de tiempo de ejecución; la siguiente debe llegar a ejecutarse
+        ArchivoCompras archivo = new ArchivoCompras(Files.createTempDirectory("archivo")) {
+            private boolean fallar = true;
+
+            @Override
+            public synchronized void escribir(String dni, String idProducto, int dia) throws IOException {
+                if (fallar) {
+                    fallar = false;
+                    throw new IllegalStateException("Fallo simulado");
+                }
+                super.escribir(dni, idProducto, dia);
+            }
+        };
+        MantenimientoCompras mantenimiento = new MantenimientoCompras(libreria, archivo, -1);
+        mantenimiento.iniciar(10, java.util.concurrent.TimeUnit.MILLISECONDS);
+        long limite = System.currentTimeMillis() + 5000;
+        while (mantenimiento.getArchivadas() == 0 && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+        mantenimiento.detener();
+        Assertions.assertEquals(1, mantenimiento.getArchivadas());
+        Assertions.assertNull(mantenimiento.getUltimoError());
+        Assertions.assertEquals(0, usuario.getNumeroCompras());
+    }
+
+    @Test
+    void testVentasPorFechas() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        Libro libro = altaLibro("L001", "El principito", 10.99);
+        Libro otro = altaLibro("L002", "Niebla", 5.50);
+        JuegoMesa juego = altaJuego("J001", "Catan", 35.00, 10);
+        libreria.comprarProducto(usuario, libro);
+        libreria.comprarProducto(usuario, libro);
+        libreria.comprarProducto(usuario, otro);
+        libreria.comprarProducto(usuario, juego);
+        libreria.devolverProducto(usuario, libro);
+
+        java.time.LocalDate hoy = java.time.LocalDate.now();
+        java.time.LocalDate inicioAño = hoy.withDayOfYear(1);
+        Assertions.assertEquals(2, libreria.obtenerUnidadesVendidas(Libro.class, inicioAño, hoy));
+        Assertions.assertEquals(1649, libreria.obtenerIngresosCentimos(Libro.class, inicioAño, hoy));
+        Assertions.assertEquals(3, libreria.obtenerUnidadesVendidas(Producto.class, hoy, hoy));
+        Assertions.assertEquals(5149, libreria.obtenerIngresosCentimos(Producto.class, hoy.minusYears(3), hoy));
+        Assertions.assertEquals(1, libreria.obtenerUnidadesCategoria(JuegoMesa.class, "Estrategia", hoy, hoy));
+        Assertions.assertEquals(1649, libreria.obtenerIngresosCategoriaCentimos(Libro.class, "Narrativa Española", hoy, hoy));
+        Assertions.assertEquals(1, libreria.obtenerUnidadesProducto(libro, inicioAño, hoy));
+        Assertions.assertEquals(550, libreria.obtenerIngresosProductoCentimos(otro, hoy, hoy));
+        Assertions.assertEquals(0, libreria.obtenerUnidadesVendidas(Libro.class, hoy.plusDays(1), hoy.plusDays(30)));
+        Assertions.assertEquals(0, libreria.obtenerUnidadesVendidas(Libro.class, hoy.minusYears(1), hoy.minusDays(1)));
+        Assertions.assertEquals(2, libreria.obtenerCantidadLibrosVendidos(hoy.getMonthValue(), hoy.getYear()));
+        Assertions.assertEquals(0, libreria.obtenerCantidadLibrosVendidos(hoy.getMonthValue(), hoy.getYear() - 1));
+        Assertions.assertEquals(1, libreria.obtenerCantidadJuegosVendidos(hoy.getMonthValue(), hoy.getYear()));
+
+        // Una categoría de libro y una temática de juego con el mismo nombre no se mezclan
+        Libro historia = new Libro("L003", "Historia de Roma", "Autor", 20, "Historia", true);
+        libreria.darDeAltaProducto(historia);
+        JuegoMesa guerra = new JuegoMesa("J002", "Historia de la guerra", 30, 10, "Historia");
+        libreria.darDeAltaProducto(guerra);
+        libreria.comprarProducto(usuario, historia);
+        libreria.comprarProducto(usuario, guerra);
+        Assertions.assertEquals(2000, libreria.obtenerIngresosCategoriaCentimos(Libro.class, "Historia", hoy, hoy));
+        Assertions.assertEquals(3000, libreria.obtenerIngresosCategoriaCentimos(JuegoMesa.class, "Historia", hoy, hoy));
+
+        // Al dar de baja un producto sin compras pendientes su ordinal se recicla, pero su serie sigue con su id
+        libreria.devolverProducto(usuario, historia);
+        int ordinal = historia.getOrdinal();
+        libreria.darDeBajaProducto(historia);
+        Libro nuevo = altaLibro("L004", "Marianela", 7);
+        Assertions.assertEquals(ordinal, nuevo.getOrdinal());
+        Assertions.assertEquals(0, libreria.obtenerUnidadesProducto(nuevo, inicioAño, hoy));
+        Assertions.assertEquals(1, libreria.obtenerUnidadesProducto(guerra, inicioAño, hoy));
+    }
+
+    @Test
+    void testSeriesDeVentas() {
+        // Días desordenados, anteriores al origen y muy separados, comparados con la suma directa
+        java.util.Random aleatorio = new java.util.Random(7);
+        SerieDiaria densa = new SerieDiaria();
+        SerieDispersa dispersa = new SerieDispersa();
+        long[] unidades = new long[3000];
+        long[] centimos = new long[3000];
+        for (int i = 0; i < 5000; i++) {
+            int dia = i < 20 ? 1500 + i : aleatorio.nextInt(3000);
+            long importe = aleatorio.nextInt(5000) - 1000;
+            densa.registrar(20000 + dia, 1, importe);
+            dispersa.registrar(20000 + dia, 1, importe);
+            unidades[dia]++;
+            centimos[dia] += importe;
+        }
+        for (int i = 0; i < 500; i++) {
+            int desde = aleatorio.nextInt(3200) - 100;
+            int hasta = desde + aleatorio.nextInt(1200);
+            long esperadas = 0;
+            long esperado = 0;
+            for (int dia = Math.max(0, desde); dia <= Math.min(2999, hasta); dia++) {
+                esperadas += unidades[dia];
+                esperado += centimos[dia];
+            }
+            Assertions.assertEquals(esperadas, densa.unidades(20000 + desde, 20000 + hasta));
+            Assertions.assertEquals(esperado, densa.centimos(20000 + desde, 20000 + hasta));
+            Assertions.assertEquals(esperadas, dispersa.unidades(20000 + desde, 20000 + hasta));
+            Assertions.assertEquals(esperado, dispersa.centimos(20000 + desde, 20000 + hasta));
+        }
+        Assertions.assertEquals(0, densa.unidades(20010, 20000));
+    }
+
+    @Test
+    void testAplicarCambiosEnSitio() throws Exception {
+        Path inventario = Files.createTempFile("inventario", ".txt");
+        Path usuarios = Files.createTempFile("usuarios", ".txt");
+        Files.writeString(inventario, "LIBRO|L001|El principito|Antoine|10.99|Aventuras|true\n"
+                + "LIBRO|L002|Niebla|Unamuno|5.5|Narrativa Española|false\n");
+        Files.writeString(usuarios, "John|Doe|Smith|12345678A|1|1|1990|1234567890\n");
+        Assertions.assertEquals(2, libreria.aplicarCambiosInventario(inventario.toString()));
+        Assertions.assertEquals(1, libreria.aplicarCambiosUsuarios(usuarios.toString()));
+        Usuario usuario = libreria.consultar(Consulta.sobre(Usuario.class).donde("dni", "=", "12345678A"))
+                .stream().map(fila -> (Usuario) fila[0]).findFirst().get();
+        Libro principito = (Libro) consultarId("L001");
+        libreria.comprarProducto(usuario, principito);
+
+        // Una línea modificada actualiza el mismo objeto: conserva ventas y se reordena por el título nuevo
+        Files.writeString(inventario, "LIBRO|L001|Zadig|Voltaire|12|Historia|true\n"
+                + "LIBRO|L002|Niebla|Unamuno|5.5|Narrativa Española|false\n");
+        Files.writeString(usuarios, "Johnny|Doe|Smith|12345678A|1|1|1990|1234567890\n");
+        Assertions.assertEquals(1, libreria.aplicarCambiosInventario(inventario.toString()));
+        Assertions.assertEquals(1, libreria.aplicarCambiosUsuarios(usuarios.toString()));
+        Assertions.assertSame(principito, consultarId("L001"));
+        Assertions.assertEquals("Zadig", principito.getTitulo());
+        Assertions.assertEquals("Historia", principito.getCategoria());
+        Assertions.assertEquals(1, principito.getVendidos());
+        Assertions.assertEquals(List.of("Niebla", "Zadig"),
+                libreria.productosPorTitulo(null).map(Producto::getTitulo).toList());
+        Assertions.assertEquals("Johnny Doe Smith", usuario.getNombreCompleto());
+        Assertions.assertEquals(List.of(principito), usuario.getProductosComprados());
+
+        // Retirado mientras sigue en un historial y vuelto a dar de alta: recupera su ordinal sin duplicados
+        Files.writeString(inventario, "LIBRO|L002|Niebla|Unamuno|5.5|Narrativa Española|false\n");
+        libreria.aplicarCambiosInventario(inventario.toString());
+        Assertions.assertNull(consultarId("L001"));
+        Libro vuelta = new Libro("L001", "Zadig", "Voltaire", 12, "Historia", true);
+        libreria.darDeAltaProducto(vuelta);
+        Assertions.assertSame(vuelta, consultarId("L001"));
+        Assertions.assertEquals(1, vuelta.getVendidos());
+        Assertions.assertEquals(-1, principito.getOrdinal());
+        Assertions.assertEquals(List.of(vuelta), usuario.getProductosComprados());
+        libreria.devolverProducto(usuario, vuelta);
+        Assertions.assertEquals(0, vuelta.getVendidos());
+        // Sin compras que lo retengan, una baja libera el ordinal del todo
+        libreria.darDeBajaProducto(vuelta);
+        Assertions.assertEquals(-1, vuelta.getOrdinal());
+    }
+
+    @Test
+    void testMotorPrecios() throws Exception {
+        Libro usado = new Libro("L001", "El principito", "Autor", 10, "Aventuras", false);
+        libreria.darDeAltaProducto(usado);
+        MotorPrecios motor = libreria.getMotorPrecios();
+        motor.setReglas(List.of(ReglaPrecio.descuentoLibrosUsados(10), ReglaPrecio.descuentoCategoria("Estrategia", 50)));
+        Assertions.assertEquals(900, libreria.obtenerPrecioCentimos(usado));
+        int compilaciones = motor.getCompilaciones();
+
+        // Las altas, bajas y modificaciones posteriores solo recalculan su posición de la tabla
+        List<Producto> nuevos = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            nuevos.add(altaJuego("J" + i, "Juego " + i, 20, 8));
+        }
+        Assertions.assertEquals(1000, libreria.obtenerPrecioCentimos(nuevos.get(99)));
+        libreria.darDeBajaProducto(nuevos.get(0));
+        Libro nuevo = altaLibro("L002", "Niebla", 5);
+        Assertions.assertEquals(500, libreria.obtenerPrecioCentimos(nuevo));
+        Assertions.assertEquals(compilaciones, motor.getCompilaciones());
+
+        // Un cambio de reglas sí recompila
+        motor.añadirRegla(ReglaPrecio.descuentoProducto("L002", 20));
+        Assertions.assertEquals(400, libreria.obtenerPrecioCentimos(nuevo));
+        Assertions.assertEquals(compilaciones + 1, motor.getCompilaciones());
+        // Una promoción futura no se aplica hasta su inicio
+        long ahora = System.currentTimeMillis();
+        motor.añadirRegla(ReglaPrecio.promocion(ReglaPrecio.descuentoProducto("L001", 50), ahora + 60000, ahora + 120000));
+        Assertions.assertEquals(900, libreria.obtenerPrecioCentimos(usado));
+        motor.setDescuentoCarrito(2, 10);
+        Assertions.assertEquals(15.3, libreria.calcularPrecioCarrito(List.of(usado, nuevo, nuevo)), 1e-9);
+    }
+
+    @Test
+    void testRecomendaciones() throws Exception {
+        libreria.setLimitadores(null, null);
+        Usuario ana = altaUsuario("12345678A", 30);
+        Usuario luis = altaUsuario("87654321B", 30);
+        Libro principito = altaLibro("L001", "El principito", 10);
+        Libro niebla = altaLibro("L002", "Niebla", 5);
+        Libro marianela = altaLibro("L003", "Marianela", 7);
+        libreria.comprarProducto(ana, principito);
+        libreria.comprarProducto(ana, niebla);
+        libreria.comprarProducto(ana, niebla);
+        libreria.comprarProducto(luis, principito);
+        libreria.comprarProducto(luis, niebla);
+        libreria.comprarProducto(luis, marianela);
+        // Las unidades repetidas de una misma cesta cuentan una vez
+        Assertions.assertEquals(List.of(niebla, marianela), libreria.obtenerRecomendaciones(principito, 5));
+        libreria.reconstruirRecomendaciones();
+        Assertions.assertEquals(List.of(niebla, marianela), libreria.obtenerRecomendaciones(principito, 5));
+        libreria.devolverProducto(luis, marianela);
+        Assertions.assertEquals(List.of(niebla), libreria.obtenerRecomendaciones(principito, 5));
+
+        // Una cesta muy grande no hace crecer las filas más allá del máximo de vecinos, ni al registrar
+        // compra a compra ni al reconstruir
+        Usuario coleccionista = altaUsuario("11111111C", 30);
+        for (int i = 0; i < 300; i++) {
+            libreria.comprarProducto(coleccionista, altaLibro("X" + i, "Libro " + i, 1));
+        }
+        Assertions.assertEquals(256, libreria.obtenerRecomendaciones(consultarId("X0"), 1000).size());
+        libreria.reconstruirRecomendaciones();
+        Assertions.assertEquals(256, libreria.obtenerRecomendaciones(consultarId("X0"), 1000).size());
+        Assertions.assertEquals(List.of(niebla), libreria.obtenerRecomendaciones(principito, 5));
+    }
+
+    @Test
+    void testRecomendacionesVentanaEnMemoria() throws Exception {
+        libreria.setLimitadores(null, null);
+        Usuario ana = altaUsuario("12345678A", 30);
+        Libro principito = altaLibro("L001", "El principito", 10);
+        Libro niebla = altaLibro("L002", "Niebla", 5);
+        Libro marianela = altaLibro("L003", "Marianela", 7);
+        // Cada vez que se archiva la cesta de Ana sus pares dejan de contar, así que volver a comprar lo mismo
+        // no acumula
+        try (ArchivoCompras archivo = new ArchivoCompras(Files.createTempDirectory("archivo"))) {
+            for (int i = 0; i < 3; i++) {
+                libreria.comprarProducto(ana, principito);
+                libreria.comprarProducto(ana, niebla);
+                if (i < 2) {
+                    libreria.compactarHistoriales(archivo, Usuario.diaActual() + 1);
+                    Assertions.assertEquals(List.of(), libreria.obtenerRecomendaciones(principito, 5));
+                }
+            }
+        }
+        for (String dni : List.of("87654321B", "11111111C")) {
+            Usuario usuario = altaUsuario(dni, 30);
+            libreria.comprarProducto(usuario, principito);
+            libreria.comprarProducto(usuario, marianela);
+        }
+        Assertions.assertEquals(List.of(marianela, niebla), libreria.obtenerRecomendaciones(principito, 5));
+        libreria.reconstruirRecomendaciones();
+        Assertions.assertEquals(List.of(marianela, niebla), libreria.obtenerRecomendaciones(principito, 5));
+    }
+
+    @Test
+    void testReconstruirMatrizConCambiosConcurrentes() {
+        MatrizCoCompras matriz = new MatrizCoCompras();
+        matriz.registrarCompra(new int[] { 0 }, 1, 1);
+        matriz.registrarCompra(new int[] { 0 }, 1, 2);
+
+        // Lo que llega entre la copia de los historiales y el final del cálculo se repite sobre el resultado
+        matriz.iniciarReconstruccion();
+        List<int[]> historiales = List.of(new int[] { 0, 1 }, new int[] { 0, 2 });
+        matriz.registrarCompra(new int[] { 0, 1 }, 2, 3);
+        matriz.registrarDevolucion(new int[] { 0 }, 1, 2);
+        matriz.eliminarProducto(1);
+        matriz.reconstruir(historiales);
+
+        Assertions.assertArrayEquals(new int[] { 0 }, matriz.vecinos(3, 5));
+        Assertions.assertArrayEquals(new int[] { 3 }, matriz.vecinos(0, 5));
+        Assertions.assertArrayEquals(new int[0], matriz.vecinos(1, 5));
+        Assertions.assertArrayEquals(new int[0], matriz.vecinos(2, 5));
+
+        // Sin reconstrucción en curso no se anota nada
+        matriz.registrarCompra(new int[] { 0 }, 1, 4);
+        matriz.reconstruir(List.of(new int[] { 0, 4 }));
+        Assertions.assertArrayEquals(new int[] { 4 }, matriz.vecinos(0, 5));
+    }
+
+    @Test
+    void testCompradoresDistintosPorAñoYMes() {
+        AnaliticaVentas analitica = new AnaliticaVentas();
+        for (int i = 0; i < 1000; i++) {
+            analitica.registrarCompra("A" + i, "L001", 0, 2024, 7);
+            analitica.registrarCompra("A" + i, "L001", 0, 2024, 7);
+        }
+        for (int i = 0; i < 300; i++) {
+            analitica.registrarCompra("B" + i, "L002", 1, 2025, 7);
+        }
+        // El mismo mes de dos años distintos se cuenta por separado
+        Assertions.assertEquals(1000, analitica.compradoresDistintos(2024, 7), 50);
+        Assertions.assertEquals(300, analitica.compradoresDistintos(2025, 7), 15);
+        Assertions.assertEquals(1000, analitica.compradoresDistintos(0, 2024, 7), 100);
+        Assertions.assertEquals(0, analitica.compradoresDistintos(0, 2025, 7));
+        Assertions.assertEquals(300, analitica.compradoresDistintos(1, 2025, 7), 30);
+
+        HyperLogLog otraTienda = new HyperLogLog(14);
+        for (int i = 0; i < 500; i++) {
+            otraTienda.agregar(HyperLogLog.hash("B" + i));
+        }
+        analitica.fusionarCompradoresMes(2025, 7, otraTienda);
+        Assertions.assertEquals(500, analitica.getCompradoresMes(2025, 7).estimar(), 25);
+
+        // Los meses fuera del periodo conservado se descartan al empezar uno nuevo
+        analitica.registrarCompra("C", "L001", 0, 2026, 8);
+        Assertions.assertEquals(0, analitica.compradoresDistintos(2024, 7));
+        Assertions.assertTrue(analitica.compradoresDistintos(2025, 7) > 0);
+    }
+
+    @Test
+    void testLimiteSinTarjeta() throws Exception {
+        libreria.setLimitadores(null, new LimitadorTasa(2, 0.001, 1000));
+        Libro libro = altaLibro("L001", "Libro", 10);
+        for (int i = 0; i < 4; i++) {
+            Usuario sinTarjeta = new Usuario("John", "Doe", "Smith", "S" + i, 1, 1, 1990, 30, null);
+            libreria.darDeAltaUsuario(sinTarjeta);
+            // Sin tarjeta no comparten cubeta: ninguno frena al resto
+            for (int j = 0; j < 3; j++) {
+                libreria.comprarProducto(sinTarjeta, libro);
+            }
+            Assertions.assertEquals(3, sinTarjeta.getNumeroCompras());
+        }
+        // Dos usuarios con la misma tarjeta sí comparten la cubeta
+        Usuario primero = altaUsuario("T1", 30);
+        Usuario segundo = altaUsuario("T2", 30);
+        libreria.comprarProducto(primero, libro);
+        libreria.comprarProducto(primero, libro);
+        Assertions.assertThrows(Exception.class, () -> libreria.comprarProducto(segundo, libro));
+    }
+
+    @Test
+    void testReembolsoImporteCobrado() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        Libro libro = altaLibro("L001", "El principito", 10);
+        libreria.comprarProducto(usuario, libro);
+        libreria.getMotorPrecios().añadirRegla(ReglaPrecio.descuentoProducto("L001", 50));
+        libreria.comprarProducto(usuario, libro);
+
+        // Cada devolución reembolsa lo que se cobró, empezando por la compra más reciente
+        List<RegistroReembolso> registrados = new ArrayList<>();
+        libreria.iniciarDevolucionesAsincronas(registrados::addAll, 8);
+        Assertions.assertEquals(500, libreria.solicitarDevolucion(usuario, libro).get());
+        Assertions.assertEquals(1000, libreria.solicitarDevolucion(usuario, libro).get());
+        libreria.detenerDevolucionesAsincronas();
+        Assertions.assertEquals(2, registrados.size());
+        Assertions.assertEquals(0, libro.getIngresosCentimos());
+
+        // Detenido el procesador, lo que quede en la cola se rechaza en lugar de quedarse esperando
+        ProcesadorDevoluciones sinHilo = new ProcesadorDevoluciones(libreria, lote -> { }, 8);
+        java.util.concurrent.CompletableFuture<Long> pendiente = sinHilo.solicitar(usuario, libro);
+        sinHilo.detener();
+        Assertions.assertThrows(java.util.concurrent.ExecutionException.class, pendiente::get);
+        Assertions.assertThrows(java.util.concurrent.ExecutionException.class,
+                () -> sinHilo.solicitar(usuario, libro).get());
+    }
+
+    @Test
+    void testFiltroBloom() {
+        FiltroBloomContador filtro = new FiltroBloomContador(100, 0.01);
+        for (int i = 0; i < 50; i++) {
+            filtro.agregar("L" + i);
+        }
+        for (int i = 0; i < 50; i++) {
+            Assertions.assertTrue(filtro.podriaContener("L" + i));
+        }
+        Assertions.assertFalse(filtro.podriaContener(null));
+
+        // Cada "quizá" de una clave que no está se anota como falso positivo
+        for (int i = 0; i < 1000; i++) {
+            if (filtro.podriaContener("X" + i)) {
+                filtro.registrarFalsoPositivo();
+            }
+        }
+        Assertions.assertEquals(1000, filtro.getRechazos() + filtro.getFalsosPositivos());
+        Assertions.assertTrue(filtro.getTasaFalsosPositivosObservada() < 0.05);
+        Assertions.assertTrue(filtro.getTasaFalsosPositivosEstimada() < 0.05);
+
+        // Una baja devuelve los contadores a cero; uno saturado ya no se decrementa
+        FiltroBloomContador vacio = new FiltroBloomContador(10, 0.01);
+        vacio.agregar("L001");
+        vacio.eliminar("L001");
+        Assertions.assertFalse(vacio.podriaContener("L001"));
+        for (int i = 0; i < 20; i++) {
+            vacio.agregar("L002");
+        }
+        for (int i = 0; i < 20; i++) {
+            vacio.eliminar("L002");
+        }
+        Assertions.assertTrue(vacio.podriaContener("L002"));
+    }
+
+    @Test
+    void testListarProductosPaginado() throws Exception {
+        for (String titulo : List.of("A", "B", "C", "D", "E")) {
+            altaLibro("L" + titulo, titulo, 10);
+        }
+        Pagina<Producto> pagina = libreria.listarProductos(null, 2);
+        Assertions.assertEquals(List.of("A", "B"), pagina.getElementos().stream().map(Producto::getTitulo).toList());
+        Assertions.assertTrue(pagina.hayMas());
+
+        // El cursor sigue siendo válido tras altas y bajas: lo anterior al cursor no reaparece
+        altaLibro("LAa", "Aa", 10);
+        altaLibro("LBb", "Bb", 10);
+        pagina = libreria.listarProductos(pagina.getSiguienteCursor(), 2);
+        Assertions.assertEquals(List.of("Bb", "C"), pagina.getElementos().stream().map(Producto::getTitulo).toList());
+        libreria.darDeBajaProducto(consultarId("LD"));
+        pagina = libreria.listarProductos(pagina.getSiguienteCursor(), 2);
+        Assertions.assertEquals(List.of("E"), pagina.getElementos().stream().map(Producto::getTitulo).toList());
+        Assertions.assertFalse(pagina.hayMas());
+        Assertions.assertNull(pagina.getSiguienteCursor());
+
+        // Una página que agota el inventario justo no deja cursor
+        Assertions.assertFalse(libreria.listarProductos(null, 6).hayMas());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> libreria.listarProductos(null, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> libreria.listarProductos("%%%", 2));
+    }
+
+    @Test
+    void testGrafoFamiliar() throws Exception {
+        Usuario menor = altaUsuario("M1", 10);
+        Usuario hermano = altaUsuario("M2", 15);
+        Usuario padre = altaUsuario("P1", 40);
+        Libro libro = altaLibro("L001", "El principito", 10);
+        Assertions.assertThrows(Exception.class, () -> libreria.comprarProducto(menor, libro));
+        Assertions.assertThrows(Exception.class, () -> libreria.registrarTutor(menor, menor));
+        Usuario sinAlta = new Usuario("John", "Doe", "Smith", "X1", 1, 1, 1990, 40, "1234567890");
+        Assertions.assertThrows(Exception.class, () -> libreria.registrarTutor(sinAlta, menor));
+
+        // Un tutor menor de edad no basta; uno adulto sí, y registrarlo dos veces no lo duplica
+        libreria.registrarTutor(hermano, menor);
+        Assertions.assertThrows(Exception.class, () -> libreria.comprarProducto(menor, libro));
+        libreria.registrarTutor(padre, menor);
+        libreria.registrarTutor(padre, menor);
+        libreria.comprarProducto(menor, libro);
+        Assertions.assertEquals(List.of(hermano, padre), menor.obtenerPadres());
+
+        libreria.eliminarTutor(padre, menor);
+        Assertions.assertEquals(List.of(hermano), menor.obtenerPadres());
+        Assertions.assertThrows(Exception.class, () -> libreria.comprarProducto(menor, libro));
+
+        // La baja del tutor quita la relación, y quien recibe su ordinal no la hereda
+        libreria.registrarTutor(padre, menor);
+        libreria.darDeBajaUsuario(padre);
+        Assertions.assertEquals(List.of(hermano), menor.obtenerPadres());
+        Usuario nuevo = altaUsuario("P2", 40);
+        Assertions.assertTrue(nuevo.obtenerPadres().isEmpty());
+        Assertions.assertEquals(List.of(hermano), menor.obtenerPadres());
+        Assertions.assertThrows(Exception.class, () -> libreria.comprarProducto(menor, libro));
+        Assertions.assertTrue(sinAlta.obtenerPadres().isEmpty());
+    }
+
+    @Test
+    void testTutorDejaDeSerAdulto() throws Exception {
+        Path usuarios = Files.createTempFile("usuarios", ".txt");
+        Files.writeString(usuarios, "John|Doe|Smith|12345678A|1|1|1990|1234567890\n");
+        libreria.aplicarCambiosUsuarios(usuarios.toString());
+        Usuario tutor = consultarDni("12345678A");
+        Usuario menor = altaUsuario("M1", 10);
+        Libro libro = altaLibro("L001", "El principito", 10);
+        libreria.registrarTutor(tutor, menor);
+        libreria.comprarProducto(menor, libro);
+
+        // Una corrección de la fecha de nacimiento deja al tutor como menor: ya no autoriza compras
+        int año = LocalDate.now().getYear() - 10;
+        Files.writeString(usuarios, "John|Doe|Smith|12345678A|1|1|" + año + "|1234567890\n");
+        Assertions.assertEquals(1, libreria.aplicarCambiosUsuarios(usuarios.toString()));
+        Assertions.assertSame(tutor, consultarDni("12345678A"));
+        Assertions.assertFalse(tutor.esMayorDeEdad());
+        Assertions.assertThrows(Exception.class, () -> libreria.comprarProducto(menor, libro));
+        libreria.eliminarTutor(tutor, menor);
+        Assertions.assertTrue(menor.obtenerPadres().isEmpty());
+        Assertions.assertThrows(Exception.class, () -> libreria.comprarProducto(menor, libro));
+
+        // Y al revés: un tutor enlazado siendo menor autoriza en cuanto es adulto
+        libreria.registrarTutor(tutor, menor);
+        Files.writeString(usuarios, "John|Doe|Smith|12345678A|1|1|1990|1234567890\n");
+        libreria.aplicarCambiosUsuarios(usuarios.toString());
+        libreria.comprarProducto(menor, libro);
+        Assertions.assertEquals(2, menor.getNumeroCompras());
+    }
+
+    @Test
+    void testBovedaTarjetas() {
+        BovedaTarjetas boveda = new BovedaTarjetas();
+        long token = boveda.guardar(3, "4111111111111111");
+        Assertions.assertNotEquals(0, token);
+        Assertions.assertEquals("4111111111111111", boveda.obtener(3, token));
+        Assertions.assertNull(boveda.obtener(3, token + 1));
+        Assertions.assertNull(boveda.obtener(2, token));
+        Assertions.assertTrue(boveda.tieneTarjeta(3));
+        Assertions.assertFalse(boveda.tieneTarjeta(2));
+
+        // La huella agrupa por tarjeta sin descifrar
+        boveda.guardar(5, "4111111111111111");
+        boveda.guardar(6, "5500000000000004");
+        Assertions.assertEquals(boveda.huella(3), boveda.huella(5));
+        Assertions.assertNotEquals(boveda.huella(3), boveda.huella(6));
+
+        boveda.eliminar(3);
+        Assertions.assertNull(boveda.obtener(3, token));
+        Assertions.assertFalse(boveda.tieneTarjeta(3));
+        Assertions.assertEquals(0, boveda.huella(3));
+
+        // En un lote, una tarjeta vacía no ocupa ranura
+        long[] tokens = boveda.guardarLote(new int[] { 7, 8 }, new String[] { "123", "" });
+        Assertions.assertEquals("123", boveda.obtener(7, tokens[0]));
+        Assertions.assertEquals(0, tokens[1]);
+        Assertions.assertFalse(boveda.tieneTarjeta(8));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> boveda.guardar(9, "1".repeat(20)));
+    }
+
+    @Test
+    void testTarjetaUsuarioReciclado() {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        Assertions.assertEquals("1234567890", libreria.obtenerNumeroTarjeta(usuario));
+        libreria.darDeBajaUsuario(usuario);
+        Usuario nuevo = new Usuario("Jane", "Doe", "Smith", "87654321B", 1, 1, 1990, 30, null);
+        libreria.darDeAltaUsuario(nuevo);
+        Assertions.assertNull(libreria.obtenerNumeroTarjeta(nuevo));
+        Assertions.assertNull(libreria.obtenerNumeroTarjeta(usuario));
+    }
+
+    @Test
+    void testCountMinSketch() {
+        CountMinSketch sketch = new CountMinSketch(1024, 4);
+        long a = HyperLogLog.hash("L001");
+        long b = HyperLogLog.hash("L002");
+        sketch.incrementar(a, 5);
+        sketch.incrementar(b, 2);
+        Assertions.assertEquals(5, sketch.estimar(a));
+        Assertions.assertEquals(2, sketch.estimar(b));
+        Assertions.assertEquals(0, sketch.estimar(HyperLogLog.hash("L003")));
+
+        CountMinSketch otro = new CountMinSketch(1024, 4);
+        otro.incrementar(a, 3);
+        sketch.fusionar(otro);
+        Assertions.assertEquals(8, sketch.estimar(a));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> sketch.fusionar(new CountMinSketch(512, 4)));
+        sketch.limpiar();
+        Assertions.assertEquals(0, sketch.estimar(a));
+    }
+
+    @Test
+    void testTendenciaEnvejece() {
+        AnaliticaVentas analitica = new AnaliticaVentas();
+        long hora = 3_600_000L;
+        long inicio = 1000 * hora;
+        // Un pico llena los candidatos; mientras sigue en la ventana, un producto con menos ventas no entra
+        for (int i = 0; i < 64; i++) {
+            for (int j = 0; j < 100; j++) {
+                analitica.registrarCompra("D" + j, "S" + i, i, 2025, 7, inicio);
+            }
+        }
+        for (int j = 0; j < 50; j++) {
+            analitica.registrarCompra("D" + j, "N", 64, 2025, 7, inicio);
+        }
+        Assertions.assertFalse(analitica.productosTendencia(64, inicio).contains("N"));
+
+        // Pasada la hora el pico ya no cuenta y deja sitio a lo que se vende ahora
+        long despues = inicio + 2 * hora;
+        Assertions.assertEquals(List.of(), analitica.productosTendencia(5, despues));
+        for (int j = 0; j < 50; j++) {
+            analitica.registrarCompra("D" + j, "N", 64, 2025, 7, despues);
+        }
+        for (int j = 0; j < 10; j++) {
+            analitica.registrarCompra("D" + j, "M", 65, 2025, 7, despues + hora / 2);
+        }
+        Assertions.assertEquals(List.of("N", "M"), analitica.productosTendencia(5, despues + hora / 2));
+
+        // La ventana de otra instancia se suma tramo a tramo, con sus candidatos
+        AnaliticaVentas otra = new AnaliticaVentas();
+        for (int j = 0; j < 30; j++) {
+            otra.registrarCompra("E" + j, "X", 0, 2025, 7, despues + hora / 2);
+        }
+        analitica.fusionarVentanaTendencia(otra.getVentanaTendencia(despues + hora / 2),
+                otra.productosTendencia(Integer.MAX_VALUE, despues + hora / 2), despues + hora / 2);
+        Assertions.assertEquals(List.of("N", "X", "M"), analitica.productosTendencia(5, despues + hora / 2));
+        Assertions.assertEquals(List.of("X", "M"), analitica.productosTendencia(5, despues + hora));
+    }
+
+    @Test
+    void testFusionarCompradoresProducto() throws Exception {
+        Libro libro = altaLibro("L001", "El principito", 10);
+        libreria.comprarProducto(altaUsuario("A1", 30), libro);
+        libreria.comprarProducto(altaUsuario("A2", 30), libro);
+
+        // En la otra tienda el mismo id tiene otro ordinal
+        LibreriaOnline otra = new LibreriaOnline();
+        otra.darDeAltaProducto(new Libro("L000", "Niebla", "Autor", 5, "Historia", true));
+        Libro suyo = new Libro("L001", "El principito", "Autor", 10, "Aventuras", true);
+        otra.darDeAltaProducto(suyo);
+        for (String dni : List.of("A2", "B1", "B2")) {
+            Usuario usuario = new Usuario("John", "Doe", "Smith", dni, 1, 1, 1990, 30, "99" + dni.hashCode());
+            otra.darDeAltaUsuario(usuario);
+            otra.comprarProducto(usuario, suyo);
+        }
+        Assertions.assertNotEquals(libro.getOrdinal(), suyo.getOrdinal());
+
+        LocalDate hoy = LocalDate.now();
+        libreria.fusionarSketchCompradores(libro, hoy.getMonthValue(), hoy.getYear(),
+                otra.obtenerSketchCompradores(suyo, hoy.getMonthValue(), hoy.getYear()));
+        Assertions.assertEquals(4, libreria.obtenerCompradoresDistintos(libro, hoy.getMonthValue(), hoy.getYear()));
+        Assertions.assertEquals(0, otra.obtenerSketchCompradores(libro, 1, 2000).estimar());
+        Assertions.assertThrows(Exception.class, () -> libreria.fusionarSketchCompradores(
+                new Libro("L999", "Otro", "Autor", 1, "Arte", true), 1, 2000, new HyperLogLog(10)));
+    }
+
+    @Test
+    void testProductosTendencia() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        Libro primero = altaLibro("L001", "El principito", 10);
+        Libro segundo = altaLibro("L002", "Niebla", 10);
+        Libro tercero = altaLibro("L003", "Zadig", 10);
+        for (int i = 0; i < 3; i++) {
+            libreria.comprarProducto(usuario, primero);
+        }
+        libreria.comprarProducto(usuario, segundo);
+        libreria.comprarProducto(usuario, tercero);
+        libreria.comprarProducto(usuario, tercero);
+        Assertions.assertEquals(List.of(primero, tercero), libreria.obtenerProductosTendencia(2));
+        // Un producto retirado deja su puesto aunque siga en el historial del usuario
+        libreria.darDeBajaProducto(tercero);
+        Assertions.assertEquals(List.of(primero, segundo), libreria.obtenerProductosTendencia(2));
+    }
+
+    @Test
+    void testLimitadorTasa() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new LimitadorTasa(0, 1, 100));
+        // Una clave por franja: las claves 1 y 65 caen en la misma
+        LimitadorTasa limitador = new LimitadorTasa(2, 0.001, 64);
+        Assertions.assertTrue(limitador.intentar(1));
+        Assertions.assertTrue(limitador.intentar(1));
+        Assertions.assertFalse(limitador.intentar(1));
+        Assertions.assertEquals(1, limitador.getRechazadas());
+
+        // Devolver un token permite otra compra sin contarla dos veces
+        limitador.devolver(1);
+        Assertions.assertTrue(limitador.intentar(1));
+        Assertions.assertEquals(2, limitador.getPermitidas());
+
+        // Con la franja llena se sacrifica una cubeta activa; la clave desalojada vuelve con la cubeta llena
+        Assertions.assertTrue(limitador.intentar(65));
+        Assertions.assertEquals(1, limitador.getDesalojadas());
+        Assertions.assertEquals(1, limitador.getClaves());
+        Assertions.assertTrue(limitador.intentar(1));
+    }
+
+    private Producto consultarId(String id) throws Exception {
+        List<Object[]> filas = libreria.consultar(Consulta.sobre(Producto.class).donde("id", "=", id));
+        return filas.isEmpty() ? null : (Producto) filas.get(0)[0];
+    }
+
+    private Usuario consultarDni(String dni) throws Exception {
+        List<Object[]> filas = libreria.consultar(Consulta.sobre(Usuario.class).donde("dni", "=", dni));
+        return filas.isEmpty() ? null : (Usuario) filas.get(0)[0];
+    }
+
+    private Usuario altaUsuario(String dni, int edad) {
+        Usuario usuario = new Usuario("John", "Doe", "Smith", dni, 1, 1, 1990, edad, "1234567890");
+        libreria.darDeAltaUsuario(usuario);
+        return usuario;
+    }
+
+    private Libro altaLibro(String id, String titulo, double precio) throws Exception {
+        Libro libro = new Libro(id, titulo, "Autor", precio, "Narrativa Española", true);
+        libreria.darDeAltaProducto(libro);
+        return libro;
+    }
+
+    private JuegoMesa altaJuego(String id, String titulo, double precio, int edad) throws Exception {
+        JuegoMesa juego = new JuegoMesa(id, titulo, precio, edad, "Estrategia");
+        libreria.darDeAltaProducto(juego);
+        return juego;
+    }
+}
@@ -0,0 +1,146 @@
+package extraordinaria2.persistencia;
+
+import extraordinaria2.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Catálogo guardado en un fichero con el formato de inventario.txt, con un índice id -> posición en memoria.
+// Las lecturas pasan por un búfer propio sobre el FileChannel (una llamada al sistema por bloque, no por byte)
+// y las posiciones se llevan a mano
+public class CatalogoArchivo implements CatalogoBackend {
+    private static final int TAMAÑO_BUFFER = 64 * 1024;
+
+    private final FileChannel canal;
+    private final Map<String, Long> posiciones;
+    // Contiene los bytes del fichero desde inicioBuffer hasta inicioBuffer + buffer.limit()
+    private final ByteBuffer buffer = ByteBuffer.allocate(TAMAÑO_BUFFER);
+    private long inicioBuffer;
+    private long posicionLectura;
+
+    public CatalogoArchivo(String filename) throws IOException {
+        this.canal = new RandomAccessFile(filename, "rw").getChannel();
+        this.posiciones = new HashMap<>();
+        buffer.limit(0);
+        indexar();
+    }
+
+    // Recorre el fichero una vez guardando solo la posición de cada línea; la última aparición de un id gana
+    private void indexar() throws IOException {
+        posicionLectura = 0;
+        long posicion = 0;
+        String line;
+        while ((line = leerLinea()) != null) {
+            String[] values = line.trim().split("\\|");
+            if (values.length > 1) {
+                if (values[0].equals("BAJA")) {
+                    posiciones.remove(values[1]);
+                } else {
+                    posiciones.put(values[1], posicion);
+                }
+            }
+            posicion = posicionLectura;
+        }
+    }
+
+    private void llenar(long posicion) throws IOException {
+        buffer.clear();
+        inicioBuffer = posicion;
+        // Un read puede devolver menos bytes de los pedidos aunque no se haya llegado al final
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer, posicion + buffer.position()) <= 0) {
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    // Lee una línea en UTF-8 desde posicionLectura y la deja apuntando a la siguiente (null al final del fichero)
+    private String leerLinea() throws IOException {
+        ByteArrayOutputStream partes = null;
+        byte[] bytes = buffer.array();
+        while (true) {
+            long relativo = posicionLectura - inicioBuffer;
+            if (relativo < 0 || relativo >= buffer.limit()) {
+                llenar(posicionLectura);
+                relativo = 0;
+                if (buffer.limit() == 0) {
+                    return partes == null ? null : sinRetorno(partes.toByteArray(), 0, partes.size());
+                }
+            }
+            int desde = (int) relativo;
+            int fin = desde;
+            while (fin < buffer.limit() && bytes[fin] != '\n') {
+                fin++;
+            }
+            if (fin < buffer.limit()) {
+                posicionLectura = inicioBuffer + fin + 1;
+                if (partes == null) {
+                    return sinRetorno(bytes, desde, fin - desde);
+                }
+                partes.write(bytes, desde, fin - desde);
+                return sinRetorno(partes.toByteArray(), 0, partes.size());
+            }
+            // La línea sigue en el bloque siguiente
+            if (partes == null) {
+                partes = new ByteArrayOutputStream();
+            }
+            partes.write(bytes, desde, fin - desde);
+            posicionLectura = inicioBuffer + fin;
+        }
+    }
+
+    private static String sinRetorno(byte[] bytes, int desde, int longitud) {
+        if (longitud > 0 && bytes[desde + longitud - 1] == '\r') {
+            longitud--;
+        }
+        return new String(bytes, desde, longitud, StandardCharsets.UTF_8);
+    }
+
+    private long escribirLinea(String line) throws IOException {
+        long posicion = canal.size();
+        ByteBuffer datos = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (datos.hasRemaining()) {
+            canal.write(datos, posicion + datos.position());
+        }
+        // El búfer puede contener el final antiguo del fichero
+        buffer.limit(0);
+        return posicion;
+    }
+
+    @Override
+    public synchronized Producto cargar(String id) throws IOException {
+        Long posicion = posiciones.get(id);
+        if (posicion == null) {
+            return null;
+        }
+        posicionLectura = posicion;
+        return LibreriaOnline.parsearProducto(leerLinea());
+    }
+
+    @Override
+    public synchronized void guardar(Producto producto) throws IOException {
+        posiciones.put(producto.getId(), escribirLinea(LibreriaOnline.formatearProducto(producto)));
+    }
+
+    // Las bajas se anotan al final del fichero para no reescribirlo
+    @Override
+    public synchronized void eliminar(String id) throws IOException {
+        if (posiciones.remove(id) != null) {
+            escribirLinea("BAJA|" + id);
+        }
+    }
+
+    @Override
+    public synchronized boolean contiene(String id) {
+        return posiciones.containsKey(id);
+    }
+
+    @Override
+    public synchronized Set<String> ids() {
+        return new HashSet<>(posiciones.keySet());
+    }
+}
@@ -0,0 +1,30 @@
+package extraordinaria2.persistencia;
+
+import extraordinaria2.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Destino en fichero: una línea por evento, añadidas al final y vaciadas una vez por lote
+public class DestinoCambiosArchivo implements DestinoCambios {
+    private final Writer writer;
+
+    public DestinoCambiosArchivo(String filename) throws IOException {
+        this.writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(filename, true), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    @Override
+    public void alEvento(EventoCambio evento, boolean finLote) throws IOException {
+        writer.write(evento.aLinea());
+        writer.write('\n');
+        if (finLote) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,27 @@
+package extraordinaria2.persistencia;
+
+import extraordinaria2.*;
+
+import java.io.*;
+import java.util.*;
+import java.nio.charset.StandardCharsets;
+
+// Añade los reembolsos al final de un fichero, con una sola escritura y vaciado por lote
+public class DestinoReembolsosArchivo implements DestinoReembolsos {
+    private final String filename;
+
+    public DestinoReembolsosArchivo(String filename) {
+        this.filename = filename;
+    }
+
+    @Override
+    public synchronized void escribir(List<RegistroReembolso> lote) throws IOException {
+        StringBuilder texto = new StringBuilder(lote.size() * 48);
+        for (RegistroReembolso registro : lote) {
+            texto.append(registro.aLinea()).append('\n');
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(filename, true), StandardCharsets.UTF_8)) {
+            writer.write(texto.toString());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package extraordinaria2.persistencia;
+
+import extraordinaria2.*;
+
+import java.io.*;
+import java.util.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+// Vigila los ficheros de inventario y usuarios con un WatchService y, cuando cambian, aplica solo las
+// diferencias sobre la librería desde un hilo propio. Un registro que falta se aplica como baja, así que no se
+// lee un fichero a medio escribir: se espera a que tamaño y fecha de modificación no cambien entre dos
+// sondeos. Lo más seguro para quien escribe es hacerlo en un temporal y publicarlo con un ATOMIC_MOVE
+public class VigilanteArchivos implements Closeable {
+    static final long SONDEO_MILIS = 50;
+    static final int MAX_SONDEOS = 100;
+
+    private final LibreriaOnline libreria;
+    private final Path inventario;
+    private final Path usuarios;
+    private final WatchService watchService;
+    private final Thread hilo;
+    private volatile boolean activo = true;
+
+    public VigilanteArchivos(LibreriaOnline libreria, String inventario, String usuarios) throws IOException {
+        this.libreria = libreria;
+        this.inventario = Paths.get(inventario).toAbsolutePath();
+        this.usuarios = Paths.get(usuarios).toAbsolutePath();
+        this.watchService = FileSystems.getDefault().newWatchService();
+        Set<Path> directorios = new HashSet<>(Arrays.asList(this.inventario.getParent(), this.usuarios.getParent()));
+        for (Path directorio : directorios) {
+            directorio.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        this.hilo = new Thread(this::vigilar, "vigilante-archivos");
+        this.hilo.setDaemon(true);
+    }
+
+    public void iniciar() {
+        hilo.start();
+    }
+
+    // Agrupa todos los eventos pendientes antes de aplicar, para no releer un fichero por cada escritura parcial
+    private void vigilar() {
+        while (activo) {
+            try {
+                WatchKey clave = watchService.take();
+                boolean cambioInventario = false;
+                boolean cambioUsuarios = false;
+                do {
+                    Path directorio = (Path) clave.watchable();
+                    for (WatchEvent<?> evento : clave.pollEvents()) {
+                        if (evento.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            cambioInventario = true;
+                            cambioUsuarios = true;
+                            continue;
+                        }
+                        Path fichero = directorio.resolve((Path) evento.context());
+                        cambioInventario |= fichero.equals(inventario);
+                        cambioUsuarios |= fichero.equals(usuarios);
+                    }
+                    clave.reset();
+                    clave = watchService.poll(SONDEO_MILIS, TimeUnit.MILLISECONDS);
+                } while (clave != null);
+                if (cambioInventario && estable(inventario)) {
+                    libreria.aplicarCambiosInventario(inventario.toString());
+                }
+                if (cambioUsuarios && estable(usuarios)) {
+                    libreria.aplicarCambiosUsuarios(usuarios.toString());
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                // Un fichero a medio escribir no debe parar la vigilancia; se reintenta en el siguiente cambio
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // El fichero existe y no ha cambiado entre dos sondeos seguidos. Si sigue cambiando tras MAX_SONDEOS se
+    // deja para el siguiente evento, que llegará con la próxima escritura
+    static boolean estable(Path fichero) throws IOException, InterruptedException {
+        BasicFileAttributes anterior = atributos(fichero);
+        for (int i = 0; i < MAX_SONDEOS && anterior != null; i++) {
+            Thread.sleep(SONDEO_MILIS);
+            BasicFileAttributes actual = atributos(fichero);
+            if (actual != null && actual.size() == anterior.size()
+                    && actual.lastModifiedTime().equals(anterior.lastModifiedTime())) {
+                return true;
+            }
+            anterior = actual;
+        }
+        return false;
+    }
+
+    private static BasicFileAttributes atributos(Path fichero) throws IOException {
+        try {
+            return Files.readAttributes(fichero, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        activo = false;
+        watchService.close();
+        hilo.interrupt();
+    }
+}
@@ -0,0 +1,7 @@
+// Descriptor del módulo de ficheros: catálogo en disco, destinos de cambios y reembolsos en fichero y vigilancia
+// de los ficheros de inventario y usuarios. Quien lo usa recibe también el núcleo
+module extraordinaria2.persistencia {
+    requires transitive extraordinaria2;
+
+    exports extraordinaria2.persistencia;
+}
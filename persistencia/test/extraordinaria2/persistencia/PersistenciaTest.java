@@ -0,0 +1,202 @@
+package extraordinaria2.persistencia;
+
+import extraordinaria2.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// Pruebas del catálogo en fichero y de la vigilancia de los ficheros de inventario y usuarios
+class PersistenciaTest {
+    private LibreriaOnline libreria;
+
+    @BeforeEach
+    void setUp() {
+        libreria = new LibreriaOnline();
+    }
+
+    @Test
+    void testCatalogoArchivoReabierto() throws Exception {
+        Path fichero = Files.createTempFile("catalogo", ".txt");
+        CatalogoArchivo catalogo = new CatalogoArchivo(fichero.toString());
+        // Un título que ocupa varios bloques de lectura y con caracteres de varios bytes
+        String largo = "ñ".repeat(50000) + "fin";
+        for (int i = 0; i < 5000; i++) {
+            catalogo.guardar(new Libro("L" + i, i == 2500 ? largo : "Libro " + i, "Autor", 10, "Aventuras", true));
+        }
+        catalogo.eliminar("L7");
+        catalogo.guardar(new Libro("L8", "Niebla", "Unamuno", 5.5, "Historia", false));
+
+        CatalogoArchivo reabierto = new CatalogoArchivo(fichero.toString());
+        Assertions.assertEquals(4999, reabierto.ids().size());
+        Assertions.assertNull(reabierto.cargar("L7"));
+        Assertions.assertEquals("Niebla", reabierto.cargar("L8").getTitulo());
+        Assertions.assertEquals(largo, reabierto.cargar("L2500").getTitulo());
+        Assertions.assertEquals("Libro 4999", reabierto.cargar("L4999").getTitulo());
+        Assertions.assertEquals("Libro 0", reabierto.cargar("L0").getTitulo());
+        // Lo escrito después de una lectura se ve en la siguiente
+        reabierto.guardar(new Libro("L0", "Zadig", "Voltaire", 12, "Historia", true));
+        Assertions.assertEquals("Zadig", reabierto.cargar("L0").getTitulo());
+    }
+
+    @Test
+    void testCatalogoPersistente() throws Exception {
+        Usuario usuario = altaUsuario("12345678A", 30);
+        Libro vendido = altaLibro("L001", "El principito", 10.99);
+        altaLibro("L002", "Niebla", 5.50);
+        libreria.comprarProducto(usuario, vendido);
+        Path fichero = Files.createTempFile("catalogo", ".txt");
+        long memoriaAntes = libreria.getMemoriaEstimada();
+        libreria.configurarCatalogo(new CatalogoArchivo(fichero.toString()), 2, 0);
+
+        // Solo el producto con ventas sigue en memoria; el otro está únicamente en el catálogo
+        Assertions.assertEquals(memoriaAntes - LibreriaOnline.BYTES_POR_PRODUCTO, libreria.getMemoriaEstimada());
+        Assertions.assertEquals(List.of(vendido), libreria.productosPorTitulo(null).toList());
+        for (int i = 3; i < 10; i++) {
+            altaLibro("L00" + i, "Relleno " + i, 1);
+        }
+
+        // El producto con ventas conserva su identidad aunque la caché lo haya desalojado
+        Assertions.assertSame(vendido, consultarId("L001"));
+        Libro niebla = (Libro) consultarId("L002");
+        Assertions.assertNotNull(niebla);
+        libreria.comprarProducto(usuario, niebla);
+        libreria.comprarProducto(usuario, vendido);
+        Assertions.assertEquals(2, vendido.getVendidos());
+
+        // Un objeto leído de nuevo del disco se resuelve al que guarda las ventas
+        for (int i = 3; i < 10; i++) {
+            consultarId("L00" + i);
+        }
+        Producto copia = consultarId("L002");
+        Assertions.assertSame(niebla, copia);
+        Assertions.assertEquals(1, copia.getVendidos());
+        Assertions.assertEquals(2, libreria.productosPorTitulo(null).count());
+    }
+
+    @Test
+    void testCacheProductos() throws Exception {
+        Path fichero = Files.createTempFile("catalogo", ".txt");
+        CatalogoArchivo catalogo = new CatalogoArchivo(fichero.toString());
+        for (int i = 1; i <= 3; i++) {
+            catalogo.guardar(new Libro("L00" + i, "Libro " + i, "Autor", 10, "Aventuras", true));
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new CacheProductos(catalogo, 1, 0));
+
+        // Capacidad 2: una entrada en la ventana y otra en la zona principal
+        CacheProductos cache = new CacheProductos(catalogo, 2, 0);
+        Producto primero = cache.obtener("L001");
+        Assertions.assertSame(primero, cache.obtener("L001"));
+        Assertions.assertEquals(1, cache.getAciertos());
+        Assertions.assertEquals(1, cache.getFallos());
+        cache.obtener("L002");
+        Assertions.assertEquals(2, cache.getTamaño());
+
+        // L002 sale de la ventana pero no desplaza a L001, que se ha pedido más veces
+        cache.obtener("L003");
+        Assertions.assertEquals(1, cache.getDesalojos());
+        Assertions.assertEquals(2, cache.getTamaño());
+        Assertions.assertSame(primero, cache.obtener("L001"));
+        Assertions.assertNull(cache.obtener("X999"));
+        Assertions.assertEquals(2, cache.getTamaño());
+
+        // Invalidar obliga a leer de nuevo del catálogo
+        cache.invalidar("L001");
+        Assertions.assertEquals(1, cache.getTamaño());
+        Producto releido = cache.obtener("L001");
+        Assertions.assertNotSame(primero, releido);
+        Assertions.assertEquals("Libro 1", releido.getTitulo());
+
+        // Una entrada caducada cuenta como desalojo y como fallo
+        CacheProductos caducable = new CacheProductos(catalogo, 2, 1);
+        caducable.obtener("L001");
+        Thread.sleep(20);
+        caducable.obtener("L001");
+        Assertions.assertEquals(2, caducable.getFallos());
+        Assertions.assertEquals(1, caducable.getDesalojos());
+    }
+
+    @Test
+    void testVigilanteArchivos() throws Exception {
+        Path directorio = Files.createTempDirectory("vigilante");
+        Path inventario = directorio.resolve("inventario.txt");
+        Path usuarios = directorio.resolve("usuarios.txt");
+        try (VigilanteArchivos vigilante = new VigilanteArchivos(libreria, inventario.toString(), usuarios.toString())) {
+            vigilante.iniciar();
+            Files.writeString(inventario, "LIBRO|L001|El principito|Antoine|10.99|Aventuras|true\n");
+            Files.writeString(usuarios, "John|Doe|Smith|12345678A|1|1|1990|1234567890\n");
+            long limite = System.currentTimeMillis() + 10000;
+            while ((consultarId("L001") == null || consultarDni("12345678A") == null)
+                    && System.currentTimeMillis() < limite) {
+                Thread.sleep(20);
+            }
+            Assertions.assertEquals("El principito", consultarId("L001").getTitulo());
+            Assertions.assertNotNull(consultarDni("12345678A"));
+
+            // Un cambio posterior se aplica sobre el mismo producto
+            Producto producto = consultarId("L001");
+            Files.writeString(inventario, "LIBRO|L001|Zadig|Voltaire|12|Historia|true\n");
+            limite = System.currentTimeMillis() + 10000;
+            while (!producto.getTitulo().equals("Zadig") && System.currentTimeMillis() < limite) {
+                Thread.sleep(20);
+            }
+            Assertions.assertEquals("Zadig", producto.getTitulo());
+            Assertions.assertSame(producto, consultarId("L001"));
+        }
+    }
+
+    @Test
+    void testVigilanteEsperaEscrituraCompleta() throws Exception {
+        Path fichero = Files.createTempFile("inventario", ".txt");
+        Assertions.assertFalse(VigilanteArchivos.estable(fichero.resolveSibling("no-existe.txt")));
+        Assertions.assertTrue(VigilanteArchivos.estable(fichero));
+
+        // Mientras alguien sigue escribiendo el fichero no se da por estable
+        java.util.concurrent.atomic.AtomicBoolean escribiendo = new java.util.concurrent.atomic.AtomicBoolean(true);
+        Thread escritor = new Thread(() -> {
+            try {
+                for (int i = 0; i < 40; i++) {
+                    Files.writeString(fichero, "LIBRO|L" + i + "|Título|Autor|10|Aventuras|true\n",
+                            java.nio.file.StandardOpenOption.APPEND);
+                    Thread.sleep(5);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            } finally {
+                escribiendo.set(false);
+            }
+        });
+        escritor.start();
+        Thread.sleep(10);
+        Assertions.assertTrue(VigilanteArchivos.estable(fichero));
+        Assertions.assertFalse(escribiendo.get());
+        escritor.join();
+        Assertions.assertEquals(40, Files.readAllLines(fichero).size());
+    }
+
+    private Producto consultarId(String id) throws Exception {
+        List<Object[]> filas = libreria.consultar(Consulta.sobre(Producto.class).donde("id", "=", id));
+        return filas.isEmpty() ? null : (Producto) filas.get(0)[0];
+    }
+
+    private Usuario consultarDni(String dni) throws Exception {
+        List<Object[]> filas = libreria.consultar(Consulta.sobre(Usuario.class).donde("dni", "=", dni));
+        return filas.isEmpty() ? null : (Usuario) filas.get(0)[0];
+    }
+
+    private Usuario altaUsuario(String dni, int edad) {
+        Usuario usuario = new Usuario("John", "Doe", "Smith", dni, 1, 1, 1990, edad, "1234567890");
+        libreria.darDeAltaUsuario(usuario);
+        return usuario;
+    }
+
+    private Libro altaLibro(String id, String titulo, double precio) throws Exception {
+        Libro libro = new Libro(id, titulo, "Autor", precio, "Narrativa Española", true);
+        libreria.darDeAltaProducto(libro);
+        return libro;
+    }
+}
@@ -0,0 +1,262 @@
+package extraordinaria2.servidor;
+
+import extraordinaria2.*;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Varias librerías aisladas en un mismo proceso. Comparten lo que ya es común a todas las instancias (tablas
+// de internado de textos, accesos compilados de las consultas) y un grupo fijo de hilos:
+// - las operaciones de cada inquilino van a su propia cola y se ejecutan de una en una, en orden
+// - los hilos atienden a los inquilinos con trabajo por turnos, una operación cada vez, así que uno con
+//   muchas peticiones no deja sin servicio a los demás
+// - la CPU consumida por cada inquilino se mide por hilo; el que agota su cuota del periodo deja de recibir
+//   turnos hasta el siguiente periodo
+// - la cuota de memoria se aplica en la propia librería (setLimiteMemoria)
+public class ContenedorLibrerias implements Closeable {
+    static final long PERIODO_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // Operación en cola: ejecutar devuelve cómo completar el futuro, que se completa ya contabilizada
+    private static final class Tarea {
+        final Supplier<Runnable> ejecutar;
+        final CompletableFuture<?> resultado;
+
+        Tarea(Supplier<Runnable> ejecutar, CompletableFuture<?> resultado) {
+            this.ejecutar = ejecutar;
+            this.resultado = resultado;
+        }
+    }
+
+    private final class Inquilino {
+        final String id;
+        final LibreriaOnline libreria;
+        final long cpuPorPeriodo;
+        final ArrayDeque<Tarea> cola = new ArrayDeque<>();
+        boolean enTurno; // en la lista de listos o de agotados, o ejecutándose
+        long cpuPeriodo;
+        long cpuTotal;
+        long operaciones;
+
+        Inquilino(String id, LibreriaOnline libreria, CuotaInquilino cuota) {
+            this.id = id;
+            this.libreria = libreria;
+            this.cpuPorPeriodo = cuota.getCpuMilisPorSegundo() * PERIODO_NANOS / 1000;
+        }
+    }
+
+    private final Map<String, Inquilino> inquilinos = new HashMap<>();
+    private final ArrayDeque<Inquilino> listos = new ArrayDeque<>();
+    private final List<Inquilino> agotados = new ArrayList<>();
+    private final ReentrantLock cerrojo = new ReentrantLock();
+    private final Condition hayTrabajo = cerrojo.newCondition();
+    private final List<Thread> hilos = new ArrayList<>();
+    private final java.lang.management.ThreadMXBean cpu = ManagementFactory.getThreadMXBean();
+    private long inicioPeriodo = System.nanoTime();
+    private boolean cerrado;
+
+    public ContenedorLibrerias(int numeroHilos) {
+        for (int i = 0; i < numeroHilos; i++) {
+            Thread hilo = new Thread(this::atender, "contenedor-librerias-" + i);
+            hilo.setDaemon(true);
+            hilos.add(hilo);
+            hilo.start();
+        }
+    }
+
+    // Caso de uso: Alojar una tienda nueva con su cuota
+    public LibreriaOnline crear(String id, int capacidadEsperada, CuotaInquilino cuota) {
+        LibreriaOnline libreria = new LibreriaOnline(capacidadEsperada);
+        libreria.setLimiteMemoria(cuota.getMemoriaBytes());
+        cerrojo.lock();
+        try {
+            if (cerrado) {
+                throw new IllegalStateException("El contenedor está cerrado.");
+            }
+            if (inquilinos.containsKey(id)) {
+                throw new IllegalArgumentException("Ya existe la tienda " + id);
+            }
+            inquilinos.put(id, new Inquilino(id, libreria, cuota));
+        } finally {
+            cerrojo.unlock();
+        }
+        return libreria;
+    }
+
+    // Caso de uso: Retirar una tienda; las operaciones pendientes se cancelan (sus futuros terminan con
+    // CancellationException) y la que se esté ejecutando termina normalmente
+    public void eliminar(String id) {
+        List<Tarea> canceladas = new ArrayList<>();
+        cerrojo.lock();
+        try {
+            Inquilino inquilino = inquilinos.remove(id);
+            if (inquilino != null) {
+                listos.remove(inquilino);
+                agotados.remove(inquilino);
+                canceladas.addAll(inquilino.cola);
+                inquilino.cola.clear();
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+        // Fuera del cerrojo: completar un futuro ejecuta las continuaciones de quien espera
+        for (Tarea tarea : canceladas) {
+            tarea.resultado.completeExceptionally(new CancellationException("Tienda retirada: " + id));
+        }
+    }
+
+    public <T> CompletableFuture<T> enviar(String id, OperacionLibreria<T> operacion) {
+        CompletableFuture<T> resultado = new CompletableFuture<>();
+        cerrojo.lock();
+        try {
+            Inquilino inquilino = inquilinos.get(id);
+            if (inquilino == null || cerrado) {
+                resultado.completeExceptionally(new IllegalArgumentException("No existe la tienda " + id));
+                return resultado;
+            }
+            inquilino.cola.addLast(new Tarea(() -> {
+                try {
+                    T valor = operacion.ejecutar(inquilino.libreria);
+                    return () -> resultado.complete(valor);
+                } catch (Throwable e) {
+                    return () -> resultado.completeExceptionally(e);
+                }
+            }, resultado));
+            if (!inquilino.enTurno) {
+                // Un cliente que envía de una en una vacía la cola cada vez: la cuota se comprueba también aquí,
+                // con el periodo al día, o nunca llegaría a frenarse
+                inquilino.enTurno = true;
+                renovarPeriodo();
+                if (inquilino.cpuPeriodo >= inquilino.cpuPorPeriodo) {
+                    agotados.add(inquilino);
+                } else {
+                    listos.addLast(inquilino);
+                }
+                hayTrabajo.signal();
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+        return resultado;
+    }
+
+    private void atender() {
+        while (true) {
+            Inquilino inquilino;
+            Tarea tarea;
+            cerrojo.lock();
+            try {
+                while (true) {
+                    renovarPeriodo();
+                    if (!listos.isEmpty()) {
+                        break;
+                    }
+                    if (cerrado && agotados.isEmpty()) {
+                        return;
+                    }
+                    long espera = agotados.isEmpty() ? PERIODO_NANOS
+                            : inicioPeriodo + PERIODO_NANOS - System.nanoTime();
+                    hayTrabajo.awaitNanos(Math.max(1, espera));
+                }
+                inquilino = listos.pollFirst();
+                tarea = inquilino.cola.pollFirst();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                cerrojo.unlock();
+            }
+
+            long antes = cpu.getCurrentThreadCpuTime();
+            Runnable completar = tarea.ejecutar.get();
+            long consumida = cpu.getCurrentThreadCpuTime() - antes;
+
+            cerrojo.lock();
+            try {
+                inquilino.cpuPeriodo += consumida;
+                inquilino.cpuTotal += consumida;
+                inquilino.operaciones++;
+                if (inquilino.cola.isEmpty() || !inquilinos.containsKey(inquilino.id)) {
+                    inquilino.enTurno = false;
+                } else if (inquilino.cpuPeriodo >= inquilino.cpuPorPeriodo) {
+                    agotados.add(inquilino);
+                } else {
+                    listos.addLast(inquilino);
+                    hayTrabajo.signal();
+                }
+            } finally {
+                cerrojo.unlock();
+            }
+            completar.run();
+        }
+    }
+
+    // Con el cerrojo tomado: al empezar un periodo nuevo se reponen las cuotas y vuelven los agotados
+    private void renovarPeriodo() {
+        long ahora = System.nanoTime();
+        if (ahora - inicioPeriodo < PERIODO_NANOS) {
+            return;
+        }
+        inicioPeriodo = ahora;
+        for (Inquilino inquilino : inquilinos.values()) {
+            // Lo consumido de más en el periodo anterior se descuenta del siguiente
+            inquilino.cpuPeriodo = Math.max(0, inquilino.cpuPeriodo - inquilino.cpuPorPeriodo);
+        }
+        for (Inquilino inquilino : agotados) {
+            if (inquilino.cpuPeriodo >= inquilino.cpuPorPeriodo) {
+                continue;
+            }
+            listos.addLast(inquilino);
+        }
+        agotados.removeIf(inquilino -> inquilino.cpuPeriodo < inquilino.cpuPorPeriodo);
+        if (!listos.isEmpty()) {
+            hayTrabajo.signalAll();
+        }
+    }
+
+    public long getCpuNanos(String id) {
+        cerrojo.lock();
+        try {
+            Inquilino inquilino = inquilinos.get(id);
+            return inquilino == null ? 0 : inquilino.cpuTotal;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    public long getOperaciones(String id) {
+        cerrojo.lock();
+        try {
+            Inquilino inquilino = inquilinos.get(id);
+            return inquilino == null ? 0 : inquilino.operaciones;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    // Deja de aceptar operaciones, termina las pendientes y espera a los hilos
+    @Override
+    public void close() {
+        cerrojo.lock();
+        try {
+            cerrado = true;
+            hayTrabajo.signalAll();
+        } finally {
+            cerrojo.unlock();
+        }
+        for (Thread hilo : hilos) {
+            try {
+                hilo.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
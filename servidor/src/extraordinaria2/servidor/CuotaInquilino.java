@@ -0,0 +1,23 @@
+package extraordinaria2.servidor;
+
+// Cuota de un inquilino: memoria estimada máxima (0 sin límite) y milisegundos de CPU por segundo
+public class CuotaInquilino {
+    private final long memoriaBytes;
+    private final long cpuMilisPorSegundo;
+
+    public CuotaInquilino(long memoriaBytes, long cpuMilisPorSegundo) {
+        if (cpuMilisPorSegundo <= 0) {
+            throw new IllegalArgumentException("La cuota de CPU debe ser positiva: " + cpuMilisPorSegundo);
+        }
+        this.memoriaBytes = memoriaBytes;
+        this.cpuMilisPorSegundo = cpuMilisPorSegundo;
+    }
+
+    public long getMemoriaBytes() {
+        return memoriaBytes;
+    }
+
+    public long getCpuMilisPorSegundo() {
+        return cpuMilisPorSegundo;
+    }
+}
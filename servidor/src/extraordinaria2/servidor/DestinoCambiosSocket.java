@@ -0,0 +1,37 @@
+package extraordinaria2.servidor;
+
+import extraordinaria2.*;
+
+import java.io.*;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// Destino en un socket Unix: las líneas del lote se acumulan y se envían con una sola escritura
+public class DestinoCambiosSocket implements DestinoCambios {
+    private final SocketChannel canal;
+    private final StringBuilder lote = new StringBuilder();
+
+    public DestinoCambiosSocket(Path socket) throws IOException {
+        this.canal = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+    }
+
+    @Override
+    public void alEvento(EventoCambio evento, boolean finLote) throws IOException {
+        lote.append(evento.aLinea()).append('\n');
+        if (finLote) {
+            ByteBuffer bytes = ByteBuffer.wrap(lote.toString().getBytes(StandardCharsets.UTF_8));
+            lote.setLength(0);
+            while (bytes.hasRemaining()) {
+                canal.write(bytes);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+}
@@ -0,0 +1,8 @@
+package extraordinaria2.servidor;
+
+import extraordinaria2.*;
+
+// Operación sobre la librería de un inquilino, ejecutada por el contenedor
+public interface OperacionLibreria<T> {
+    T ejecutar(LibreriaOnline libreria) throws Exception;
+}
@@ -0,0 +1,35 @@
+package extraordinaria2.servidor;
+
+import extraordinaria2.*;
+import extraordinaria2.persistencia.*;
+
+import java.nio.file.*;
+
+// Arranque del servidor: carga el inventario y los usuarios, aplica después los cambios de esos ficheros según
+// se escriben y, si se indica un socket Unix, publica en él los cambios de la librería. Termina al cerrarse la
+// entrada estándar, lo que permite también una ejecución de prueba que solo arranca y carga
+public class ServidorLibreria {
+    public static void main(String[] args) throws Exception {
+        String inventario = args.length > 0 ? args[0] : "inventario.txt";
+        String usuarios = args.length > 1 ? args[1] : "usuarios.txt";
+        LibreriaOnline libreria = new LibreriaOnline();
+
+        // Sobre una librería vacía todos los registros son altas
+        long inicio = System.nanoTime();
+        int productos = libreria.aplicarCambiosInventario(inventario);
+        int clientes = libreria.aplicarCambiosUsuarios(usuarios);
+        System.out.println("Cargados " + productos + " productos y " + clientes + " usuarios en "
+                + (System.nanoTime() - inicio) / 1_000_000 + " ms");
+
+        if (args.length > 2) {
+            libreria.suscribirCambios(new DestinoCambiosSocket(Paths.get(args[2])));
+        }
+        try (VigilanteArchivos vigilante = new VigilanteArchivos(libreria, inventario, usuarios)) {
+            vigilante.iniciar();
+            while (System.in.read() != -1) {
+                // Solo se espera al final de la entrada
+            }
+        }
+        libreria.detenerCambios();
+    }
+}
@@ -0,0 +1,8 @@
+// Descriptor del módulo del servidor: el contenedor de tiendas mide la CPU de cada hilo con java.management
+module extraordinaria2.servidor {
+    requires transitive extraordinaria2;
+    requires extraordinaria2.persistencia;
+    requires java.management;
+
+    exports extraordinaria2.servidor;
+}
@@ -0,0 +1,90 @@
+package extraordinaria2.servidor;
+
+import extraordinaria2.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+// Pruebas del contenedor de tiendas: aislamiento, orden de las operaciones y cuotas
+class ContenedorLibreriasTest {
+    @Test
+    void testContenedorLibrerias() throws Exception {
+        try (ContenedorLibrerias contenedor = new ContenedorLibrerias(2)) {
+            contenedor.crear("norte", 1000, new CuotaInquilino(0, 50));
+            // Cuota justa para un producto y un usuario
+            LibreriaOnline sur = contenedor.crear("sur", 1000, new CuotaInquilino(
+                    LibreriaOnline.BYTES_POR_PRODUCTO + LibreriaOnline.BYTES_POR_USUARIO, 50));
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> contenedor.crear("sur", 1000, new CuotaInquilino(0, 50)));
+
+            contenedor.enviar("norte", l -> {
+                l.darDeAltaProducto(new Libro("L001", "El principito", "Autor", 10.99, "Narrativa", true));
+                return null;
+            }).get();
+            contenedor.enviar("sur", l -> {
+                l.darDeAltaProducto(new Libro("L001", "Otro título", "Autor", 5, "Narrativa", true));
+                l.darDeAltaUsuario(new Usuario("John", "Doe", "Smith", "12345678A", 1, 1, 1990, 30, "1"));
+                return null;
+            }).get();
+            // Las tiendas están aisladas: el mismo id es un producto distinto en cada una
+            Assertions.assertEquals("El principito",
+                    contenedor.enviar("norte", l -> l.productosPorTitulo(null).findFirst().get().getTitulo()).get());
+            Assertions.assertEquals("Otro título", sur.productosPorTitulo(null).findFirst().get().getTitulo());
+
+            java.util.concurrent.ExecutionException fallo = Assertions.assertThrows(
+                    java.util.concurrent.ExecutionException.class, () -> contenedor.enviar("sur", l -> {
+                        l.darDeAltaProducto(new Libro("L002", "Sin sitio", "Autor", 5, "Narrativa", true));
+                        return null;
+                    }).get());
+            Assertions.assertTrue(fallo.getCause() instanceof IllegalStateException);
+
+            // Las operaciones de una tienda se ejecutan en el orden de envío
+            List<Integer> orden = new ArrayList<>();
+            List<java.util.concurrent.CompletableFuture<Object>> pendientes = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                int n = i;
+                pendientes.add(contenedor.enviar("norte", l -> orden.add(n)));
+            }
+            for (java.util.concurrent.CompletableFuture<Object> pendiente : pendientes) {
+                pendiente.get();
+            }
+            for (int i = 0; i < 100; i++) {
+                Assertions.assertEquals(i, orden.get(i));
+            }
+            Assertions.assertEquals(102, contenedor.getOperaciones("norte"));
+
+            contenedor.eliminar("sur");
+            Assertions.assertThrows(java.util.concurrent.ExecutionException.class,
+                    () -> contenedor.enviar("sur", l -> null).get());
+        }
+    }
+
+    @Test
+    void testContenedorCuotaOperacionesSueltas() throws Exception {
+        try (ContenedorLibrerias contenedor = new ContenedorLibrerias(1)) {
+            contenedor.crear("lenta", 1000, new CuotaInquilino(0, 1));
+            java.lang.management.ThreadMXBean cpu = java.lang.management.ManagementFactory.getThreadMXBean();
+            OperacionLibreria<Object> costosa = l -> {
+                long fin = cpu.getCurrentThreadCpuTime() + 2_000_000;
+                while (cpu.getCurrentThreadCpuTime() < fin) {
+                    Thread.onSpinWait();
+                }
+                return null;
+            };
+            // Tras una operación de 2 ms con 1 ms/s de cuota, la siguiente espera aunque la cola estuviera vacía
+            contenedor.enviar("lenta", costosa).get();
+            java.util.concurrent.CompletableFuture<Object> siguiente = contenedor.enviar("lenta", costosa);
+            Assertions.assertThrows(java.util.concurrent.TimeoutException.class,
+                    () -> siguiente.get(500, java.util.concurrent.TimeUnit.MILLISECONDS));
+            Assertions.assertEquals(1, contenedor.getOperaciones("lenta"));
+
+            // Al retirar la tienda la operación pendiente se cancela en lugar de quedarse esperando
+            contenedor.eliminar("lenta");
+            Assertions.assertThrows(java.util.concurrent.CancellationException.class,
+                    () -> siguiente.get(1, java.util.concurrent.TimeUnit.SECONDS));
+        }
+    }
+}